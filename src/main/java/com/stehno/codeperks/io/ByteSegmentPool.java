@@ -0,0 +1,95 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Thread-safe, bounded pool of fixed-size byte arrays used as buffer segments. Segments
+ * are allocated on demand when the pool is empty and are discarded when released into
+ * a full pool.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class ByteSegmentPool {
+
+	/**
+	 * The default segment size (64 KB).
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+
+	private static final ByteSegmentPool SHARED = new ByteSegmentPool(DEFAULT_SEGMENT_SIZE, 256);
+
+	private final int segmentSize;
+	private final BlockingQueue<byte[]> segments;
+
+	/**
+	 * Creates a pool of segments of the given size which will hold at most <code>maxPooled</code>
+	 * released segments.
+	 *
+	 * @param segmentSize the size of each segment in bytes
+	 * @param maxPooled the maximum number of idle segments retained by the pool
+	 */
+	public ByteSegmentPool(final int segmentSize, final int maxPooled){
+		if(segmentSize <= 0){
+			throw new IllegalArgumentException("Segment size must be positive: " + segmentSize);
+		}
+		this.segmentSize = segmentSize;
+		this.segments = new ArrayBlockingQueue<byte[]>(Math.max(1, maxPooled));
+	}
+
+	/**
+	 * Retrieves the shared pool of 64 KB segments, which retains up to 16 MB of idle segments.
+	 *
+	 * @return the shared pool
+	 */
+	public static ByteSegmentPool shared(){
+		return SHARED;
+	}
+
+	/**
+	 * Retrieves the size of the segments handed out by this pool.
+	 *
+	 * @return the segment size in bytes
+	 */
+	public int getSegmentSize(){
+		return segmentSize;
+	}
+
+	/**
+	 * Retrieves a segment from the pool, allocating a new one if none is available. The content
+	 * of a recycled segment is not cleared.
+	 *
+	 * @return a segment of the pool segment size
+	 */
+	public byte[] acquire(){
+		final byte[] segment = segments.poll();
+		return segment != null ? segment : new byte[segmentSize];
+	}
+
+	/**
+	 * Returns a segment to the pool. Segments of a different size, or released when the pool
+	 * is full, are left for the garbage collector.
+	 *
+	 * @param segment the segment being released
+	 */
+	public void release(final byte[] segment){
+		if(segment != null && segment.length == segmentSize){
+			segments.offer(segment);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Helpers for the I/O classes which do their work on an ExecutorService, reporting the failures
+ * of background tasks as the IOExceptions their callers expect.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public final class ConcurrentIo {
+
+	/**
+	 * Negates instantiation.
+	 */
+	private ConcurrentIo(){}
+
+	/**
+	 * Waits for the result of a background task. An IOException thrown by the task is rethrown as is;
+	 * any other failure, or an interruption of the waiting thread, is reported as an IOException
+	 * (the interrupt status being restored).
+	 *
+	 * @param future the future of the task
+	 * @param what the work done by the task, for the error messages (such as "compress entry")
+	 * @return the result of the task
+	 * @throws IOException if the task failed or the wait was interrupted
+	 */
+	public static <T> T await(final Future<T> future, final String what) throws IOException {
+		try {
+			return future.get();
+		} catch(final InterruptedException ie){
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting to " + what + ": " + ie.getMessage());
+		} catch(final ExecutionException ee){
+			if(ee.getCause() instanceof IOException){
+				throw (IOException)ee.getCause();
+			}
+			throw new IOException("Unable to " + what + ": " + ee.getCause());
+		}
+	}
+}
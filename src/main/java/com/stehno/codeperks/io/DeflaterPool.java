@@ -0,0 +1,110 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Thread-safe, bounded pool of Deflaters, kept separately for each compression level and wrapping
+ * mode. Each Deflater holds a few hundred kilobytes of native zlib memory, which is otherwise only
+ * released when it is ended or finalized; recycling them keeps that memory bounded when many
+ * streams are compressed concurrently.<br/><br/>
+ *
+ * Deflaters are created on demand when the pool is empty, reset when released, and ended when
+ * released into a full pool. A released Deflater must not be used again by the caller.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class DeflaterPool {
+
+	private static final DeflaterPool SHARED = new DeflaterPool(16);
+
+	private final List<BlockingQueue<Deflater>> deflaters;
+
+	/**
+	 * Creates a pool which will hold at most <code>maxPooled</code> released Deflaters for each
+	 * combination of level and wrapping mode.
+	 *
+	 * @param maxPooled the maximum number of idle Deflaters retained per level and mode
+	 */
+	public DeflaterPool(final int maxPooled){
+		// the levels -1 (the default) to 9, each with and without the zlib wrapper
+		this.deflaters = new ArrayList<BlockingQueue<Deflater>>(22);
+		for(int i=0; i<22; i++){
+			deflaters.add(new ArrayBlockingQueue<Deflater>(Math.max(1, maxPooled)));
+		}
+	}
+
+	/**
+	 * Retrieves the shared pool, which retains up to 16 idle Deflaters per level and mode.
+	 *
+	 * @return the shared pool
+	 */
+	public static DeflaterPool shared(){
+		return SHARED;
+	}
+
+	/**
+	 * Retrieves a Deflater from the pool, creating a new one if none is available.
+	 *
+	 * @param level the compression level (0-9 or Deflater.DEFAULT_COMPRESSION)
+	 * @param nowrap true to produce raw deflate data, without the zlib header and checksum
+	 * @return a Deflater ready for new input
+	 */
+	public Deflater acquire(final int level, final boolean nowrap){
+		final Deflater deflater = deflaters.get(index(level, nowrap)).poll();
+		return deflater != null ? deflater : new Deflater(level, nowrap);
+	}
+
+	/**
+	 * Returns a Deflater, acquired with the given level and mode, to the pool.
+	 *
+	 * @param level the compression level the Deflater was acquired with
+	 * @param nowrap the mode the Deflater was acquired with
+	 * @param deflater the Deflater being released
+	 */
+	public void release(final int level, final boolean nowrap, final Deflater deflater){
+		if(deflater == null){
+			return;
+		}
+		deflater.reset();
+		if(!deflaters.get(index(level, nowrap)).offer(deflater)){
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Retrieves the number of idle Deflaters currently pooled for the given level and mode.
+	 *
+	 * @param level the compression level
+	 * @param nowrap the mode
+	 * @return the number of idle Deflaters
+	 */
+	public int getIdleCount(final int level, final boolean nowrap){
+		return deflaters.get(index(level, nowrap)).size();
+	}
+
+	private static int index(final int level, final boolean nowrap){
+		if((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION){
+			throw new IllegalArgumentException("invalid compression level");
+		}
+		return (level + 1) * 2 + (nowrap ? 1 : 0);
+	}
+}
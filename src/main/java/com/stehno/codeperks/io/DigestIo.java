@@ -0,0 +1,62 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Helpers for the I/O classes which identify content by its message digest.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public final class DigestIo {
+
+	/**
+	 * Negates instantiation.
+	 */
+	private DigestIo(){}
+
+	/**
+	 * Creates a MessageDigest for the given algorithm, reporting an unavailable algorithm as an IOException.
+	 *
+	 * @param algorithm the digest algorithm name, such as "SHA-1"
+	 * @return a new MessageDigest
+	 * @throws IOException if the algorithm is not available
+	 */
+	public static MessageDigest messageDigest(final String algorithm) throws IOException {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch(final NoSuchAlgorithmException nsae){
+			throw new IOException("Digest algorithm not available: " + algorithm);
+		}
+	}
+
+	/**
+	 * Formats bytes, such as a digest, as lower-case hexadecimal.
+	 *
+	 * @param bytes the bytes
+	 * @return the hexadecimal string, two characters per byte
+	 */
+	public static String toHex(final byte[] bytes){
+		final StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for(final byte b : bytes){
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Inflater;
+
+/**
+ * Thread-safe, bounded pool of Inflaters, kept separately for each wrapping mode; the Inflater
+ * counterpart of the DeflaterPool. Inflaters are created on demand when the pool is empty, reset
+ * when released, and ended when released into a full pool. A released Inflater must not be used
+ * again by the caller.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class InflaterPool {
+
+	private static final InflaterPool SHARED = new InflaterPool(32);
+
+	private final BlockingQueue<Inflater> wrapped;
+	private final BlockingQueue<Inflater> raw;
+
+	/**
+	 * Creates a pool which will hold at most <code>maxPooled</code> released Inflaters for each mode.
+	 *
+	 * @param maxPooled the maximum number of idle Inflaters retained per mode
+	 */
+	public InflaterPool(final int maxPooled){
+		this.wrapped = new ArrayBlockingQueue<Inflater>(Math.max(1, maxPooled));
+		this.raw = new ArrayBlockingQueue<Inflater>(Math.max(1, maxPooled));
+	}
+
+	/**
+	 * Retrieves the shared pool, which retains up to 32 idle Inflaters per mode.
+	 *
+	 * @return the shared pool
+	 */
+	public static InflaterPool shared(){
+		return SHARED;
+	}
+
+	/**
+	 * Retrieves an Inflater from the pool, creating a new one if none is available.
+	 *
+	 * @param nowrap true to inflate raw deflate data, without the zlib header and checksum
+	 * @return an Inflater ready for new input
+	 */
+	public Inflater acquire(final boolean nowrap){
+		final Inflater inflater = (nowrap ? raw : wrapped).poll();
+		return inflater != null ? inflater : new Inflater(nowrap);
+	}
+
+	/**
+	 * Returns an Inflater, acquired with the given mode, to the pool.
+	 *
+	 * @param nowrap the mode the Inflater was acquired with
+	 * @param inflater the Inflater being released
+	 */
+	public void release(final boolean nowrap, final Inflater inflater){
+		if(inflater == null){
+			return;
+		}
+		inflater.reset();
+		if(!(nowrap ? raw : wrapped).offer(inflater)){
+			inflater.end();
+		}
+	}
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Reads and writes whole arrays of primitive values (long, int, double and float) in bulk.
+ * Values are converted through ByteBuffer views in chunks, in an explicit byte order, rather
+ * than one element at a time as with DataOutputStream and DataInputStream. Big-endian data is
+ * compatible with those classes.<br/><br/>
+ *
+ * The factory-based methods use IoTemplate, so the stream is created and closed by the method.
+ * The other methods leave the stream or channel open.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public final class PrimitiveArrayIo {
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private static final Codec LONGS = new Codec(8) {
+		@Override
+		void put(final ByteBuffer buffer, final Object array, final int offset, final int length){
+			buffer.asLongBuffer().put((long[])array, offset, length);
+		}
+
+		@Override
+		void get(final ByteBuffer buffer, final Object array, final int offset, final int length){
+			buffer.asLongBuffer().get((long[])array, offset, length);
+		}
+	};
+
+	private static final Codec INTS = new Codec(4) {
+		@Override
+		void put(final ByteBuffer buffer, final Object array, final int offset, final int length){
+			buffer.asIntBuffer().put((int[])array, offset, length);
+		}
+
+		@Override
+		void get(final ByteBuffer buffer, final Object array, final int offset, final int length){
+			buffer.asIntBuffer().get((int[])array, offset, length);
+		}
+	};
+
+	private static final Codec DOUBLES = new Codec(8) {
+		@Override
+		void put(final ByteBuffer buffer, final Object array, final int offset, final int length){
+			buffer.asDoubleBuffer().put((double[])array, offset, length);
+		}
+
+		@Override
+		void get(final ByteBuffer buffer, final Object array, final int offset, final int length){
+			buffer.asDoubleBuffer().get((double[])array, offset, length);
+		}
+	};
+
+	private static final Codec FLOATS = new Codec(4) {
+		@Override
+		void put(final ByteBuffer buffer, final Object array, final int offset, final int length){
+			buffer.asFloatBuffer().put((float[])array, offset, length);
+		}
+
+		@Override
+		void get(final ByteBuffer buffer, final Object array, final int offset, final int length){
+			buffer.asFloatBuffer().get((float[])array, offset, length);
+		}
+	};
+
+	/**
+	 * Negates instantiation.
+	 */
+	private PrimitiveArrayIo(){}
+
+	// streams
+
+	public static void write(final OutputStream out, final long[] values, final ByteOrder order) throws IOException {
+		write(out, LONGS, values, values.length, order);
+	}
+
+	public static void write(final OutputStream out, final int[] values, final ByteOrder order) throws IOException {
+		write(out, INTS, values, values.length, order);
+	}
+
+	public static void write(final OutputStream out, final double[] values, final ByteOrder order) throws IOException {
+		write(out, DOUBLES, values, values.length, order);
+	}
+
+	public static void write(final OutputStream out, final float[] values, final ByteOrder order) throws IOException {
+		write(out, FLOATS, values, values.length, order);
+	}
+
+	/**
+	 * Fills the given array with values read from the stream.
+	 *
+	 * @param in the stream to be read
+	 * @param values the array to be filled
+	 * @param order the byte order of the data
+	 * @throws IOException if there is a problem reading the data
+	 * @throws EOFException if the stream ends before the array is filled
+	 */
+	public static void read(final InputStream in, final long[] values, final ByteOrder order) throws IOException {
+		read(in, LONGS, values, values.length, order);
+	}
+
+	public static void read(final InputStream in, final int[] values, final ByteOrder order) throws IOException {
+		read(in, INTS, values, values.length, order);
+	}
+
+	public static void read(final InputStream in, final double[] values, final ByteOrder order) throws IOException {
+		read(in, DOUBLES, values, values.length, order);
+	}
+
+	public static void read(final InputStream in, final float[] values, final ByteOrder order) throws IOException {
+		read(in, FLOATS, values, values.length, order);
+	}
+
+	// channels
+
+	public static void write(final WritableByteChannel channel, final long[] values, final ByteOrder order) throws IOException {
+		write(channel, LONGS, values, values.length, order);
+	}
+
+	public static void write(final WritableByteChannel channel, final int[] values, final ByteOrder order) throws IOException {
+		write(channel, INTS, values, values.length, order);
+	}
+
+	public static void write(final WritableByteChannel channel, final double[] values, final ByteOrder order) throws IOException {
+		write(channel, DOUBLES, values, values.length, order);
+	}
+
+	public static void write(final WritableByteChannel channel, final float[] values, final ByteOrder order) throws IOException {
+		write(channel, FLOATS, values, values.length, order);
+	}
+
+	/**
+	 * Fills the given array with values read from the channel.
+	 *
+	 * @param channel the channel to be read
+	 * @param values the array to be filled
+	 * @param order the byte order of the data
+	 * @throws IOException if there is a problem reading the data
+	 * @throws EOFException if the channel ends before the array is filled
+	 */
+	public static void read(final ReadableByteChannel channel, final long[] values, final ByteOrder order) throws IOException {
+		read(channel, LONGS, values, values.length, order);
+	}
+
+	public static void read(final ReadableByteChannel channel, final int[] values, final ByteOrder order) throws IOException {
+		read(channel, INTS, values, values.length, order);
+	}
+
+	public static void read(final ReadableByteChannel channel, final double[] values, final ByteOrder order) throws IOException {
+		read(channel, DOUBLES, values, values.length, order);
+	}
+
+	public static void read(final ReadableByteChannel channel, final float[] values, final ByteOrder order) throws IOException {
+		read(channel, FLOATS, values, values.length, order);
+	}
+
+	// factories
+
+	/**
+	 * Writes the array to the OutputStream created by the given factory, closing the stream afterwards.
+	 *
+	 * @param <O> the OutputStream sub-type being used
+	 * @param osf the OutputStreamFactory
+	 * @param values the values to be written
+	 * @param order the byte order of the data
+	 * @throws IOException if there is a problem writing the data
+	 */
+	public static <O extends OutputStream> void write(final OutputStreamFactory<O> osf, final long[] values, final ByteOrder order) throws IOException {
+		write(osf, LONGS, values, values.length, order);
+	}
+
+	public static <O extends OutputStream> void write(final OutputStreamFactory<O> osf, final int[] values, final ByteOrder order) throws IOException {
+		write(osf, INTS, values, values.length, order);
+	}
+
+	public static <O extends OutputStream> void write(final OutputStreamFactory<O> osf, final double[] values, final ByteOrder order) throws IOException {
+		write(osf, DOUBLES, values, values.length, order);
+	}
+
+	public static <O extends OutputStream> void write(final OutputStreamFactory<O> osf, final float[] values, final ByteOrder order) throws IOException {
+		write(osf, FLOATS, values, values.length, order);
+	}
+
+	/**
+	 * Reads the given number of values from the InputStream created by the given factory, closing the
+	 * stream afterwards.
+	 *
+	 * @param <I> the InputStream sub-type being used
+	 * @param isf the InputStreamFactory
+	 * @param count the number of values to be read
+	 * @param order the byte order of the data
+	 * @return the values read
+	 * @throws IOException if there is a problem reading the data
+	 * @throws EOFException if the stream ends before all of the values are read
+	 */
+	public static <I extends InputStream> long[] readLongs(final InputStreamFactory<I> isf, final int count, final ByteOrder order) throws IOException {
+		final long[] values = new long[count];
+		read(isf, LONGS, values, count, order);
+		return values;
+	}
+
+	public static <I extends InputStream> int[] readInts(final InputStreamFactory<I> isf, final int count, final ByteOrder order) throws IOException {
+		final int[] values = new int[count];
+		read(isf, INTS, values, count, order);
+		return values;
+	}
+
+	public static <I extends InputStream> double[] readDoubles(final InputStreamFactory<I> isf, final int count, final ByteOrder order) throws IOException {
+		final double[] values = new double[count];
+		read(isf, DOUBLES, values, count, order);
+		return values;
+	}
+
+	public static <I extends InputStream> float[] readFloats(final InputStreamFactory<I> isf, final int count, final ByteOrder order) throws IOException {
+		final float[] values = new float[count];
+		read(isf, FLOATS, values, count, order);
+		return values;
+	}
+
+	private static void write(final OutputStream out, final Codec codec, final Object array, final int length, final ByteOrder order) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(chunkSize(codec, length)).order(order);
+		final int perChunk = buffer.capacity() / codec.width;
+		for(int offset=0; offset<length; offset+=perChunk){
+			final int count = Math.min(perChunk, length - offset);
+			codec.put(buffer, array, offset, count);
+			out.write(buffer.array(), 0, count * codec.width);
+		}
+	}
+
+	private static void read(final InputStream in, final Codec codec, final Object array, final int length, final ByteOrder order) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(chunkSize(codec, length)).order(order);
+		final byte[] bytes = buffer.array();
+		final int perChunk = buffer.capacity() / codec.width;
+		for(int offset=0; offset<length; offset+=perChunk){
+			final int count = Math.min(perChunk, length - offset);
+			final int byteCount = count * codec.width;
+			int read = 0;
+			while(read < byteCount){
+				final int n = in.read(bytes, read, byteCount - read);
+				if(n == -1){
+					throw new EOFException("Stream ended after " + (offset * codec.width + read) + " bytes");
+				}
+				read += n;
+			}
+			codec.get(buffer, array, offset, count);
+		}
+	}
+
+	private static void write(final WritableByteChannel channel, final Codec codec, final Object array, final int length, final ByteOrder order) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(chunkSize(codec, length)).order(order);
+		final int perChunk = buffer.capacity() / codec.width;
+		for(int offset=0; offset<length; offset+=perChunk){
+			final int count = Math.min(perChunk, length - offset);
+			buffer.clear();
+			codec.put(buffer, array, offset, count);
+			buffer.limit(count * codec.width);
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+		}
+	}
+
+	private static void read(final ReadableByteChannel channel, final Codec codec, final Object array, final int length, final ByteOrder order) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(chunkSize(codec, length)).order(order);
+		final int perChunk = buffer.capacity() / codec.width;
+		for(int offset=0; offset<length; offset+=perChunk){
+			final int count = Math.min(perChunk, length - offset);
+			buffer.clear();
+			buffer.limit(count * codec.width);
+			while(buffer.hasRemaining()){
+				if(channel.read(buffer) == -1){
+					throw new EOFException("Channel ended after " + (offset * codec.width + buffer.position()) + " bytes");
+				}
+			}
+			buffer.flip();
+			codec.get(buffer, array, offset, count);
+		}
+	}
+
+	private static <O extends OutputStream> void write(final OutputStreamFactory<O> osf, final Codec codec, final Object array, final int length, final ByteOrder order) throws IOException {
+		IoTemplate.output(osf, new OutputStreamCallback<O>() {
+			@Override
+			public void output(final O out) throws IOException {
+				write(out, codec, array, length, order);
+			}
+		});
+	}
+
+	private static <I extends InputStream> void read(final InputStreamFactory<I> isf, final Codec codec, final Object array, final int length, final ByteOrder order) throws IOException {
+		IoTemplate.input(isf, new InputStreamCallback<I>() {
+			@Override
+			public void input(final I in) throws IOException {
+				read(in, codec, array, length, order);
+			}
+		});
+	}
+
+	private static int chunkSize(final Codec codec, final int length){
+		return (int)Math.max(codec.width, Math.min(CHUNK_SIZE, (long)length * codec.width));
+	}
+
+	/**
+	 * Converts between a primitive array and the typed view of a ByteBuffer.
+	 */
+	private abstract static class Codec {
+
+		final int width;
+
+		Codec(final int width){
+			this.width = width;
+		}
+
+		abstract void put(ByteBuffer buffer, Object array, int offset, int length);
+
+		abstract void get(ByteBuffer buffer, Object array, int offset, int length);
+	}
+}
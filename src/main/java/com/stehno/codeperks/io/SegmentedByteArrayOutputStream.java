@@ -0,0 +1,279 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory OutputStream, similar to ByteArrayOutputStream, which grows by adding fixed-size
+ * segments rather than doubling and copying a single array. Segments are taken from (and
+ * returned to) a ByteSegmentPool.<br/><br/>
+ *
+ * The content may be read back without copying through <code>toInputStream()</code> or
+ * <code>toByteBuffers()</code>. These views share the segments of the stream, so they
+ * are only valid until <code>reset()</code> is called. Closing the stream has no effect,
+ * as with ByteArrayOutputStream.<br/><br/>
+ *
+ * <b>Usage</b><br/>
+ *
+ * <pre>
+ * final SegmentedByteArrayOutputStream out = new SegmentedByteArrayOutputStream();
+ * IoTemplate.output(out, callback);
+ * try {
+ * 		zipBuilder.addEntry("payload.bin", out.toInputStream());
+ * } finally {
+ * 		out.reset();
+ * }
+ * </pre>
+ *
+ * Instances are not thread-safe.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class SegmentedByteArrayOutputStream extends OutputStream {
+
+	private final ByteSegmentPool pool;
+	private final int segmentSize;
+	private final List<byte[]> segments = new ArrayList<byte[]>();
+	private byte[] current;
+	private int position;
+	private long size;
+
+	/**
+	 * Creates a stream using the shared segment pool.
+	 */
+	public SegmentedByteArrayOutputStream(){
+		this(ByteSegmentPool.shared());
+	}
+
+	/**
+	 * Creates a stream using segments from the given pool.
+	 *
+	 * @param pool the segment pool
+	 */
+	public SegmentedByteArrayOutputStream(final ByteSegmentPool pool){
+		this.pool = pool;
+		this.segmentSize = pool.getSegmentSize();
+	}
+
+	@Override
+	public void write(final int b){
+		if(current == null || position == segmentSize){
+			addSegment();
+		}
+		current[position++] = (byte)b;
+		size++;
+	}
+
+	@Override
+	public void write(final byte[] bytes, final int off, final int len){
+		if(off < 0 || len < 0 || off + len > bytes.length){
+			throw new IndexOutOfBoundsException();
+		}
+
+		int offset = off;
+		int remaining = len;
+		while(remaining > 0){
+			if(current == null || position == segmentSize){
+				addSegment();
+			}
+			final int count = Math.min(remaining, segmentSize - position);
+			System.arraycopy(bytes, offset, current, position, count);
+			position += count;
+			offset += count;
+			remaining -= count;
+		}
+		size += len;
+	}
+
+	/**
+	 * Reads the given stream to its end, writing its data directly into the segments.
+	 *
+	 * @param in the stream to be read
+	 * @return the number of bytes read
+	 * @throws IOException if there is a problem reading the stream
+	 */
+	public long readFrom(final InputStream in) throws IOException {
+		long total = 0;
+		while(true){
+			if(current == null || position == segmentSize){
+				addSegment();
+			}
+			final int count = in.read(current, position, segmentSize - position);
+			if(count == -1){
+				return total;
+			}
+			position += count;
+			size += count;
+			total += count;
+		}
+	}
+
+	/**
+	 * Retrieves the number of bytes written to the stream.
+	 *
+	 * @return the number of bytes written
+	 */
+	public long size(){
+		return size;
+	}
+
+	/**
+	 * Writes the content of the stream to the given stream, one segment at a time.
+	 *
+	 * @param out the stream to be written to
+	 * @throws IOException if there is a problem writing the data
+	 */
+	public void writeTo(final OutputStream out) throws IOException {
+		for(int i=0; i<segments.size(); i++){
+			out.write(segments.get(i), 0, segmentLength(i));
+		}
+	}
+
+	/**
+	 * Creates an InputStream which reads the current content directly from the segments.
+	 *
+	 * @return a stream over the current content
+	 */
+	public InputStream toInputStream(){
+		return new SegmentInputStream(segments.toArray(new byte[segments.size()][]), size, segmentSize);
+	}
+
+	/**
+	 * Creates read-only ByteBuffers wrapping each of the segments, limited to the current content.
+	 *
+	 * @return the buffers, in content order
+	 */
+	public ByteBuffer[] toByteBuffers(){
+		final ByteBuffer[] buffers = new ByteBuffer[segments.size()];
+		for(int i=0; i<buffers.length; i++){
+			buffers[i] = ByteBuffer.wrap(segments.get(i), 0, segmentLength(i)).asReadOnlyBuffer();
+		}
+		return buffers;
+	}
+
+	/**
+	 * Copies the content into a single new array. This defeats the purpose of the stream for
+	 * large content and should only be used where an array is required.
+	 *
+	 * @return a copy of the content
+	 */
+	public byte[] toByteArray(){
+		if(size > Integer.MAX_VALUE){
+			throw new IllegalStateException("Content is too large for an array: " + size);
+		}
+
+		final byte[] bytes = new byte[(int)size];
+		int offset = 0;
+		for(int i=0; i<segments.size(); i++){
+			final int length = segmentLength(i);
+			System.arraycopy(segments.get(i), 0, bytes, offset, length);
+			offset += length;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Discards the content of the stream and returns its segments to the pool. Views created
+	 * before the reset must no longer be used.
+	 */
+	public void reset(){
+		for(final byte[] segment : segments){
+			pool.release(segment);
+		}
+		segments.clear();
+		current = null;
+		position = 0;
+		size = 0;
+	}
+
+	private void addSegment(){
+		current = pool.acquire();
+		segments.add(current);
+		position = 0;
+	}
+
+	private int segmentLength(final int index){
+		return index == segments.size() - 1 ? position : segmentSize;
+	}
+
+	/**
+	 * InputStream reading across a snapshot of the segments.
+	 */
+	private static final class SegmentInputStream extends InputStream {
+
+		private final byte[][] segments;
+		private final long size;
+		private final int segmentSize;
+		private long position;
+
+		SegmentInputStream(final byte[][] segments, final long size, final int segmentSize){
+			this.segments = segments;
+			this.size = size;
+			this.segmentSize = segmentSize;
+		}
+
+		@Override
+		public int read(){
+			if(position >= size){
+				return -1;
+			}
+			final int b = segments[(int)(position / segmentSize)][(int)(position % segmentSize)] & 0xff;
+			position++;
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] bytes, final int off, final int len){
+			if(len == 0){
+				return 0;
+			}
+			if(position >= size){
+				return -1;
+			}
+
+			int offset = off;
+			int remaining = (int)Math.min(len, size - position);
+			final int total = remaining;
+			while(remaining > 0){
+				final int index = (int)(position % segmentSize);
+				final int count = Math.min(remaining, segmentSize - index);
+				System.arraycopy(segments[(int)(position / segmentSize)], index, bytes, offset, count);
+				position += count;
+				offset += count;
+				remaining -= count;
+			}
+			return total;
+		}
+
+		@Override
+		public long skip(final long n){
+			final long skipped = Math.max(0, Math.min(n, size - position));
+			position += skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available(){
+			return (int)Math.min(Integer.MAX_VALUE, size - position);
+		}
+	}
+}
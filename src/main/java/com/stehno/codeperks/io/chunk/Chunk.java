@@ -0,0 +1,82 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.chunk;
+
+import java.io.Serializable;
+
+/**
+ * A content-defined chunk of a stream, as produced by the Chunker: its position in the stream,
+ * its length and the hash of its content. The chunk data is not serialized, so a list of chunks
+ * may be kept as a manifest of the stream.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public final class Chunk implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long offset;
+	private final int length;
+	private final String hash;
+	private final transient byte[] data;
+
+	Chunk(final long offset, final int length, final String hash, final byte[] data){
+		this.offset = offset;
+		this.length = length;
+		this.hash = hash;
+		this.data = data;
+	}
+
+	public long getOffset(){
+		return offset;
+	}
+
+	public int getLength(){
+		return length;
+	}
+
+	/**
+	 * Retrieves the hex-encoded hash of the chunk content.
+	 *
+	 * @return the chunk hash
+	 */
+	public String getHash(){
+		return hash;
+	}
+
+	/**
+	 * Retrieves the chunk content.
+	 *
+	 * @return the chunk data, or null for a chunk description without data
+	 */
+	public byte[] getData(){
+		return data;
+	}
+
+	/**
+	 * Creates a copy of this chunk without its data, suitable for keeping in a manifest.
+	 *
+	 * @return the chunk description
+	 */
+	public Chunk withoutData(){
+		return new Chunk(offset, length, hash, null);
+	}
+
+	@Override
+	public String toString(){
+		return "Chunk{offset=" + offset + ", length=" + length + ", hash=" + hash + "}";
+	}
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.chunk;
+
+import java.io.IOException;
+
+/**
+ * Callback receiving the chunks of a stream from the Chunker, in stream order.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public interface ChunkCallback {
+
+	/**
+	 * Handles a chunk of the stream.
+	 *
+	 * @param chunk the chunk, with its data
+	 * @throws IOException if there is a problem handling the chunk
+	 */
+	void chunk(Chunk chunk) throws IOException;
+}
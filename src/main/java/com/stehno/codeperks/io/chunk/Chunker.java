@@ -0,0 +1,227 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.chunk;
+
+import static com.stehno.codeperks.io.IoTemplate.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+import com.stehno.codeperks.io.DigestIo;
+import com.stehno.codeperks.io.InputStreamCallback;
+import com.stehno.codeperks.io.InputStreamFactory;
+
+/**
+ * Splits streams into variable-size chunks at content-defined boundaries using the FastCDC
+ * algorithm. A boundary is placed where a rolling "gear" hash of the preceding bytes matches a
+ * mask, so an insertion or deletion in the data only moves the boundaries near it and the chunks
+ * elsewhere keep their content and hash. This makes the chunks suitable for deduplicating
+ * successive versions of large files (see FileChunkStore).<br/><br/>
+ *
+ * The boundaries depend only on the data and the configured sizes, which must therefore be kept
+ * the same for all of the data to be deduplicated together. Instances are immutable once
+ * configured and may be shared between threads.<br/><br/>
+ *
+ * <b>Usage</b><br/>
+ *
+ * <pre>
+ * new Chunker().chunk(new FileInputStreamFactory(file), new ChunkCallback() {
+ *     public void chunk(Chunk chunk) throws IOException {
+ *         ...
+ *     }
+ * });
+ * </pre>
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class Chunker {
+
+	/**
+	 * The default minimum chunk size (2 KB).
+	 */
+	public static final int DEFAULT_MIN_SIZE = 2 * 1024;
+
+	/**
+	 * The default average chunk size (8 KB).
+	 */
+	public static final int DEFAULT_AVERAGE_SIZE = 8 * 1024;
+
+	/**
+	 * The default maximum chunk size (64 KB).
+	 */
+	public static final int DEFAULT_MAX_SIZE = 64 * 1024;
+
+	// generated from a fixed seed, so that boundaries are stable across runs and JVMs
+	private static final long[] GEAR = new long[256];
+
+	static {
+		long seed = 0x2545f4914f6cdd1dL;
+		for(int i=0; i<GEAR.length; i++){
+			seed += 0x9e3779b97f4a7c15L;
+			long z = seed;
+			z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+			z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+			GEAR[i] = z ^ (z >>> 31);
+		}
+	}
+
+	private final int minSize;
+	private final int averageSize;
+	private final int maxSize;
+	private final long smallMask;
+	private final long largeMask;
+	private String algorithm = "SHA-256";
+
+	/**
+	 * Creates a chunker with the default chunk sizes.
+	 */
+	public Chunker(){
+		this(DEFAULT_MIN_SIZE, DEFAULT_AVERAGE_SIZE, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Creates a chunker with the given chunk sizes.
+	 *
+	 * @param minSize the minimum chunk size
+	 * @param averageSize the target average chunk size, which is rounded to a power of two
+	 * @param maxSize the maximum chunk size
+	 */
+	public Chunker(final int minSize, final int averageSize, final int maxSize){
+		if(minSize < 64 || minSize > averageSize || averageSize > maxSize){
+			throw new IllegalArgumentException("Chunk sizes must satisfy 64 <= min <= average <= max");
+		}
+
+		this.minSize = minSize;
+		this.averageSize = averageSize;
+		this.maxSize = maxSize;
+
+		// normalized chunking: a harder mask before the average size and an easier one after it
+		final int bits = 31 - Integer.numberOfLeadingZeros(averageSize);
+		this.smallMask = topBits(bits + 2);
+		this.largeMask = topBits(Math.max(1, bits - 2));
+	}
+
+	/**
+	 * Sets the MessageDigest algorithm used to hash the chunks. The default is SHA-256.
+	 *
+	 * @param algorithm the digest algorithm name
+	 * @return a reference to the chunker
+	 */
+	public Chunker setAlgorithm(final String algorithm){
+		this.algorithm = algorithm;
+		return this;
+	}
+
+	/**
+	 * Chunks the stream created by the given factory, passing each chunk to the callback in order.
+	 *
+	 * @param <I> the type of InputStream
+	 * @param isf the factory creating the stream to be chunked
+	 * @param callback the chunk callback
+	 * @throws IOException if there is a problem reading the stream or handling a chunk
+	 */
+	public <I extends InputStream> void chunk(final InputStreamFactory<I> isf, final ChunkCallback callback) throws IOException {
+		input(isf, new InputStreamCallback<I>() {
+			@Override
+			public void input(final I in) throws IOException {
+				chunk(in, callback);
+			}
+		});
+	}
+
+	/**
+	 * Chunks the given stream, passing each chunk to the callback in order. The stream is not closed.
+	 *
+	 * @param in the stream to be chunked
+	 * @param callback the chunk callback
+	 * @throws IOException if there is a problem reading the stream or handling a chunk
+	 */
+	public void chunk(final InputStream in, final ChunkCallback callback) throws IOException {
+		final MessageDigest digest = DigestIo.messageDigest(algorithm);
+		final byte[] buffer = new byte[2 * maxSize];
+		int start = 0;
+		int end = 0;
+		long offset = 0;
+		boolean eof = false;
+
+		while(true){
+			// keeps at least a maximum chunk in the buffer until the end of the stream
+			if(!eof && end - start < maxSize){
+				System.arraycopy(buffer, start, buffer, 0, end - start);
+				end -= start;
+				start = 0;
+				while(end < buffer.length){
+					final int count = in.read(buffer, end, buffer.length - end);
+					if(count == -1){
+						eof = true;
+						break;
+					}
+					end += count;
+				}
+			}
+
+			if(start == end){
+				break;
+			}
+
+			final int length = cut(buffer, start, end - start);
+			final byte[] data = new byte[length];
+			System.arraycopy(buffer, start, data, 0, length);
+
+			digest.reset();
+			digest.update(data);
+			callback.chunk(new Chunk(offset, length, DigestIo.toHex(digest.digest()), data));
+
+			start += length;
+			offset += length;
+		}
+	}
+
+	/**
+	 * Finds the length of the next chunk of the given data using the FastCDC cut-point algorithm.
+	 */
+	private int cut(final byte[] bytes, final int off, final int available){
+		if(available <= minSize){
+			return available;
+		}
+
+		final int limit = Math.min(available, maxSize);
+		final int normal = Math.min(limit, averageSize);
+		long hash = 0;
+		int i = minSize;
+		for(; i<normal; i++){
+			hash = (hash << 1) + GEAR[bytes[off + i] & 0xff];
+			if((hash & smallMask) == 0){
+				return i + 1;
+			}
+		}
+		for(; i<limit; i++){
+			hash = (hash << 1) + GEAR[bytes[off + i] & 0xff];
+			if((hash & largeMask) == 0){
+				return i + 1;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * The gear hash shifts left, so its high bits depend on the most bytes and are used for the masks.
+	 */
+	private static long topBits(final int count){
+		return -1L << (64 - count);
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.chunk;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import com.stehno.codeperks.io.InputStreamFactory;
+
+/**
+ * Content-addressed store of chunks in a directory, one file per distinct chunk named by its
+ * hash. A chunk which is already in the store is skipped, so storing successive versions of a
+ * file only costs the space of the chunks which changed. A stream is stored as a manifest (the
+ * list of its chunks) from which it may later be restored.<br/><br/>
+ *
+ * Chunks are written to a temporary file and renamed into place, so a chunk file is always
+ * complete. Instances are thread-safe.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class FileChunkStore implements ChunkCallback {
+
+	private final File directory;
+	private final Set<String> known = Collections.synchronizedSet(new HashSet<String>());
+	private long storedBytes;
+	private long skippedBytes;
+
+	/**
+	 * Creates a store in the given directory.
+	 *
+	 * @param directory the store directory, which is created if it does not exist
+	 * @throws IOException if the directory cannot be created
+	 */
+	public FileChunkStore(final File directory) throws IOException {
+		FileUtils.forceMkdir(directory);
+		this.directory = directory;
+	}
+
+	/**
+	 * Determines whether the store holds the chunk with the given hash.
+	 *
+	 * @param hash the chunk hash
+	 * @return true if the chunk is stored
+	 */
+	public boolean contains(final String hash){
+		if(known.contains(hash)){
+			return true;
+		}
+		if(fileFor(hash).exists()){
+			known.add(hash);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Stores the given chunk, unless the store already holds it.
+	 *
+	 * @param chunk the chunk, with its data
+	 * @return true if the chunk was written, false if it was already stored
+	 * @throws IOException if there is a problem writing the chunk
+	 */
+	public boolean put(final Chunk chunk) throws IOException {
+		if(contains(chunk.getHash())){
+			synchronized(this){
+				skippedBytes += chunk.getLength();
+			}
+			return false;
+		}
+
+		final File file = fileFor(chunk.getHash());
+		FileUtils.forceMkdir(file.getParentFile());
+
+		final File temp = File.createTempFile("chunk.", ".tmp", file.getParentFile());
+		final OutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(chunk.getData(), 0, chunk.getLength());
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+
+		// a concurrent writer of the same chunk may have won the race, which is harmless
+		if(!temp.renameTo(file) && !file.exists()){
+			FileUtils.deleteQuietly(temp);
+			throw new IOException("Unable to store chunk: " + file);
+		}
+		FileUtils.deleteQuietly(temp);
+
+		known.add(chunk.getHash());
+		synchronized(this){
+			storedBytes += chunk.getLength();
+		}
+		return true;
+	}
+
+	@Override
+	public void chunk(final Chunk chunk) throws IOException {
+		put(chunk);
+	}
+
+	/**
+	 * Chunks the stream created by the given factory and stores any chunks not already held.
+	 *
+	 * @param <I> the type of InputStream
+	 * @param isf the factory creating the stream to be stored
+	 * @param chunker the chunker used to split the stream
+	 * @return the manifest of the stream: its chunks, in order, without their data
+	 * @throws IOException if there is a problem reading the stream or storing a chunk
+	 */
+	public <I extends InputStream> List<Chunk> store(final InputStreamFactory<I> isf, final Chunker chunker) throws IOException {
+		final List<Chunk> manifest = new ArrayList<Chunk>();
+		chunker.chunk(isf, new ChunkCallback() {
+			@Override
+			public void chunk(final Chunk chunk) throws IOException {
+				put(chunk);
+				manifest.add(chunk.withoutData());
+			}
+		});
+		return manifest;
+	}
+
+	/**
+	 * Writes the content described by the given manifest to the stream.
+	 *
+	 * @param manifest the chunks of the content, in order
+	 * @param out the stream to be written to, which is not closed
+	 * @throws IOException if a chunk is missing or there is a problem writing the stream
+	 */
+	public void restore(final List<Chunk> manifest, final OutputStream out) throws IOException {
+		for(final Chunk chunk : manifest){
+			final File file = fileFor(chunk.getHash());
+			if(!file.exists()){
+				throw new IOException("Chunk is missing from the store: " + chunk);
+			}
+			out.write(FileUtils.readFileToByteArray(file));
+		}
+	}
+
+	/**
+	 * Retrieves the file holding the chunk with the given hash. Chunks are spread over
+	 * subdirectories named by the first two characters of their hash.
+	 *
+	 * @param hash the chunk hash
+	 * @return the chunk file, which may not exist
+	 */
+	public File fileFor(final String hash){
+		return new File(new File(directory, hash.substring(0, 2)), hash);
+	}
+
+	/**
+	 * Retrieves the number of bytes written to the store by this instance.
+	 *
+	 * @return the stored byte count
+	 */
+	public synchronized long getStoredBytes(){
+		return storedBytes;
+	}
+
+	/**
+	 * Retrieves the number of bytes not written to the store because their chunks were already held.
+	 *
+	 * @return the skipped byte count
+	 */
+	public synchronized long getSkippedBytes(){
+		return skippedBytes;
+	}
+}
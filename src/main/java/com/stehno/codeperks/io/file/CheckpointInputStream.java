@@ -0,0 +1,244 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Buffered InputStream over a file which records checkpoints of the processing of its content.
+ * A checkpoint holds the number of bytes consumed from the stream and a snapshot of the caller's
+ * state, and is written to a sidecar file. When a stream is opened over a file with a checkpoint,
+ * it starts at the checkpointed position and makes the saved state available from
+ * <code>getState()</code>, so that interrupted processing resumes where it left off.<br/><br/>
+ *
+ * The caller should only checkpoint at a point where the state reflects exactly the bytes
+ * consumed so far (e.g. at a record boundary). Checkpoints are throttled to the configured interval,
+ * so <code>checkpoint()</code> may be called after every record. The sidecar is written to a
+ * temporary file, synced and renamed into place, so a crash never leaves a partial checkpoint.<br/><br/>
+ *
+ * Instances are created by the CheckpointInputStreamFactory and are not thread-safe.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class CheckpointInputStream extends InputStream {
+
+	private static final Log log = LogFactory.getLog(CheckpointInputStream.class);
+	private static final int VERSION = 1;
+
+	private final File file;
+	private final File checkpointFile;
+	private final long interval;
+	private final InputStream in;
+	private final Serializable state;
+	private final long startPosition;
+	private long position;
+	private long lastCheckpoint;
+
+	CheckpointInputStream(final File file, final File checkpointFile, final long interval) throws IOException {
+		this.file = file;
+		this.checkpointFile = checkpointFile;
+		this.interval = interval;
+
+		final Object[] checkpoint = readCheckpoint();
+		this.startPosition = checkpoint != null ? (Long)checkpoint[0] : 0;
+		this.state = checkpoint != null ? (Serializable)checkpoint[1] : null;
+
+		final FileInputStream fileIn = new FileInputStream(file);
+		try {
+			fileIn.getChannel().position(startPosition);
+		} catch(final IOException ioe){
+			IOUtils.closeQuietly(fileIn);
+			throw ioe;
+		}
+		this.in = new BufferedInputStream(fileIn);
+		this.position = startPosition;
+		this.lastCheckpoint = System.currentTimeMillis();
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int b = in.read();
+		if(b != -1){
+			position++;
+		}
+		return b;
+	}
+
+	@Override
+	public int read(final byte[] bytes, final int off, final int len) throws IOException {
+		final int count = in.read(bytes, off, len);
+		if(count > 0){
+			position += count;
+		}
+		return count;
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		final long skipped = in.skip(n);
+		position += skipped;
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return in.available();
+	}
+
+	/**
+	 * Reads a line of text, terminated by a line feed, in an ASCII-compatible character set such as
+	 * UTF-8 or ISO-8859-1. Unlike a Reader, this does not read ahead of the returned line, so the
+	 * stream position remains exact for checkpointing.
+	 *
+	 * @param charsetName the name of the character set
+	 * @return the line, without its terminator, or null at the end of the file
+	 * @throws IOException if there is a problem reading the file
+	 */
+	public String readLine(final String charsetName) throws IOException {
+		final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+		int b;
+		while((b = read()) != -1 && b != '\n'){
+			line.write(b);
+		}
+		if(b == -1 && line.size() == 0){
+			return null;
+		}
+
+		final byte[] bytes = line.toByteArray();
+		final int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+		return new String(bytes, 0, length, charsetName);
+	}
+
+	/**
+	 * Retrieves the state saved with the checkpoint this stream was resumed from.
+	 *
+	 * @return the saved state, or null if processing started from the beginning of the file
+	 */
+	public Serializable getState(){
+		return state;
+	}
+
+	/**
+	 * Determines whether this stream was resumed from a checkpoint.
+	 *
+	 * @return true if processing resumed part way through the file
+	 */
+	public boolean isResumed(){
+		return startPosition > 0;
+	}
+
+	/**
+	 * Retrieves the number of bytes of the file consumed so far, including any skipped on resumption.
+	 *
+	 * @return the file position
+	 */
+	public long getPosition(){
+		return position;
+	}
+
+	/**
+	 * Records a checkpoint at the current position, if the checkpoint interval has elapsed since the
+	 * last one.
+	 *
+	 * @param state the caller's state, reflecting exactly the bytes consumed so far
+	 * @return true if the checkpoint was written
+	 * @throws IOException if there is a problem writing the checkpoint
+	 */
+	public boolean checkpoint(final Serializable state) throws IOException {
+		if(System.currentTimeMillis() - lastCheckpoint < interval){
+			return false;
+		}
+		checkpointNow(state);
+		return true;
+	}
+
+	/**
+	 * Records a checkpoint at the current position, regardless of the checkpoint interval.
+	 *
+	 * @param state the caller's state, reflecting exactly the bytes consumed so far
+	 * @throws IOException if there is a problem writing the checkpoint
+	 */
+	public void checkpointNow(final Serializable state) throws IOException {
+		final File temp = new File(checkpointFile.getPath() + ".tmp");
+		final FileOutputStream fileOut = new FileOutputStream(temp);
+		try {
+			final ObjectOutputStream out = new ObjectOutputStream(fileOut);
+			out.writeInt(VERSION);
+			out.writeLong(position);
+			out.writeObject(state);
+			out.flush();
+			fileOut.getFD().sync();
+		} finally {
+			IOUtils.closeQuietly(fileOut);
+		}
+
+		// the rename replaces the previous checkpoint atomically where the platform allows it
+		if(!temp.renameTo(checkpointFile) && !(checkpointFile.delete() && temp.renameTo(checkpointFile))){
+			throw new IOException("Unable to write checkpoint file: " + checkpointFile);
+		}
+		lastCheckpoint = System.currentTimeMillis();
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Reads the saved checkpoint, discarding it if it does not fit the file.
+	 *
+	 * @return the checkpointed position and state, or null if there is no usable checkpoint
+	 */
+	private Object[] readCheckpoint() throws IOException {
+		if(!checkpointFile.exists()){
+			return null;
+		}
+
+		final FileInputStream fileIn = new FileInputStream(checkpointFile);
+		try {
+			final ObjectInputStream objects = new ObjectInputStream(new BufferedInputStream(fileIn));
+			if(objects.readInt() != VERSION){
+				throw new IOException("Unsupported checkpoint file version: " + checkpointFile);
+			}
+
+			final long checkpointPosition = objects.readLong();
+			final Object checkpointState = objects.readObject();
+			if(checkpointPosition > file.length()){
+				log.warn("Checkpoint position (" + checkpointPosition + ") is beyond the end of " + file + ", starting from the beginning");
+				return null;
+			}
+			return new Object[]{ checkpointPosition, checkpointState };
+
+		} catch(final ClassNotFoundException cnfe){
+			throw new IOException("Unable to restore checkpoint state from " + checkpointFile + ": " + cnfe.getMessage());
+		} finally {
+			IOUtils.closeQuietly(fileIn);
+		}
+	}
+}
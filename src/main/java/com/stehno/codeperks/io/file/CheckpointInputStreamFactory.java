@@ -0,0 +1,86 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.stehno.codeperks.io.InputStreamFactory;
+
+/**
+ * InputStreamFactory creating CheckpointInputStreams, which resume from the file's checkpoint
+ * if it has one. By default the checkpoint is kept beside the file, in a file of the same name
+ * with a ".checkpoint" suffix.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class CheckpointInputStreamFactory implements InputStreamFactory<CheckpointInputStream> {
+
+	/**
+	 * The default minimum interval between checkpoints (5 seconds).
+	 */
+	public static final long DEFAULT_INTERVAL = 5000;
+
+	private final File file;
+	private final File checkpointFile;
+	private final long interval;
+
+	/**
+	 * Creates a factory for the given file with the default checkpoint file and interval.
+	 *
+	 * @param file the file to be read
+	 */
+	public CheckpointInputStreamFactory(final File file){
+		this(file, checkpointFileFor(file), DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Creates a factory for the given file.
+	 *
+	 * @param file the file to be read
+	 * @param checkpointFile the file holding the checkpoint
+	 * @param interval the minimum interval between checkpoints in milliseconds
+	 */
+	public CheckpointInputStreamFactory(final File file, final File checkpointFile, final long interval){
+		this.file = file;
+		this.checkpointFile = checkpointFile;
+		this.interval = interval;
+	}
+
+	@Override
+	public CheckpointInputStream inputStream() throws IOException {
+		return new CheckpointInputStream(file, checkpointFile, interval);
+	}
+
+	/**
+	 * Retrieves the file holding the checkpoint.
+	 *
+	 * @return the checkpoint file
+	 */
+	public File getCheckpointFile(){
+		return checkpointFile;
+	}
+
+	/**
+	 * Retrieves the default checkpoint file for the given file.
+	 *
+	 * @param file the file being read
+	 * @return the checkpoint file
+	 */
+	public static File checkpointFileFor(final File file){
+		return new File(file.getPath() + ".checkpoint");
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a constant database file in the <code>cdb</code> format, such as one written by the
+ * ConstantDatabaseWriter. The file is memory-mapped, so opening it loads nothing onto the heap and
+ * the pages are shared through the page cache by every process reading the same file.<br/><br/>
+ *
+ * A lookup hashes the key, reads the location of its hash table from the header and probes the
+ * table from the slot chosen by the hash; a hit then reads the record itself. Instances are
+ * thread-safe.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class ConstantDatabaseReader {
+
+	private final MappedFile file;
+
+	/**
+	 * Opens the given database file.
+	 *
+	 * @param file the database file
+	 * @throws IOException if there is a problem mapping the file or it is too small to be a database
+	 */
+	public ConstantDatabaseReader(final File file) throws IOException {
+		this.file = new MappedFile(file, ByteOrder.LITTLE_ENDIAN);
+		if(this.file.size() < ConstantDatabaseWriter.HEADER_LENGTH){
+			this.file.close();
+			throw new IOException("Not a constant database file: " + file);
+		}
+	}
+
+	/**
+	 * Retrieves the first value stored for the given key.
+	 *
+	 * @param key the key
+	 * @return a copy of the value, or null if the key is not present
+	 */
+	public byte[] get(final byte[] key){
+		final ByteBuffer value = getBuffer(key);
+		if(value == null){
+			return null;
+		}
+
+		final byte[] bytes = new byte[value.remaining()];
+		value.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Retrieves a read-only view of the first value stored for the given key, without copying it.
+	 *
+	 * @param key the key
+	 * @return the value buffer, or null if the key is not present
+	 */
+	public ByteBuffer getBuffer(final byte[] key){
+		final List<ByteBuffer> values = find(key, true);
+		return values.isEmpty() ? null : values.get(0);
+	}
+
+	/**
+	 * Retrieves all of the values stored for the given key, in the order they were added.
+	 *
+	 * @param key the key
+	 * @return read-only views of the values (empty if the key is not present)
+	 */
+	public List<ByteBuffer> getAll(final byte[] key){
+		return find(key, false);
+	}
+
+	/**
+	 * Closes the database file. The mapping itself is released once it is garbage collected.
+	 *
+	 * @throws IOException if there is a problem closing the file
+	 */
+	public void close() throws IOException {
+		file.close();
+	}
+
+	private List<ByteBuffer> find(final byte[] key, final boolean first){
+		final List<ByteBuffer> values = new ArrayList<ByteBuffer>(1);
+
+		final int hash = ConstantDatabaseWriter.hash(key, 0, key.length);
+		final long header = (hash & 0xff) * 8L;
+		final long tablePosition = file.getInt(header) & 0xffffffffL;
+		final long slots = file.getInt(header + 4) & 0xffffffffL;
+		if(slots == 0){
+			return values;
+		}
+
+		long slot = ((hash & 0xffffffffL) >>> 8) % slots;
+		for(long probe=0; probe<slots; probe++){
+			final long slotPosition = tablePosition + slot * 8;
+			final long recordPosition = file.getInt(slotPosition + 4) & 0xffffffffL;
+			if(recordPosition == 0){
+				break;
+			}
+
+			if(file.getInt(slotPosition) == hash && matches(recordPosition, key)){
+				final long valuePosition = recordPosition + 8 + key.length;
+				values.add(file.slice(valuePosition, file.getInt(recordPosition + 4)));
+				if(first){
+					break;
+				}
+			}
+			slot = (slot + 1) % slots;
+		}
+		return values;
+	}
+
+	private boolean matches(final long recordPosition, final byte[] key){
+		if(file.getInt(recordPosition) != key.length){
+			return false;
+		}
+
+		final long keyPosition = recordPosition + 8;
+		for(int i=0; i<key.length; i++){
+			if(file.get(keyPosition + i) != key[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Writes a constant database file in the format of D. J. Bernstein's <code>cdb</code>, to be read
+ * by the ConstantDatabaseReader (or by any other cdb implementation).<br/><br/>
+ *
+ * The file holds a 2048-byte header of 256 hash table locations, the records, and then the 256
+ * hash tables. The records are streamed to the file as they are added, while the hash and position
+ * of each record are kept in a SpillingOutputStream, so memory use is bounded however many records
+ * there are. The hash tables are then built a group at a time within the configured memory budget.
+ * As in cdb, the file may not exceed 4 GB and a key may be added more than once.<br/><br/>
+ *
+ * <b>Usage</b><br/>
+ *
+ * <pre>
+ * final ConstantDatabaseWriter writer = new ConstantDatabaseWriter(file);
+ * try {
+ *     writer.add(key, value);
+ * } finally {
+ *     writer.close();
+ * }
+ * </pre>
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class ConstantDatabaseWriter {
+
+	/**
+	 * The default memory used to build the hash tables (16 MB).
+	 */
+	public static final int DEFAULT_TABLE_MEMORY = 16 * 1024 * 1024;
+
+	static final int HEADER_LENGTH = 2048;
+	static final int TABLES = 256;
+	static final long MAX_FILE_SIZE = 0xffffffffL;
+
+	private final File file;
+	private final FileOutputStream fileOut;
+	private final DataOutputStream out;
+	private final SpillingOutputStream entries;
+	private final DataOutputStream entriesOut;
+	private final int[] counts = new int[TABLES];
+	private int tableMemory = DEFAULT_TABLE_MEMORY;
+	private long position = HEADER_LENGTH;
+	private boolean closed;
+
+	/**
+	 * Creates a writer for the given file.
+	 *
+	 * @param file the file to be written
+	 * @throws IOException if there is a problem opening the file
+	 */
+	public ConstantDatabaseWriter(final File file) throws IOException {
+		this.file = file;
+		this.fileOut = new FileOutputStream(file);
+		this.out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+		this.entries = new SpillingOutputStream(DEFAULT_TABLE_MEMORY, file.getAbsoluteFile().getParentFile());
+		this.entriesOut = new DataOutputStream(new BufferedOutputStream(entries));
+
+		// the header is written once the table positions are known
+		out.write(new byte[HEADER_LENGTH]);
+	}
+
+	/**
+	 * Sets the amount of memory used to build the hash tables. Larger budgets build more tables per
+	 * pass over the record hashes.
+	 *
+	 * @param tableMemory the memory budget in bytes
+	 * @return a reference to the writer
+	 */
+	public ConstantDatabaseWriter setTableMemory(final int tableMemory){
+		this.tableMemory = tableMemory;
+		return this;
+	}
+
+	/**
+	 * Adds a record to the database.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 * @throws IOException if there is a problem writing the record or the file would exceed 4 GB
+	 */
+	public void add(final byte[] key, final byte[] value) throws IOException {
+		if(closed){
+			throw new IOException("Writer has been closed");
+		}
+
+		final long length = 8L + key.length + value.length;
+		if(position + length > MAX_FILE_SIZE){
+			throw new IOException("Constant database would exceed the 4 GB size limit: " + file);
+		}
+
+		out.writeInt(Integer.reverseBytes(key.length));
+		out.writeInt(Integer.reverseBytes(value.length));
+		out.write(key);
+		out.write(value);
+
+		final int hash = hash(key, 0, key.length);
+		entriesOut.writeInt(hash);
+		entriesOut.writeInt((int)position);
+		counts[hash & 0xff]++;
+		position += length;
+	}
+
+	/**
+	 * Writes the hash tables and the header and closes the file.
+	 *
+	 * @throws IOException if there is a problem writing the file or it would exceed 4 GB
+	 */
+	public void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+
+		try {
+			entriesOut.close();
+
+			final long[] tablePositions = new long[TABLES];
+			long tablePosition = position;
+			for(int t=0; t<TABLES; t++){
+				tablePositions[t] = tablePosition;
+				tablePosition += 16L * counts[t];
+			}
+			if(tablePosition > MAX_FILE_SIZE){
+				throw new IOException("Constant database would exceed the 4 GB size limit: " + file);
+			}
+
+			int first = 0;
+			while(first < TABLES){
+				// each pass builds as many consecutive tables as fit in the memory budget
+				int last = first;
+				long memory = 16L * counts[first];
+				while(last + 1 < TABLES && memory + 16L * counts[last + 1] <= tableMemory){
+					memory += 16L * counts[++last];
+				}
+				writeTables(first, last);
+				first = last + 1;
+			}
+			out.flush();
+
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+			for(int t=0; t<TABLES; t++){
+				header.putInt((int)tablePositions[t]);
+				header.putInt(2 * counts[t]);
+			}
+			header.flip();
+			while(header.hasRemaining()){
+				fileOut.getChannel().write(header, HEADER_LENGTH - header.remaining());
+			}
+
+		} finally {
+			entries.dispose();
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	/**
+	 * Builds and writes the hash tables in the given (inclusive) range from a pass over the record hashes.
+	 */
+	private void writeTables(final int first, final int last) throws IOException {
+		final int[][] tables = new int[last - first + 1][];
+		for(int t=first; t<=last; t++){
+			tables[t - first] = new int[4 * counts[t]];
+		}
+
+		final DataInputStream in = new DataInputStream(entries.toInputStream());
+		try {
+			final long count = entries.size() / 8;
+			for(long i=0; i<count; i++){
+				final int hash = in.readInt();
+				final int recordPosition = in.readInt();
+				final int t = hash & 0xff;
+				if(t < first || t > last){
+					continue;
+				}
+
+				// slot pairs of (hash, position), with linear probing from the slot chosen by the hash
+				final int[] table = tables[t - first];
+				final int slots = table.length / 2;
+				int slot = (int)(((hash & 0xffffffffL) >>> 8) % slots);
+				while(table[2 * slot + 1] != 0){
+					slot = (slot + 1) % slots;
+				}
+				table[2 * slot] = hash;
+				table[2 * slot + 1] = recordPosition;
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+
+		for(final int[] table : tables){
+			for(final int value : table){
+				out.writeInt(Integer.reverseBytes(value));
+			}
+		}
+	}
+
+	/**
+	 * Computes the cdb hash of the given bytes: h = ((h << 5) + h) ^ c, starting from 5381.
+	 */
+	static int hash(final byte[] bytes, final int off, final int len){
+		int hash = 5381;
+		for(int i=off; i<off + len; i++){
+			hash = ((hash << 5) + hash) ^ (bytes[i] & 0xff);
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * InputStream reading a direct (page cache bypassing) FileChannel through an aligned
+ * direct buffer. Every read from the channel is a whole multiple of the block size, at
+ * a block-aligned position.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class DirectFileInputStream extends InputStream {
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private boolean eof;
+
+	DirectFileInputStream(final FileChannel channel, final ByteBuffer buffer){
+		this.channel = channel;
+		this.buffer = buffer;
+		this.buffer.limit(0);
+	}
+
+	@Override
+	public int read() throws IOException {
+		if(!fill()){
+			return -1;
+		}
+		return buffer.get() & 0xff;
+	}
+
+	@Override
+	public int read(final byte[] bytes, final int off, final int len) throws IOException {
+		if(len == 0){
+			return 0;
+		}
+		if(!fill()){
+			return -1;
+		}
+
+		final int count = Math.min(len, buffer.remaining());
+		buffer.get(bytes, off, count);
+		return count;
+	}
+
+	@Override
+	public int available(){
+		return buffer.remaining();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private boolean fill() throws IOException {
+		if(buffer.hasRemaining()){
+			return true;
+		}
+		if(eof){
+			return false;
+		}
+
+		// a short read only happens at the end of the file, and the next read would be unaligned
+		buffer.clear();
+		final int count = channel.read(buffer);
+		eof = count == -1 || buffer.hasRemaining();
+		buffer.flip();
+		return buffer.hasRemaining();
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+import com.stehno.codeperks.io.InputStreamFactory;
+
+/**
+ * Variant of the FileInputStreamFactory which reads the file with direct I/O, bypassing the
+ * operating system page cache. This is intended for one-pass bulk reads of large files, which
+ * would otherwise evict more useful data from the cache.<br/><br/>
+ *
+ * Direct I/O requires a Java 10 (or later) runtime and a file system which supports it (e.g.
+ * most Linux file systems, but not tmpfs). When it is not available, a regular buffered stream
+ * is created instead.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class DirectFileInputStreamFactory implements InputStreamFactory<InputStream> {
+
+	/**
+	 * The default size of the aligned transfer buffer (1 MB).
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+	private final File file;
+	private final int bufferSize;
+
+	public DirectFileInputStreamFactory(final File file){
+		this(file, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a factory for the given file which transfers data in chunks of the given size,
+	 * rounded up to a multiple of the file system block size.
+	 *
+	 * @param file the file to be read
+	 * @param bufferSize the transfer buffer size
+	 */
+	public DirectFileInputStreamFactory(final File file, final int bufferSize){
+		this.file = file;
+		this.bufferSize = bufferSize;
+	}
+
+	@Override
+	public InputStream inputStream() throws IOException {
+		final FileChannel channel = DirectIo.open(file, false);
+		if(channel == null){
+			return new BufferedInputStream( new FileInputStream(file) );
+		}
+
+		final int blockSize = DirectIo.blockSize(file);
+		return new DirectFileInputStream(channel, DirectIo.allocateAligned(roundUp(bufferSize, blockSize), blockSize));
+	}
+
+	static int roundUp(final int size, final int blockSize){
+		return Math.max(1, (size + blockSize - 1) / blockSize) * blockSize;
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * OutputStream writing to a direct (page cache bypassing) FileChannel through an aligned
+ * direct buffer. Data is written in whole buffers; the final partial block is padded for
+ * the write and the file is then truncated to the real length when the stream is closed.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class DirectFileOutputStream extends OutputStream {
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final int blockSize;
+	private long length;
+	private boolean closed;
+
+	DirectFileOutputStream(final FileChannel channel, final ByteBuffer buffer, final int blockSize){
+		this.channel = channel;
+		this.buffer = buffer;
+		this.blockSize = blockSize;
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		if(!buffer.hasRemaining()){
+			drain();
+		}
+		buffer.put((byte)b);
+		length++;
+	}
+
+	@Override
+	public void write(final byte[] bytes, final int off, final int len) throws IOException {
+		int offset = off;
+		int remaining = len;
+		while(remaining > 0){
+			if(!buffer.hasRemaining()){
+				drain();
+			}
+			final int count = Math.min(remaining, buffer.remaining());
+			buffer.put(bytes, offset, count);
+			offset += count;
+			remaining -= count;
+		}
+		length += len;
+	}
+
+	/**
+	 * Flushing is a no-op, since only whole blocks may be written to the file before the
+	 * stream is closed.
+	 */
+	@Override
+	public void flush(){
+		// nothing to do
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+
+		try {
+			if(buffer.position() > 0){
+				final int padded = ((buffer.position() + blockSize - 1) / blockSize) * blockSize;
+				while(buffer.position() < padded){
+					buffer.put((byte)0);
+				}
+				drain();
+				channel.truncate(length);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void drain() throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
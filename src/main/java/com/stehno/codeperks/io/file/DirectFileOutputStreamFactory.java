@@ -0,0 +1,71 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+
+import com.stehno.codeperks.io.OutputStreamFactory;
+
+/**
+ * Variant of the FileOutputStreamFactory which writes the file with direct I/O, bypassing the
+ * operating system page cache. This is intended for one-pass bulk writes of large files, which
+ * would otherwise evict more useful data from the cache.<br/><br/>
+ *
+ * Direct I/O requires a Java 10 (or later) runtime and a file system which supports it (e.g.
+ * most Linux file systems, but not tmpfs). When it is not available, a regular buffered stream
+ * is created instead. Data written to a direct stream only reaches the file in whole buffers,
+ * so <code>flush()</code> has no effect; the remaining data is written on <code>close()</code>.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class DirectFileOutputStreamFactory implements OutputStreamFactory<OutputStream> {
+
+	private final File file;
+	private final int bufferSize;
+
+	public DirectFileOutputStreamFactory(final File file){
+		this(file, DirectFileInputStreamFactory.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a factory for the given file which transfers data in chunks of the given size,
+	 * rounded up to a multiple of the file system block size.
+	 *
+	 * @param file the file to be written
+	 * @param bufferSize the transfer buffer size
+	 */
+	public DirectFileOutputStreamFactory(final File file, final int bufferSize){
+		this.file = file;
+		this.bufferSize = bufferSize;
+	}
+
+	@Override
+	public OutputStream outputStream() throws IOException {
+		final FileChannel channel = DirectIo.open(file, true);
+		if(channel == null){
+			return new BufferedOutputStream( new FileOutputStream(file) );
+		}
+
+		final int blockSize = DirectIo.blockSize(file);
+		final int size = DirectFileInputStreamFactory.roundUp(bufferSize, blockSize);
+		return new DirectFileOutputStream(channel, DirectIo.allocateAligned(size, blockSize), blockSize);
+	}
+}
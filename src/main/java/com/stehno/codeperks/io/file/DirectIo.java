@@ -0,0 +1,181 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Opens FileChannels which bypass the operating system page cache (O_DIRECT).<br/><br/>
+ *
+ * The project is built against Java 6, so the NIO.2 API required for this
+ * (<code>com.sun.nio.file.ExtendedOpenOption.DIRECT</code>, available from Java 10) is
+ * resolved reflectively. When it is not available, <code>open()</code> returns null
+ * and callers fall back to regular buffered streams.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+final class DirectIo {
+
+	private static final Log log = LogFactory.getLog(DirectIo.class);
+	private static final int DEFAULT_BLOCK_SIZE = 4096;
+
+	private static final Method TO_PATH;
+	private static final Method OPEN;
+	private static final Method GET_FILE_STORE;
+	private static final Method GET_BLOCK_SIZE;
+	private static final Method ALIGNED_SLICE;
+	private static final Class<?> OPEN_OPTION;
+	private static final Object[] READ_OPTIONS;
+	private static final Object[] WRITE_OPTIONS;
+
+	static {
+		Method toPath = null, open = null, getFileStore = null, getBlockSize = null, alignedSlice = null;
+		Class<?> openOption = null;
+		Object[] readOptions = null, writeOptions = null;
+		try {
+			final Class<?> pathClass = Class.forName("java.nio.file.Path");
+			openOption = Class.forName("java.nio.file.OpenOption");
+			final Object direct = option("com.sun.nio.file.ExtendedOpenOption", "DIRECT");
+
+			toPath = File.class.getMethod("toPath");
+			open = FileChannel.class.getMethod("open", pathClass, Array.newInstance(openOption, 0).getClass());
+			getFileStore = Class.forName("java.nio.file.Files").getMethod("getFileStore", pathClass);
+			getBlockSize = Class.forName("java.nio.file.FileStore").getMethod("getBlockSize");
+			alignedSlice = ByteBuffer.class.getMethod("alignedSlice", int.class);
+
+			final String standard = "java.nio.file.StandardOpenOption";
+			readOptions = new Object[]{ option(standard, "READ"), direct };
+			writeOptions = new Object[]{
+				option(standard, "WRITE"), option(standard, "CREATE"), option(standard, "TRUNCATE_EXISTING"), direct
+			};
+		} catch(final Exception e){
+			toPath = null;
+			if(log.isDebugEnabled()){
+				log.debug("Direct I/O is not available on this platform: " + e.getMessage());
+			}
+		}
+
+		TO_PATH = toPath;
+		OPEN = open;
+		GET_FILE_STORE = getFileStore;
+		GET_BLOCK_SIZE = getBlockSize;
+		ALIGNED_SLICE = alignedSlice;
+		OPEN_OPTION = openOption;
+		READ_OPTIONS = readOptions;
+		WRITE_OPTIONS = writeOptions;
+	}
+
+	private DirectIo(){}
+
+	/**
+	 * Determines whether or not the running JVM provides direct I/O support.
+	 *
+	 * @return true if direct channels may be opened
+	 */
+	static boolean isAvailable(){
+		return TO_PATH != null;
+	}
+
+	/**
+	 * Opens a direct channel on the given file. If direct I/O is not available in the JVM, or
+	 * is rejected by the file system, null is returned.
+	 *
+	 * @param file the file
+	 * @param write true to create/truncate the file for writing, false to open it for reading
+	 * @return the channel or null if direct I/O is not possible for the file
+	 * @throws IOException if the file cannot be opened at all
+	 */
+	static FileChannel open(final File file, final boolean write) throws IOException {
+		if(!isAvailable()){
+			return null;
+		}
+
+		final Object[] source = write ? WRITE_OPTIONS : READ_OPTIONS;
+		final Object options = Array.newInstance(OPEN_OPTION, source.length);
+		System.arraycopy(source, 0, options, 0, source.length);
+
+		try {
+			return (FileChannel)OPEN.invoke(null, TO_PATH.invoke(file), options);
+		} catch(final InvocationTargetException ite){
+			final Throwable cause = ite.getCause();
+			if(cause instanceof UnsupportedOperationException || isInvalidArgument(cause)){
+				if(log.isDebugEnabled()){
+					log.debug("Direct I/O rejected for " + file + ": " + cause.getMessage());
+				}
+				return null;
+			}
+			if(cause instanceof IOException){
+				throw (IOException)cause;
+			}
+			throw new IOException("Unable to open " + file + ": " + cause);
+		} catch(final IllegalAccessException iae){
+			return null;
+		}
+	}
+
+	/**
+	 * Retrieves the block size of the file store containing the given file, which is the
+	 * alignment required for direct transfers.
+	 *
+	 * @param file the file
+	 * @return the block size in bytes
+	 */
+	static int blockSize(final File file){
+		try {
+			final long size = (Long)GET_BLOCK_SIZE.invoke(GET_FILE_STORE.invoke(null, TO_PATH.invoke(file)));
+			return size > 0 && size <= Integer.MAX_VALUE ? (int)size : DEFAULT_BLOCK_SIZE;
+		} catch(final Exception e){
+			return DEFAULT_BLOCK_SIZE;
+		}
+	}
+
+	/**
+	 * Allocates a direct buffer of the given capacity whose memory address is aligned to the
+	 * given alignment.
+	 *
+	 * @param capacity the required capacity, a multiple of the alignment
+	 * @param alignment the alignment (block size)
+	 * @return an aligned direct buffer
+	 */
+	static ByteBuffer allocateAligned(final int capacity, final int alignment){
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(capacity + alignment);
+		try {
+			final ByteBuffer aligned = (ByteBuffer)ALIGNED_SLICE.invoke(buffer, alignment);
+			aligned.limit(capacity);
+			return aligned.slice();
+		} catch(final Exception e){
+			throw new IllegalStateException("Unable to align direct buffer: " + e.getMessage(), e);
+		}
+	}
+
+	private static boolean isInvalidArgument(final Throwable t){
+		return t instanceof IOException && t.getMessage() != null && t.getMessage().contains("Invalid argument");
+	}
+
+	@SuppressWarnings({"unchecked","rawtypes"})
+	private static Object option(final String className, final String name) throws ClassNotFoundException {
+		return Enum.valueOf((Class)Class.forName(className), name);
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import static com.stehno.codeperks.io.IoTemplate.input;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.stehno.codeperks.io.ConcurrentIo;
+import com.stehno.codeperks.io.DigestIo;
+import com.stehno.codeperks.io.InputStreamCallback;
+
+/**
+ * Finds files with identical content across one or more directory trees.<br/><br/>
+ *
+ * The files are first grouped by size. Files sharing a size are then compared by a hash of
+ * their first and last few kilobytes, and only the files which still match are hashed in full.
+ * Hashing is performed in parallel on an ExecutorService. Empty files are ignored.<br/><br/>
+ *
+ * <b>Usage</b><br/>
+ *
+ * <pre>
+ * final List&lt;List&lt;File&gt;&gt; duplicates = new DuplicateFileFinder().find(new File("/data"));
+ * </pre>
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class DuplicateFileFinder {
+
+	/**
+	 * The default number of bytes hashed from each end of a file in the partial pass (4 KB).
+	 */
+	public static final int DEFAULT_PARTIAL_SIZE = 4096;
+
+	private final ExecutorService executor;
+	private String algorithm = "SHA-256";
+	private int partialSize = DEFAULT_PARTIAL_SIZE;
+
+	/**
+	 * Creates a finder which hashes files on a private pool of one thread per available processor,
+	 * created for each search.
+	 */
+	public DuplicateFileFinder(){
+		this(null);
+	}
+
+	/**
+	 * Creates a finder which hashes files on the given executor.
+	 *
+	 * @param executor the executor (null for a private pool per search)
+	 */
+	public DuplicateFileFinder(final ExecutorService executor){
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets the MessageDigest algorithm used to hash the files. The default is SHA-256.
+	 *
+	 * @param algorithm the digest algorithm name
+	 * @return a reference to the finder
+	 */
+	public DuplicateFileFinder setAlgorithm(final String algorithm){
+		this.algorithm = algorithm;
+		return this;
+	}
+
+	/**
+	 * Sets the number of bytes hashed from the start and from the end of each file in the partial pass.
+	 *
+	 * @param partialSize the number of bytes hashed from each end
+	 * @return a reference to the finder
+	 */
+	public DuplicateFileFinder setPartialSize(final int partialSize){
+		this.partialSize = partialSize;
+		return this;
+	}
+
+	/**
+	 * Finds the groups of files with identical content under the given files or directories.
+	 *
+	 * @param roots the files and directories to be searched
+	 * @return the groups of duplicate files, largest files first
+	 * @throws IOException if there is a problem reading a file
+	 */
+	public List<List<File>> find(final File... roots) throws IOException {
+		final Map<Object, List<File>> bySize = new LinkedHashMap<Object, List<File>>();
+		final Set<String> visited = new HashSet<String>();
+		for(final File root : roots){
+			collect(root, bySize, visited);
+		}
+
+		final ExecutorService pool = executor != null ? executor : Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			final List<List<File>> partial = regroup(candidates(bySize), pool, true);
+
+			final List<List<File>> duplicates = new ArrayList<List<File>>();
+			final List<List<File>> remaining = new ArrayList<List<File>>();
+			for(final List<File> group : partial){
+				// the partial hash already covered all of the content
+				if(group.get(0).length() <= 2L * partialSize){
+					duplicates.add(group);
+				} else {
+					remaining.add(group);
+				}
+			}
+			duplicates.addAll(regroup(remaining, pool, false));
+
+			for(final List<File> group : duplicates){
+				Collections.sort(group);
+			}
+			Collections.sort(duplicates, new Comparator<List<File>>() {
+				@Override
+				public int compare(final List<File> a, final List<File> b){
+					final long diff = b.get(0).length() - a.get(0).length();
+					return diff != 0 ? (diff < 0 ? -1 : 1) : a.get(0).compareTo(b.get(0));
+				}
+			});
+			return duplicates;
+
+		} finally {
+			if(executor == null){
+				pool.shutdown();
+			}
+		}
+	}
+
+	private void collect(final File file, final Map<Object, List<File>> bySize, final Set<String> visited) throws IOException {
+		if(file.isDirectory()){
+			// guards against cycles created by symbolic links
+			if(!visited.add(file.getCanonicalPath())){
+				return;
+			}
+
+			final File[] children = file.listFiles();
+			if(children != null){
+				for(final File child : children){
+					collect(child, bySize, visited);
+				}
+			}
+		} else if(file.isFile() && file.length() > 0){
+			group(bySize, file.length(), file);
+		}
+	}
+
+	/**
+	 * Splits each group of files into subgroups with matching (partial or full) hashes, discarding
+	 * files which match no other file.
+	 */
+	private List<List<File>> regroup(final List<List<File>> groups, final ExecutorService pool, final boolean partial) throws IOException {
+		final List<File> files = new ArrayList<File>();
+		final List<Future<String>> hashes = new ArrayList<Future<String>>();
+		for(final List<File> group : groups){
+			for(final File file : group){
+				files.add(file);
+				hashes.add(pool.submit(new Callable<String>() {
+					@Override
+					public String call() throws IOException {
+						return partial ? partialHash(file) : fullHash(file);
+					}
+				}));
+			}
+		}
+
+		final Map<Object, List<File>> byHash = new LinkedHashMap<Object, List<File>>();
+		for(int i=0; i<files.size(); i++){
+			final File file = files.get(i);
+			group(byHash, file.length() + ":" + ConcurrentIo.await(hashes.get(i), "hash file"), file);
+		}
+		return candidates(byHash);
+	}
+
+	private String partialHash(final File file) throws IOException {
+		final MessageDigest digest = DigestIo.messageDigest(algorithm);
+		final byte[] buffer = new byte[partialSize];
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final long length = raf.length();
+			if(length <= 2L * partialSize){
+				final byte[] all = new byte[(int)length];
+				raf.readFully(all);
+				digest.update(all);
+			} else {
+				raf.readFully(buffer);
+				digest.update(buffer);
+				raf.seek(length - partialSize);
+				raf.readFully(buffer);
+				digest.update(buffer);
+			}
+		} finally {
+			raf.close();
+		}
+		return DigestIo.toHex(digest.digest());
+	}
+
+	private String fullHash(final File file) throws IOException {
+		final MessageDigest digest = DigestIo.messageDigest(algorithm);
+		input(new FileInputStreamFactory(file), new InputStreamCallback<BufferedInputStream>() {
+			@Override
+			public void input(final BufferedInputStream in) throws IOException {
+				final byte[] buffer = new byte[64 * 1024];
+				int count;
+				while((count = in.read(buffer)) != -1){
+					digest.update(buffer, 0, count);
+				}
+			}
+		});
+		return DigestIo.toHex(digest.digest());
+	}
+
+	private static void group(final Map<Object, List<File>> groups, final Object key, final File file){
+		List<File> group = groups.get(key);
+		if(group == null){
+			group = new ArrayList<File>(2);
+			groups.put(key, group);
+		}
+		group.add(file);
+	}
+
+	private static List<List<File>> candidates(final Map<Object, List<File>> groups){
+		final List<List<File>> candidates = new ArrayList<List<File>>();
+		for(final List<File> group : groups.values()){
+			if(group.size() > 1){
+				candidates.add(group);
+			}
+		}
+		return candidates;
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.stehno.codeperks.io.ConcurrentIo;
+
+/**
+ * Compares the content of two files over memory-mapped regions, eight bytes at a time. Used by
+ * the FileIoTemplate comparison methods.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+final class FileComparison {
+
+	/**
+	 * The size of the ranges compared by each parallel task (64 MB).
+	 */
+	static final long PARALLEL_RANGE = 64L * 1024 * 1024;
+
+	private FileComparison(){}
+
+	/**
+	 * Finds the offset of the first byte at which the two files differ.
+	 *
+	 * @param executor the executor used to compare ranges in parallel (null to compare on the calling thread)
+	 * @param compareOnSizeMismatch whether files of different sizes are compared over their common
+	 * length (otherwise the length of the shorter file is returned without reading either file)
+	 * @return the first differing offset, or -1 if the files are identical
+	 */
+	static long firstDifference(final File a, final File b, final ExecutorService executor, final boolean compareOnSizeMismatch) throws IOException {
+		final long lengthA = a.length();
+		final long lengthB = b.length();
+		final long common = Math.min(lengthA, lengthB);
+		if(lengthA != lengthB && !compareOnSizeMismatch){
+			return common;
+		}
+
+		final long difference;
+		if(common == 0){
+			difference = -1;
+		} else {
+			final MappedFile mappedA = new MappedFile(a);
+			try {
+				final MappedFile mappedB = new MappedFile(b);
+				try {
+					if(executor == null || common <= PARALLEL_RANGE){
+						difference = compare(mappedA, mappedB, 0, common, null);
+					} else {
+						difference = compareParallel(mappedA, mappedB, common, executor);
+					}
+				} finally {
+					mappedB.close();
+				}
+			} finally {
+				mappedA.close();
+			}
+		}
+
+		return difference == -1 && lengthA != lengthB ? common : difference;
+	}
+
+	private static long compareParallel(final MappedFile a, final MappedFile b, final long length, final ExecutorService executor) throws IOException {
+		// the lowest difference found so far; ranges beyond it need not be compared
+		final AtomicLong found = new AtomicLong(Long.MAX_VALUE);
+
+		final List<Future<Long>> futures = new ArrayList<Future<Long>>();
+		for(long start=0; start<length; start+=PARALLEL_RANGE){
+			final long rangeStart = start;
+			final long rangeEnd = Math.min(length, start + PARALLEL_RANGE);
+			futures.add(executor.submit(new Callable<Long>() {
+				@Override
+				public Long call(){
+					final long difference = compare(a, b, rangeStart, rangeEnd, found);
+					if(difference != -1){
+						long current;
+						while(difference < (current = found.get()) && !found.compareAndSet(current, difference)){
+							// retries until the lower offset is recorded
+						}
+					}
+					return difference;
+				}
+			}));
+		}
+
+		for(final Future<Long> future : futures){
+			ConcurrentIo.await(future, "compare files");
+		}
+		return found.get() == Long.MAX_VALUE ? -1 : found.get();
+	}
+
+	/**
+	 * Compares the given range of the two files.
+	 *
+	 * @return the first differing offset in the range, or -1 if the range is identical (or a lower
+	 * difference has been found elsewhere)
+	 */
+	private static long compare(final MappedFile a, final MappedFile b, final long start, final long end, final AtomicLong found){
+		// slices no larger than the overlap are views of the mapping rather than copies
+		final int sliceSize = Math.min(a.getOverlap(), b.getOverlap());
+		for(long position=start; position<end; position+=sliceSize){
+			if(found != null && found.get() < position){
+				return -1;
+			}
+
+			final int length = (int)Math.min(sliceSize, end - position);
+			final int offset = compare(a.slice(position, length), b.slice(position, length), length);
+			if(offset != -1){
+				return position + offset;
+			}
+		}
+		return -1;
+	}
+
+	private static int compare(final ByteBuffer a, final ByteBuffer b, final int length){
+		int i = 0;
+		for(; i + 8 <= length; i+=8){
+			final long diff = a.getLong(i) ^ b.getLong(i);
+			if(diff != 0){
+				// the buffers are big-endian, so the leading zero bits count the matching bytes
+				return i + (Long.numberOfLeadingZeros(diff) >>> 3);
+			}
+		}
+		for(; i<length; i++){
+			if(a.get(i) != b.get(i)){
+				return i;
+			}
+		}
+		return -1;
+	}
+}
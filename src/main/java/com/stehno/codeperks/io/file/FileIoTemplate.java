@@ -26,6 +26,10 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import com.stehno.codeperks.io.InputStreamCallback;
 import com.stehno.codeperks.io.OutputStreamCallback;
@@ -53,4 +57,130 @@ public class FileIoTemplate {
 	public static final void inputFile(final File file, final InputStreamCallback<BufferedInputStream> isc) throws IOException {
 		input(new FileInputStreamFactory(file), isc);
 	}
+
+	/**
+	 * Executes the callback once for each of the given files, in order. While a file is being
+	 * processed, the next <code>readAhead</code> files are opened and read ahead on background
+	 * threads.
+	 *
+	 * @param files the files to be processed, in order
+	 * @param readAhead the number of files to be opened ahead of the current one
+	 * @param isc the callback
+	 * @throws IOException if there is a problem reading a file
+	 */
+	public static final void inputFiles(final List<File> files, final int readAhead, final InputStreamCallback<BufferedInputStream> isc) throws IOException {
+		final ReadAheadFileSequence sequence = new ReadAheadFileSequence(files, readAhead);
+		try {
+			while(sequence.hasNext()){
+				input(sequence.next(), isc);
+			}
+		} finally {
+			sequence.close();
+		}
+	}
+
+	/**
+	 * Executes the callback to read the given file with checkpoints. If an earlier run left a
+	 * checkpoint, reading resumes from it and the saved state is available from the stream. The
+	 * checkpoint is removed once the callback completes normally.
+	 *
+	 * @param file the file to be read
+	 * @param isc the callback
+	 * @throws IOException if there is a problem reading the file or its checkpoint
+	 */
+	public static final void inputFileCheckpointed(final File file, final InputStreamCallback<CheckpointInputStream> isc) throws IOException {
+		inputFileCheckpointed(new CheckpointInputStreamFactory(file), isc);
+	}
+
+	/**
+	 * Executes the callback to read a file with checkpoints, as configured by the given factory. The
+	 * checkpoint is removed once the callback completes normally.
+	 *
+	 * @param factory the checkpointing stream factory
+	 * @param isc the callback
+	 * @throws IOException if there is a problem reading the file or its checkpoint
+	 */
+	public static final void inputFileCheckpointed(final CheckpointInputStreamFactory factory, final InputStreamCallback<CheckpointInputStream> isc) throws IOException {
+		input(factory, isc);
+
+		final File checkpoint = factory.getCheckpointFile();
+		if(checkpoint.exists() && !checkpoint.delete()){
+			throw new IOException("Unable to remove checkpoint file: " + checkpoint);
+		}
+	}
+
+	/**
+	 * Executes the callback to write the given file through memory-mapped windows. The file is
+	 * extended to the expected size up front and truncated to the written length afterwards.
+	 *
+	 * @param file the file to be written
+	 * @param expectedSize the expected size of the file in bytes
+	 * @param osc the callback
+	 * @throws IOException if there is a problem writing the file
+	 */
+	public static final void outputMappedFile(final File file, final long expectedSize, final OutputStreamCallback<MappedFileOutputStream> osc) throws IOException {
+		output(new MappedFileOutputStreamFactory(file, expectedSize), osc);
+	}
+
+	/**
+	 * Determines whether the two files have identical content. Files of different sizes are not
+	 * read at all; otherwise the files are compared over memory-mapped regions.
+	 *
+	 * @param a the first file
+	 * @param b the second file
+	 * @return true if the content of the files is identical
+	 * @throws IOException if there is a problem mapping the files
+	 */
+	public static final boolean contentEquals(final File a, final File b) throws IOException {
+		return FileComparison.firstDifference(a, b, null, false) == -1;
+	}
+
+	/**
+	 * Determines whether the two files have identical content, comparing ranges of large files in
+	 * parallel on the given executor.
+	 *
+	 * @param a the first file
+	 * @param b the second file
+	 * @param executor the executor used to compare ranges of the files
+	 * @return true if the content of the files is identical
+	 * @throws IOException if there is a problem mapping the files
+	 */
+	public static final boolean contentEquals(final File a, final File b, final ExecutorService executor) throws IOException {
+		return FileComparison.firstDifference(a, b, executor, false) == -1;
+	}
+
+	/**
+	 * Finds the offset of the first byte at which the content of the two files differs. If one file
+	 * is a prefix of the other, the offset is the length of the shorter file.
+	 *
+	 * @param a the first file
+	 * @param b the second file
+	 * @return the first differing offset, or -1 if the files are identical
+	 * @throws IOException if there is a problem mapping the files
+	 */
+	public static final long firstDifference(final File a, final File b) throws IOException {
+		return FileComparison.firstDifference(a, b, null, true);
+	}
+
+	/**
+	 * Finds the offset of the first byte at which the content of the two files differs, comparing
+	 * ranges of large files in parallel on the given executor.
+	 *
+	 * @param a the first file
+	 * @param b the second file
+	 * @param executor the executor used to compare ranges of the files
+	 * @return the first differing offset, or -1 if the files are identical
+	 * @throws IOException if there is a problem mapping the files
+	 */
+	public static final long firstDifference(final File a, final File b, final ExecutorService executor) throws IOException {
+		return FileComparison.firstDifference(a, b, executor, true);
+	}
+
+	public static final void outputFileDirect(final File file, final OutputStreamCallback<OutputStream> osc) throws IOException {
+		output(new DirectFileOutputStreamFactory(file),osc);
+	}
+
+	public static final void inputFileDirect(final File file, final InputStreamCallback<InputStream> isc) throws IOException {
+		input(new DirectFileInputStreamFactory(file), isc);
+	}
 }
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only memory mapping of a whole file, including files larger than a single ByteBuffer
+ * may address. The file is mapped in windows which overlap by a fixed amount, so any region no
+ * larger than the overlap lies within a single window and may be sliced without copying.<br/><br/>
+ *
+ * All of the accessors use absolute positions, so an instance may be shared by concurrent readers.
+ * The mapping is released by the garbage collector once the instance (and any slice taken from it)
+ * is no longer referenced; <code>close()</code> only releases the file handle.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public final class MappedFile {
+
+	/**
+	 * The default window stride (1 GB).
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 1024 * 1024 * 1024;
+
+	/**
+	 * The default overlap of adjacent windows (1 MB).
+	 */
+	public static final int DEFAULT_OVERLAP = 1024 * 1024;
+
+	private final RandomAccessFile raf;
+	private final long size;
+	private final int windowSize;
+	private final int overlap;
+	private final MappedByteBuffer[] windows;
+
+	/**
+	 * Maps the given file with the default window size and overlap, in big-endian byte order.
+	 *
+	 * @param file the file to be mapped
+	 * @throws IOException if there is a problem mapping the file
+	 */
+	public MappedFile(final File file) throws IOException {
+		this(file, ByteOrder.BIG_ENDIAN, DEFAULT_WINDOW_SIZE, DEFAULT_OVERLAP);
+	}
+
+	/**
+	 * Maps the given file with the default window size and overlap, in the given byte order.
+	 *
+	 * @param file the file to be mapped
+	 * @param order the byte order used to read primitive values
+	 * @throws IOException if there is a problem mapping the file
+	 */
+	public MappedFile(final File file, final ByteOrder order) throws IOException {
+		this(file, order, DEFAULT_WINDOW_SIZE, DEFAULT_OVERLAP);
+	}
+
+	/**
+	 * Maps the given file in windows starting every <code>windowSize</code> bytes, each extending
+	 * <code>overlap</code> bytes into the next.
+	 *
+	 * @param file the file to be mapped
+	 * @param order the byte order used to read primitive values
+	 * @param windowSize the window stride in bytes
+	 * @param overlap the overlap of adjacent windows in bytes (at least 8)
+	 * @throws IOException if there is a problem mapping the file
+	 */
+	public MappedFile(final File file, final ByteOrder order, final int windowSize, final int overlap) throws IOException {
+		if(overlap < 8 || windowSize < 1 || (long)windowSize + overlap > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("Invalid window size (" + windowSize + ") or overlap (" + overlap + ")");
+		}
+
+		this.windowSize = windowSize;
+		this.overlap = overlap;
+		this.raf = new RandomAccessFile(file, "r");
+		try {
+			this.size = raf.length();
+			final FileChannel channel = raf.getChannel();
+			final int count = (int)Math.max(1, (size + windowSize - 1) / windowSize);
+			this.windows = new MappedByteBuffer[count];
+			for(int i=0; i<count; i++){
+				final long start = (long)i * windowSize;
+				windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, (long)windowSize + overlap));
+				windows[i].order(order);
+			}
+		} catch(final IOException ioe){
+			raf.close();
+			throw ioe;
+		}
+	}
+
+	/**
+	 * Retrieves the size of the file.
+	 *
+	 * @return the file size in bytes
+	 */
+	public long size(){
+		return size;
+	}
+
+	/**
+	 * Retrieves the number of bytes which may be sliced from any position without copying.
+	 *
+	 * @return the window overlap in bytes
+	 */
+	public int getOverlap(){
+		return overlap;
+	}
+
+	/**
+	 * Retrieves the byte at the given file position.
+	 *
+	 * @param position the file position
+	 * @return the byte value
+	 */
+	public byte get(final long position){
+		return window(position).get(offset(position));
+	}
+
+	/**
+	 * Retrieves the short value at the given file position, in the byte order of the mapping.
+	 *
+	 * @param position the file position
+	 * @return the short value
+	 */
+	public short getShort(final long position){
+		return window(position).getShort(offset(position));
+	}
+
+	/**
+	 * Retrieves the int value at the given file position, in the byte order of the mapping.
+	 *
+	 * @param position the file position
+	 * @return the int value
+	 */
+	public int getInt(final long position){
+		return window(position).getInt(offset(position));
+	}
+
+	/**
+	 * Retrieves the long value at the given file position, in the byte order of the mapping.
+	 *
+	 * @param position the file position
+	 * @return the long value
+	 */
+	public long getLong(final long position){
+		return window(position).getLong(offset(position));
+	}
+
+	/**
+	 * Copies bytes from the given position of the file into the array.
+	 *
+	 * @param position the file position
+	 * @param bytes the destination array
+	 * @param off the array offset
+	 * @param len the number of bytes to be copied
+	 */
+	public void get(final long position, final byte[] bytes, final int off, final int len){
+		long current = position;
+		int offset = off;
+		int remaining = len;
+		while(remaining > 0){
+			final ByteBuffer window = window(current).duplicate();
+			window.position(offset(current));
+			final int count = Math.min(remaining, window.remaining());
+			window.get(bytes, offset, count);
+			current += count;
+			offset += count;
+			remaining -= count;
+		}
+	}
+
+	/**
+	 * Retrieves a read-only buffer over the given region of the file. Regions no larger than the
+	 * window overlap are always backed directly by the mapping; larger regions which cross a window
+	 * boundary are copied onto the heap.
+	 *
+	 * @param position the file position of the region
+	 * @param length the length of the region
+	 * @return a buffer, with its position at zero, over the region
+	 */
+	public ByteBuffer slice(final long position, final int length){
+		if(position < 0 || position + length > size){
+			throw new IndexOutOfBoundsException("Region " + position + "+" + length + " is outside of the file (" + size + ")");
+		}
+
+		final MappedByteBuffer window = window(position);
+		final int offset = offset(position);
+		if(offset + length <= window.limit()){
+			final ByteBuffer slice = window.duplicate();
+			slice.position(offset);
+			slice.limit(offset + length);
+			return slice.slice().asReadOnlyBuffer().order(window.order());
+		}
+
+		final byte[] bytes = new byte[length];
+		get(position, bytes, 0, length);
+		return ByteBuffer.wrap(bytes).asReadOnlyBuffer().order(window.order());
+	}
+
+	/**
+	 * Creates an InputStream over the given region of the file, reading directly from the mapping.
+	 *
+	 * @param position the file position of the region
+	 * @param length the length of the region
+	 * @return a stream over the region
+	 */
+	public InputStream openStream(final long position, final long length){
+		if(position < 0 || position + length > size){
+			throw new IndexOutOfBoundsException("Region " + position + "+" + length + " is outside of the file (" + size + ")");
+		}
+		return new RegionInputStream(position, position + length);
+	}
+
+	/**
+	 * Closes the underlying file. The mapping itself remains valid until it is garbage collected.
+	 *
+	 * @throws IOException if there is a problem closing the file
+	 */
+	public void close() throws IOException {
+		raf.close();
+	}
+
+	private MappedByteBuffer window(final long position){
+		return windows[(int)(position / windowSize)];
+	}
+
+	private int offset(final long position){
+		return (int)(position % windowSize);
+	}
+
+	/**
+	 * InputStream reading a region of the mapped file.
+	 */
+	private final class RegionInputStream extends InputStream {
+
+		private final long end;
+		private long position;
+
+		RegionInputStream(final long start, final long end){
+			this.position = start;
+			this.end = end;
+		}
+
+		@Override
+		public int read(){
+			return position < end ? get(position++) & 0xff : -1;
+		}
+
+		@Override
+		public int read(final byte[] bytes, final int off, final int len){
+			if(len == 0){
+				return 0;
+			}
+			if(position >= end){
+				return -1;
+			}
+
+			final int count = (int)Math.min(len, end - position);
+			get(position, bytes, off, count);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public long skip(final long n){
+			final long skipped = Math.max(0, Math.min(n, end - position));
+			position += skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available(){
+			return (int)Math.min(Integer.MAX_VALUE, end - position);
+		}
+	}
+}
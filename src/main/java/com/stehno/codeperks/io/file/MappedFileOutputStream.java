@@ -0,0 +1,212 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * OutputStream writing directly into a memory-mapped file. The file is extended to an expected
+ * size when the stream is opened and is mapped read-write in windows; when the data outgrows the
+ * current window, the next window is mapped from the current position, extending the file as
+ * needed. On close, the file is truncated to the number of bytes actually written.<br/><br/>
+ *
+ * Besides the OutputStream methods, the stream acts as a cursor over the mapped memory, with
+ * methods for writing primitive values in the configured byte order (big-endian by default).
+ * Writes are visible in the page cache immediately; <code>force()</code> may be used to write
+ * the current window to the storage device. Instances are not thread-safe.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class MappedFileOutputStream extends OutputStream {
+
+	/**
+	 * The default size of the mapped window (64 MB).
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final int windowSize;
+	private ByteOrder order = ByteOrder.BIG_ENDIAN;
+	private MappedByteBuffer buffer;
+	private long windowStart;
+	private boolean closed;
+
+	/**
+	 * Creates a stream writing to the given file, which is created (or truncated) and extended to
+	 * the expected size.
+	 *
+	 * @param file the file to be written
+	 * @param expectedSize the expected size of the file content in bytes
+	 * @param windowSize the maximum size of each mapped window in bytes
+	 * @throws IOException if there is a problem creating or mapping the file
+	 */
+	public MappedFileOutputStream(final File file, final long expectedSize, final int windowSize) throws IOException {
+		if(windowSize < 8){
+			throw new IllegalArgumentException("Window size must be at least 8 bytes: " + windowSize);
+		}
+
+		this.windowSize = windowSize;
+		this.raf = new RandomAccessFile(file, "rw");
+		this.channel = raf.getChannel();
+		try {
+			raf.setLength(Math.max(0, expectedSize));
+			map(0, expectedSize > 0 ? expectedSize : windowSize);
+		} catch(final IOException ioe){
+			raf.close();
+			throw ioe;
+		}
+	}
+
+	/**
+	 * Sets the byte order used by the primitive put methods.
+	 *
+	 * @param order the byte order
+	 * @return a reference to the stream
+	 */
+	public MappedFileOutputStream order(final ByteOrder order){
+		this.order = order;
+		buffer.order(order);
+		return this;
+	}
+
+	/**
+	 * Retrieves the number of bytes written to the stream, which is also the position of the
+	 * next byte in the file.
+	 *
+	 * @return the current position
+	 */
+	public long position(){
+		return windowStart + buffer.position();
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		ensure(1);
+		buffer.put((byte)b);
+	}
+
+	@Override
+	public void write(final byte[] bytes, final int off, final int len) throws IOException {
+		int offset = off;
+		int remaining = len;
+		while(remaining > 0){
+			ensure(1);
+			final int count = Math.min(remaining, buffer.remaining());
+			buffer.put(bytes, offset, count);
+			offset += count;
+			remaining -= count;
+		}
+	}
+
+	/**
+	 * Writes the remaining content of the given buffer.
+	 *
+	 * @param source the buffer to be written
+	 * @return a reference to the stream
+	 * @throws IOException if there is a problem mapping the file
+	 */
+	public MappedFileOutputStream put(final ByteBuffer source) throws IOException {
+		final int limit = source.limit();
+		try {
+			while(source.hasRemaining()){
+				ensure(1);
+				source.limit(source.position() + Math.min(source.remaining(), buffer.remaining()));
+				buffer.put(source);
+				source.limit(limit);
+			}
+		} finally {
+			source.limit(limit);
+		}
+		return this;
+	}
+
+	public MappedFileOutputStream putShort(final short value) throws IOException {
+		ensure(2);
+		buffer.putShort(value);
+		return this;
+	}
+
+	public MappedFileOutputStream putInt(final int value) throws IOException {
+		ensure(4);
+		buffer.putInt(value);
+		return this;
+	}
+
+	public MappedFileOutputStream putLong(final long value) throws IOException {
+		ensure(8);
+		buffer.putLong(value);
+		return this;
+	}
+
+	public MappedFileOutputStream putFloat(final float value) throws IOException {
+		ensure(4);
+		buffer.putFloat(value);
+		return this;
+	}
+
+	public MappedFileOutputStream putDouble(final double value) throws IOException {
+		ensure(8);
+		buffer.putDouble(value);
+		return this;
+	}
+
+	/**
+	 * Forces the content of the current window to be written to the storage device.
+	 */
+	public void force(){
+		buffer.force();
+	}
+
+	/**
+	 * Truncates the file to the number of bytes written and closes it.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+
+		try {
+			channel.truncate(position());
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void ensure(final int bytes) throws IOException {
+		if(closed){
+			throw new IOException("Stream has been closed");
+		}
+		if(buffer.remaining() < bytes){
+			map(position(), windowSize);
+		}
+	}
+
+	private void map(final long start, final long size) throws IOException {
+		windowStart = start;
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(size, windowSize));
+		buffer.order(order);
+	}
+}
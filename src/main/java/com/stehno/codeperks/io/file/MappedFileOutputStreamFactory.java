@@ -0,0 +1,48 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.stehno.codeperks.io.OutputStreamFactory;
+
+/**
+ * Factory for MappedFileOutputStreams, which write into a preallocated, memory-mapped file.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class MappedFileOutputStreamFactory implements OutputStreamFactory<MappedFileOutputStream> {
+
+	private final File file;
+	private final long expectedSize;
+	private final int windowSize;
+
+	public MappedFileOutputStreamFactory(final File file, final long expectedSize){
+		this(file, expectedSize, MappedFileOutputStream.DEFAULT_WINDOW_SIZE);
+	}
+
+	public MappedFileOutputStreamFactory(final File file, final long expectedSize, final int windowSize){
+		this.file = file;
+		this.expectedSize = expectedSize;
+		this.windowSize = windowSize;
+	}
+
+	@Override
+	public MappedFileOutputStream outputStream() throws IOException {
+		return new MappedFileOutputStream(file, expectedSize, windowSize);
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.io.IOUtils;
+
+import com.stehno.codeperks.io.ConcurrentIo;
+
+/**
+ * Provides streams for an ordered sequence of files, opening the upcoming files and reading
+ * their first bytes on background threads while the current file is being consumed. This hides
+ * the open and first-read latency of network file systems and cold disks when many files are
+ * processed in order.<br/><br/>
+ *
+ * <b>Usage</b><br/>
+ *
+ * <pre>
+ * final ReadAheadFileSequence sequence = new ReadAheadFileSequence(files, 2);
+ * try {
+ * 		while(sequence.hasNext()){
+ * 			IoTemplate.input(sequence.next(), callback);
+ * 		}
+ * } finally {
+ * 		sequence.close();
+ * }
+ * </pre>
+ *
+ * The streams must be consumed in order and each should be closed once it has been read. Instances
+ * are not thread-safe.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class ReadAheadFileSequence {
+
+	/**
+	 * The default number of bytes read ahead from each file (64 KB).
+	 */
+	public static final int DEFAULT_PREFETCH_SIZE = 64 * 1024;
+
+	private final List<File> files;
+	private final int depth;
+	private final int prefetchSize;
+	private final ExecutorService executor;
+	private final boolean ownedExecutor;
+	private final LinkedList<Future<Prefetched>> pending = new LinkedList<Future<Prefetched>>();
+	private int submitted;
+	private int consumed;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a sequence over the given files which keeps <code>depth</code> files opened ahead of
+	 * the one being consumed, using its own background threads.
+	 *
+	 * @param files the files, in processing order
+	 * @param depth the number of files to be opened ahead (at least one)
+	 */
+	public ReadAheadFileSequence(final List<File> files, final int depth){
+		this(files, depth, DEFAULT_PREFETCH_SIZE, null);
+	}
+
+	/**
+	 * Creates a sequence over the given files which keeps <code>depth</code> files opened ahead of
+	 * the one being consumed, reading up to <code>prefetchSize</code> bytes of each in advance.
+	 *
+	 * @param files the files, in processing order
+	 * @param depth the number of files to be opened ahead (at least one)
+	 * @param prefetchSize the number of bytes read ahead from each file
+	 * @param executor the executor used to open files (if null, a private one will be created and shut down on close)
+	 */
+	public ReadAheadFileSequence(final List<File> files, final int depth, final int prefetchSize, final ExecutorService executor){
+		if(depth < 1){
+			throw new IllegalArgumentException("Read-ahead depth must be at least one: " + depth);
+		}
+		this.files = new ArrayList<File>(files);
+		this.depth = depth;
+		this.prefetchSize = prefetchSize;
+		this.ownedExecutor = executor == null;
+		this.executor = executor != null ? executor : Executors.newFixedThreadPool(depth, new DaemonThreadFactory());
+
+		schedule();
+	}
+
+	/**
+	 * Determines whether or not there are more files in the sequence.
+	 *
+	 * @return true if there are more files
+	 */
+	public boolean hasNext(){
+		return consumed < files.size();
+	}
+
+	/**
+	 * Retrieves the file whose stream will be returned by the next call to <code>next()</code>.
+	 *
+	 * @return the next file
+	 */
+	public File peek(){
+		if(!hasNext()){
+			throw new NoSuchElementException();
+		}
+		return files.get(consumed);
+	}
+
+	/**
+	 * Retrieves a stream for the next file in the sequence, waiting for it to be opened if necessary,
+	 * and starts opening the files which follow it.
+	 *
+	 * @return a stream containing the contents of the next file
+	 * @throws IOException if there is a problem opening or reading the file
+	 */
+	public BufferedInputStream next() throws IOException {
+		if(!hasNext()){
+			throw new NoSuchElementException();
+		}
+		if(closed){
+			throw new IOException("Sequence has been closed");
+		}
+
+		final Future<Prefetched> future = pending.removeFirst();
+		consumed++;
+		schedule();
+
+		return ConcurrentIo.await(future, "open file").toInputStream();
+	}
+
+	/**
+	 * Closes any files which have been opened ahead but not consumed. If the sequence created its own
+	 * threads, they are shut down.
+	 */
+	public void close(){
+		closed = true;
+		while(!pending.isEmpty()){
+			try {
+				final Prefetched prefetched = ConcurrentIo.await(pending.removeFirst(), "open file");
+				if(prefetched != null){
+					prefetched.close();
+				}
+			} catch(final IOException ioe){
+				// nothing was left open
+			}
+		}
+
+		if(ownedExecutor){
+			executor.shutdown();
+		}
+	}
+
+	private void schedule(){
+		while(submitted < files.size() && submitted < consumed + depth){
+			final File file = files.get(submitted++);
+			pending.addLast(executor.submit(new Callable<Prefetched>() {
+				@Override
+				public Prefetched call() throws IOException {
+					return closed ? null : prefetch(file);
+				}
+			}));
+		}
+	}
+
+	private Prefetched prefetch(final File file) throws IOException {
+		final FileInputStream in = new FileInputStream(file);
+		try {
+			final byte[] bytes = new byte[(int)Math.min(prefetchSize, Math.max(file.length(), 1))];
+			int length = 0;
+			int count = 0;
+			while(length < bytes.length && (count = in.read(bytes, length, bytes.length - length)) != -1){
+				length += count;
+			}
+
+			if(count == -1){
+				in.close();
+				return new Prefetched(bytes, length, null);
+			}
+			return new Prefetched(bytes, length, in);
+
+		} catch(final IOException ioe){
+			IOUtils.closeQuietly(in);
+			throw ioe;
+		}
+	}
+
+	/**
+	 * The bytes read ahead from a file, along with the still-open stream for the rest of it.
+	 */
+	private static final class Prefetched {
+
+		private final byte[] bytes;
+		private final int length;
+		private final InputStream remainder;
+
+		Prefetched(final byte[] bytes, final int length, final InputStream remainder){
+			this.bytes = bytes;
+			this.length = length;
+			this.remainder = remainder;
+		}
+
+		BufferedInputStream toInputStream(){
+			final InputStream head = new ByteArrayInputStream(bytes, 0, length);
+			return new BufferedInputStream(remainder != null ? new SequenceInputStream(head, remainder) : head);
+		}
+
+		void close(){
+			IOUtils.closeQuietly(remainder);
+		}
+	}
+
+	private static final class DaemonThreadFactory implements ThreadFactory {
+		@Override
+		public Thread newThread(final Runnable r){
+			final Thread thread = new Thread(r, "file-read-ahead");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * OutputStream which keeps its data in memory until a configured threshold is
+ * exceeded, at which point the data is transparently moved into a temporary file
+ * and all further writes go to the file.<br/><br/>
+ *
+ * Once the stream has been closed, the content may be retrieved as a ByteBuffer or
+ * an InputStream without copying it. In-memory content is wrapped directly, while
+ * spilled content is memory-mapped or streamed from the temporary file.<br/><br/>
+ *
+ * <b>Usage</b><br/>
+ *
+ * <pre>
+ * final SpillingOutputStream out = new SpillingOutputStream(1024 * 1024);
+ * IoTemplate.output(out, callback);
+ * try {
+ * 		final ByteBuffer content = out.toByteBuffer();
+ * 		...
+ * } finally {
+ * 		out.dispose();
+ * }
+ * </pre>
+ *
+ * The temporary file (if any) is removed by <code>dispose()</code>.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class SpillingOutputStream extends OutputStream {
+
+	private static final int INITIAL_CAPACITY = 4096;
+
+	private final int threshold;
+	private final File directory;
+	private MemoryBuffer memory;
+	private File file;
+	private OutputStream fileOut;
+	private long size;
+	private boolean closed;
+
+	/**
+	 * Creates a stream which will spill to a temporary file in the default temp directory
+	 * once more than <code>threshold</code> bytes have been written.
+	 *
+	 * @param threshold the maximum number of bytes to be held in memory
+	 */
+	public SpillingOutputStream(final int threshold){
+		this(threshold, null);
+	}
+
+	/**
+	 * Creates a stream which will spill to a temporary file in the given directory
+	 * once more than <code>threshold</code> bytes have been written.
+	 *
+	 * @param threshold the maximum number of bytes to be held in memory
+	 * @param directory the directory used for the temporary file (null for the default temp directory)
+	 */
+	public SpillingOutputStream(final int threshold, final File directory){
+		if(threshold < 0){
+			throw new IllegalArgumentException("Threshold must not be negative: " + threshold);
+		}
+		this.threshold = threshold;
+		this.directory = directory;
+		this.memory = new MemoryBuffer(Math.min(threshold, INITIAL_CAPACITY));
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		ensureOpen();
+		if(file == null && memory.size() + 1 > threshold){
+			spill();
+		}
+
+		if(file == null){
+			memory.write(b);
+		} else {
+			fileOut.write(b);
+		}
+		size++;
+	}
+
+	@Override
+	public void write(final byte[] bytes, final int off, final int len) throws IOException {
+		ensureOpen();
+		if(file == null && memory.size() + (long)len > threshold){
+			spill();
+		}
+
+		if(file == null){
+			memory.write(bytes, off, len);
+		} else {
+			fileOut.write(bytes, off, len);
+		}
+		size += len;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if(fileOut != null){
+			fileOut.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(!closed){
+			closed = true;
+			if(fileOut != null){
+				fileOut.close();
+			}
+		}
+	}
+
+	/**
+	 * Used to determine whether or not the content is still held entirely in memory.
+	 *
+	 * @return true if the data has not been spilled to a file
+	 */
+	public boolean isInMemory(){
+		return file == null;
+	}
+
+	/**
+	 * Retrieves the number of bytes written to the stream.
+	 *
+	 * @return the number of bytes written
+	 */
+	public long size(){
+		return size;
+	}
+
+	/**
+	 * Retrieves the temporary file backing the stream content, if the data has been
+	 * spilled.
+	 *
+	 * @return the temporary file or null if the data is still held in memory
+	 */
+	public File getFile(){
+		return file;
+	}
+
+	/**
+	 * Retrieves the content of the closed stream as a read-only ByteBuffer. In-memory
+	 * data is wrapped without copying and spilled data is memory-mapped from the
+	 * temporary file.
+	 *
+	 * @return a read-only buffer containing the written data
+	 * @throws IOException if there is a problem mapping the file or the content is larger than a buffer may hold
+	 */
+	public ByteBuffer toByteBuffer() throws IOException {
+		ensureClosed();
+		if(file == null){
+			return ByteBuffer.wrap(memory.buffer(), 0, memory.size()).slice().asReadOnlyBuffer();
+		}
+
+		if(size > Integer.MAX_VALUE){
+			throw new IOException("Content is too large to be mapped into a single buffer: " + size);
+		}
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Retrieves the content of the closed stream as an InputStream. In-memory data is read
+	 * directly from the internal buffer and spilled data is read from the temporary file.
+	 * The returned stream should be closed by the caller.
+	 *
+	 * @return a stream containing the written data
+	 * @throws IOException if there is a problem opening the temporary file
+	 */
+	public InputStream toInputStream() throws IOException {
+		ensureClosed();
+		if(file == null){
+			return new ByteArrayInputStream(memory.buffer(), 0, memory.size());
+		}
+		return new BufferedInputStream(new FileInputStream(file));
+	}
+
+	/**
+	 * Writes the content of the closed stream to the given output stream.
+	 *
+	 * @param out the stream to be written to
+	 * @throws IOException if there is a problem writing the data
+	 */
+	public void writeTo(final OutputStream out) throws IOException {
+		ensureClosed();
+		if(file == null){
+			memory.writeTo(out);
+		} else {
+			final InputStream in = toInputStream();
+			try {
+				IOUtils.copyLarge(in, out);
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+		}
+	}
+
+	/**
+	 * Releases the memory held by the stream and removes the temporary file, if one
+	 * was created. Any ByteBuffer mapped from the file should no longer be used once
+	 * this method has been called.
+	 */
+	public void dispose(){
+		IOUtils.closeQuietly(fileOut);
+		closed = true;
+		memory = new MemoryBuffer(0);
+		if(file != null && !file.delete()){
+			file.deleteOnExit();
+		}
+	}
+
+	private void spill() throws IOException {
+		// the stream only switches to the file once it holds everything written so far
+		final File spillFile = File.createTempFile("spill.", ".tmp", directory);
+		OutputStream spillOut = null;
+		try {
+			spillOut = new BufferedOutputStream(new FileOutputStream(spillFile));
+			memory.writeTo(spillOut);
+		} catch(final IOException ioe){
+			IOUtils.closeQuietly(spillOut);
+			if(!spillFile.delete()){
+				spillFile.deleteOnExit();
+			}
+			throw ioe;
+		}
+
+		file = spillFile;
+		fileOut = spillOut;
+		memory = new MemoryBuffer(0);
+	}
+
+	private void ensureOpen() throws IOException {
+		if(closed){
+			throw new IOException("Stream has been closed");
+		}
+	}
+
+	private void ensureClosed(){
+		if(!closed){
+			throw new IllegalStateException("Stream must be closed before its content is accessed");
+		}
+	}
+
+	/**
+	 * ByteArrayOutputStream exposing its internal buffer so that the content does not
+	 * need to be copied out.
+	 */
+	private static final class MemoryBuffer extends ByteArrayOutputStream {
+
+		MemoryBuffer(final int capacity){
+			super(capacity);
+		}
+
+		byte[] buffer(){
+			return buf;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.file;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.stehno.codeperks.io.OutputStreamFactory;
+
+/**
+ * Factory for SpillingOutputStreams, which hold their data in memory up to a threshold
+ * and then move it into a temporary file.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class SpillingOutputStreamFactory implements OutputStreamFactory<SpillingOutputStream> {
+
+	private final int threshold;
+	private final File directory;
+
+	public SpillingOutputStreamFactory(final int threshold){
+		this(threshold, null);
+	}
+
+	public SpillingOutputStreamFactory(final int threshold, final File directory){
+		this.threshold = threshold;
+		this.directory = directory;
+	}
+
+	@Override
+	public SpillingOutputStream outputStream() throws IOException {
+		return new SpillingOutputStream(threshold, directory);
+	}
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.gzip;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.stehno.codeperks.io.InflaterPool;
+
+/**
+ * Index of the gzip members (blocks) of a block-compressed gzip file, mapping each block to
+ * its compressed and uncompressed offsets.<br/><br/>
+ *
+ * Any file made of concatenated gzip members may be indexed. For BGZF files (such as those
+ * written by BlockGzipOutputStream or <code>bgzip</code>) the block sizes are recorded in the
+ * member headers, so the index is built by reading only the headers and trailers. Other
+ * multi-member files are decompressed once to find the member boundaries. A single-member gzip
+ * file yields a single block and gains nothing from the index.<br/><br/>
+ *
+ * Instances are immutable and may be shared between streams and threads.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public final class BlockGzipIndex {
+
+	static final int ID1 = 0x1f;
+	static final int ID2 = 0x8b;
+	static final int CM_DEFLATE = 8;
+	static final int TRAILER_LENGTH = 8;
+
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+	private static final int HEADER_READ_SIZE = 1024;
+	private static final int MAX_HEADER_SIZE = 256 * 1024;
+
+	// both arrays hold one more entry than there are blocks, marking the end of the data
+	private final long[] compressedOffsets;
+	private final long[] uncompressedOffsets;
+
+	private BlockGzipIndex(final long[] compressedOffsets, final long[] uncompressedOffsets){
+		this.compressedOffsets = compressedOffsets;
+		this.uncompressedOffsets = uncompressedOffsets;
+	}
+
+	/**
+	 * Builds the index of the given gzip file.
+	 *
+	 * @param file the gzip file
+	 * @return the block index
+	 * @throws IOException if there is a problem reading the file or it is not in gzip format
+	 */
+	public static BlockGzipIndex build(final File file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final long length = raf.length();
+			long[] compressed = new long[64];
+			long[] uncompressed = new long[64];
+			int count = 0;
+
+			long position = 0;
+			long total = 0;
+			while(position < length){
+				byte[] header;
+				int headerLength;
+				int readSize = HEADER_READ_SIZE;
+				do {
+					header = readAt(raf, position, (int)Math.min(readSize, length - position));
+					headerLength = headerLength(header, header.length);
+					readSize *= 4;
+				} while(headerLength < 0 && header.length == readSize / 4 && readSize <= MAX_HEADER_SIZE);
+
+				if(headerLength < 0){
+					throw new IOException("Invalid gzip member header at offset " + position + " of " + file);
+				}
+
+				final long memberLength;
+				final long memberSize;
+				final int blockSize = blockSize(header, headerLength);
+				if(blockSize > 0){
+					memberLength = blockSize;
+					memberSize = readIntLE(readAt(raf, position + blockSize - 4, 4), 0) & 0xffffffffL;
+				} else {
+					final long[] scanned = scanMember(raf, position + headerLength);
+					memberLength = headerLength + scanned[0] + TRAILER_LENGTH;
+					memberSize = scanned[1];
+				}
+
+				// empty members, such as the BGZF end-of-file marker, hold no data
+				if(memberSize > 0){
+					if(count + 1 >= compressed.length){
+						compressed = Arrays.copyOf(compressed, compressed.length * 2);
+						uncompressed = Arrays.copyOf(uncompressed, uncompressed.length * 2);
+					}
+					compressed[count] = position;
+					uncompressed[count] = total;
+					count++;
+				}
+
+				position += memberLength;
+				total += memberSize;
+			}
+
+			compressed[count] = position;
+			uncompressed[count] = total;
+			return new BlockGzipIndex(Arrays.copyOf(compressed, count + 1), Arrays.copyOf(uncompressed, count + 1));
+
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Retrieves the number of (non-empty) blocks in the file.
+	 *
+	 * @return the number of blocks
+	 */
+	public int size(){
+		return compressedOffsets.length - 1;
+	}
+
+	/**
+	 * Retrieves the total uncompressed length of the file content.
+	 *
+	 * @return the uncompressed length in bytes
+	 */
+	public long getUncompressedLength(){
+		return uncompressedOffsets[uncompressedOffsets.length - 1];
+	}
+
+	/**
+	 * Finds the block containing the given uncompressed offset.
+	 *
+	 * @param offset the uncompressed offset
+	 * @return the index of the block containing the offset, or <code>size()</code> if the offset is at or
+	 * beyond the end of the content
+	 */
+	public int blockFor(final long offset){
+		if(offset >= getUncompressedLength()){
+			return size();
+		}
+
+		int low = 0;
+		int high = size() - 1;
+		while(low < high){
+			final int mid = (low + high + 1) >>> 1;
+			if(uncompressedOffsets[mid] <= offset){
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	long compressedOffset(final int block){
+		return compressedOffsets[block];
+	}
+
+	long compressedLength(final int block){
+		return compressedOffsets[block + 1] - compressedOffsets[block];
+	}
+
+	long uncompressedOffset(final int block){
+		return uncompressedOffsets[block];
+	}
+
+	long uncompressedLength(final int block){
+		return uncompressedOffsets[block + 1] - uncompressedOffsets[block];
+	}
+
+	/**
+	 * Determines the length of the gzip member header at the start of the given bytes.
+	 *
+	 * @return the header length or -1 if the bytes do not hold a complete, valid header
+	 */
+	static int headerLength(final byte[] bytes, final int length){
+		if(length < 10 || (bytes[0] & 0xff) != ID1 || (bytes[1] & 0xff) != ID2 || bytes[2] != CM_DEFLATE){
+			return -1;
+		}
+
+		final int flags = bytes[3] & 0xff;
+		int position = 10;
+		if((flags & FEXTRA) != 0){
+			if(position + 2 > length){
+				return -1;
+			}
+			position += 2 + readShortLE(bytes, position);
+		}
+		if((flags & FNAME) != 0){
+			position = skipString(bytes, position, length);
+		}
+		if((flags & FCOMMENT) != 0){
+			position = skipString(bytes, position, length);
+		}
+		if((flags & FHCRC) != 0){
+			position += 2;
+		}
+		return position > length ? -1 : position;
+	}
+
+	/**
+	 * Retrieves the total member size from the BGZF "BC" extra subfield of the given header.
+	 *
+	 * @return the member size or -1 if the header has no BGZF subfield
+	 */
+	static int blockSize(final byte[] header, final int headerLength){
+		if(((header[3] & 0xff) & FEXTRA) == 0){
+			return -1;
+		}
+
+		final int end = 12 + readShortLE(header, 10);
+		int position = 12;
+		while(position + 4 <= end && end <= headerLength){
+			final int subfieldLength = readShortLE(header, position + 2);
+			if(header[position] == 'B' && header[position + 1] == 'C' && subfieldLength == 2){
+				return readShortLE(header, position + 4) + 1;
+			}
+			position += 4 + subfieldLength;
+		}
+		return -1;
+	}
+
+	static int readShortLE(final byte[] bytes, final int offset){
+		return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+	}
+
+	static int readIntLE(final byte[] bytes, final int offset){
+		return readShortLE(bytes, offset) | readShortLE(bytes, offset + 2) << 16;
+	}
+
+	private static int skipString(final byte[] bytes, final int start, final int length){
+		int position = start;
+		while(position < length && bytes[position] != 0){
+			position++;
+		}
+		return position + 1;
+	}
+
+	private static byte[] readAt(final RandomAccessFile raf, final long position, final int length) throws IOException {
+		final byte[] bytes = new byte[length];
+		raf.seek(position);
+		raf.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Inflates a member without a BGZF size field to find the end of its compressed data.
+	 *
+	 * @return the compressed data length and the uncompressed length of the member
+	 */
+	private static long[] scanMember(final RandomAccessFile raf, final long dataStart) throws IOException {
+		final Inflater inflater = InflaterPool.shared().acquire(true);
+		try {
+			final byte[] input = new byte[64 * 1024];
+			final byte[] output = new byte[64 * 1024];
+			raf.seek(dataStart);
+			while(!inflater.finished()){
+				if(inflater.needsInput()){
+					final int count = raf.read(input);
+					if(count == -1){
+						throw new IOException("Unexpected end of gzip member starting at offset " + dataStart);
+					}
+					inflater.setInput(input, 0, count);
+				}
+				inflater.inflate(output);
+				if(inflater.needsDictionary()){
+					throw new IOException("Invalid gzip member data at offset " + dataStart);
+				}
+			}
+			return new long[]{ inflater.getBytesRead(), inflater.getBytesWritten() };
+
+		} catch(final DataFormatException dfe){
+			throw new IOException("Invalid gzip member data at offset " + dataStart + ": " + dfe.getMessage());
+		} finally {
+			InflaterPool.shared().release(true, inflater);
+		}
+	}
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.gzip;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.stehno.codeperks.io.ConcurrentIo;
+import com.stehno.codeperks.io.InflaterPool;
+
+/**
+ * InputStream over the uncompressed content of a block-compressed gzip file. Blocks ahead of
+ * the read position are decompressed in parallel on an ExecutorService, and the stream may be
+ * positioned at any uncompressed offset with <code>seek()</code>, which decompresses only the
+ * block containing that offset.<br/><br/>
+ *
+ * Instances are created by the BlockGzipInputStreamFactory and are not thread-safe.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class BlockGzipInputStream extends InputStream {
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private final BlockGzipIndex index;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final ExecutorService executor;
+	private final boolean ownedExecutor;
+	private final int readAhead;
+	private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+	private byte[] block = EMPTY;
+	private long blockStart;
+	private int blockPosition;
+	private int nextBlock;
+	private int nextSubmit;
+	private boolean closed;
+
+	BlockGzipInputStream(final File file, final BlockGzipIndex index, final ExecutorService executor, final boolean ownedExecutor, final int readAhead) throws IOException {
+		this.index = index;
+		this.raf = new RandomAccessFile(file, "r");
+		this.channel = raf.getChannel();
+		this.executor = executor;
+		this.ownedExecutor = ownedExecutor;
+		this.readAhead = Math.max(1, readAhead);
+	}
+
+	@Override
+	public int read() throws IOException {
+		if(!fill()){
+			return -1;
+		}
+		return block[blockPosition++] & 0xff;
+	}
+
+	@Override
+	public int read(final byte[] bytes, final int off, final int len) throws IOException {
+		if(len == 0){
+			return 0;
+		}
+		if(!fill()){
+			return -1;
+		}
+
+		final int count = Math.min(len, block.length - blockPosition);
+		System.arraycopy(block, blockPosition, bytes, off, count);
+		blockPosition += count;
+		return count;
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		if(n <= 0){
+			return 0;
+		}
+
+		final long position = position();
+		final long target = Math.min(position + n, length());
+		if(target - position <= block.length - blockPosition){
+			blockPosition += (int)(target - position);
+		} else {
+			seek(target);
+		}
+		return target - position;
+	}
+
+	@Override
+	public int available(){
+		return block.length - blockPosition;
+	}
+
+	/**
+	 * Positions the stream at the given offset of the uncompressed content.
+	 *
+	 * @param offset the uncompressed offset
+	 * @throws IOException if there is a problem decompressing the block containing the offset
+	 */
+	public void seek(final long offset) throws IOException {
+		ensureOpen();
+		if(offset < 0){
+			throw new IllegalArgumentException("Offset must not be negative: " + offset);
+		}
+
+		cancelPending();
+
+		final int target = index.blockFor(offset);
+		nextBlock = target;
+		nextSubmit = target;
+		block = EMPTY;
+		blockPosition = 0;
+
+		if(target < index.size() && fill()){
+			blockPosition = (int)(offset - blockStart);
+		} else {
+			blockStart = length();
+		}
+	}
+
+	/**
+	 * Retrieves the current position in the uncompressed content.
+	 *
+	 * @return the uncompressed offset of the next byte to be read
+	 */
+	public long position(){
+		return blockStart + blockPosition;
+	}
+
+	/**
+	 * Retrieves the total length of the uncompressed content.
+	 *
+	 * @return the uncompressed length in bytes
+	 */
+	public long length(){
+		return index.getUncompressedLength();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+
+		cancelPending();
+		if(ownedExecutor){
+			executor.shutdownNow();
+		}
+		raf.close();
+	}
+
+	private boolean fill() throws IOException {
+		if(blockPosition < block.length){
+			return true;
+		}
+		ensureOpen();
+
+		while(nextBlock < index.size()){
+			schedule();
+			block = ConcurrentIo.await(pending.removeFirst(), "decompress block");
+			blockStart = index.uncompressedOffset(nextBlock);
+			blockPosition = 0;
+			nextBlock++;
+			if(block.length > 0){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void schedule(){
+		while(nextSubmit < index.size() && nextSubmit < nextBlock + readAhead){
+			final int blockIndex = nextSubmit++;
+			pending.addLast(executor.submit(new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws IOException {
+					return inflate(blockIndex);
+				}
+			}));
+		}
+	}
+
+	private void cancelPending(){
+		for(final Future<byte[]> future : pending){
+			future.cancel(false);
+		}
+		pending.clear();
+	}
+
+	private byte[] inflate(final int blockIndex) throws IOException {
+		final long compressedLength = index.compressedLength(blockIndex);
+		final long uncompressedLength = index.uncompressedLength(blockIndex);
+		if(compressedLength > Integer.MAX_VALUE || uncompressedLength > Integer.MAX_VALUE){
+			throw new IOException("Block " + blockIndex + " is too large to be decompressed into memory");
+		}
+
+		final ByteBuffer compressed = ByteBuffer.allocate((int)compressedLength);
+		final long start = index.compressedOffset(blockIndex);
+		while(compressed.hasRemaining()){
+			if(channel.read(compressed, start + compressed.position()) == -1){
+				throw new IOException("Unexpected end of file in block " + blockIndex);
+			}
+		}
+
+		final byte[] bytes = compressed.array();
+		final int headerLength = BlockGzipIndex.headerLength(bytes, bytes.length);
+		if(headerLength < 0){
+			throw new IOException("Invalid gzip header in block " + blockIndex);
+		}
+
+		final byte[] data = new byte[(int)uncompressedLength];
+		final int trailer;
+		final Inflater inflater = InflaterPool.shared().acquire(true);
+		try {
+			inflater.setInput(bytes, headerLength, bytes.length - headerLength);
+			int length = 0;
+			while(length < data.length){
+				final int count = inflater.inflate(data, length, data.length - length);
+				if(count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())){
+					break;
+				}
+				length += count;
+			}
+
+			if(length != data.length){
+				throw new IOException("Block " + blockIndex + " is truncated");
+			}
+
+			// consume the end of the deflate stream, which may remain after the output is full
+			final byte[] extra = new byte[1];
+			while(!inflater.finished()){
+				if(inflater.inflate(extra) != 0){
+					throw new IOException("Block " + blockIndex + " holds more data than indexed");
+				}
+				if(inflater.needsInput() || inflater.needsDictionary()){
+					throw new IOException("Block " + blockIndex + " is truncated");
+				}
+			}
+
+			// the block may be followed by empty members, so the trailer is located from the unused input
+			trailer = bytes.length - inflater.getRemaining();
+			if(trailer + BlockGzipIndex.TRAILER_LENGTH > bytes.length){
+				throw new IOException("Block " + blockIndex + " is missing its trailer");
+			}
+		} catch(final DataFormatException dfe){
+			throw new IOException("Invalid compressed data in block " + blockIndex + ": " + dfe.getMessage());
+		} finally {
+			InflaterPool.shared().release(true, inflater);
+		}
+
+		final CRC32 crc = new CRC32();
+		crc.update(data);
+		if((int)crc.getValue() != BlockGzipIndex.readIntLE(bytes, trailer)){
+			throw new IOException("CRC mismatch in block " + blockIndex);
+		}
+		return data;
+	}
+
+	private void ensureOpen() throws IOException {
+		if(closed){
+			throw new IOException("Stream has been closed");
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.gzip;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.stehno.codeperks.io.InputStreamFactory;
+
+/**
+ * Factory for BlockGzipInputStreams over a block-compressed gzip file. The block index of the
+ * file is built when the first stream is created and is shared by all of the streams created
+ * by the factory.<br/><br/>
+ *
+ * <b>Usage</b><br/>
+ *
+ * <pre>
+ * IoTemplate.input(new BlockGzipInputStreamFactory(new File("/logs/app.log.gz")), new InputStreamCallback&lt;BlockGzipInputStream&gt;(){
+ * 		public void input(BlockGzipInputStream in) throws IOException {
+ * 			in.seek(offset);
+ * 			...
+ * 		}
+ * });
+ * </pre>
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class BlockGzipInputStreamFactory implements InputStreamFactory<BlockGzipInputStream> {
+
+	private final File file;
+	private final ExecutorService executor;
+	private final int readAhead;
+	private BlockGzipIndex index;
+
+	/**
+	 * Creates a factory whose streams each decompress on their own pool of one thread per
+	 * available processor.
+	 *
+	 * @param file the gzip file
+	 */
+	public BlockGzipInputStreamFactory(final File file){
+		this(file, null, null, Runtime.getRuntime().availableProcessors() * 2);
+	}
+
+	/**
+	 * Creates a factory whose streams decompress on the given executor.
+	 *
+	 * @param file the gzip file
+	 * @param executor the executor used for decompression (null for a pool per stream)
+	 * @param readAhead the number of blocks decompressed ahead of the read position
+	 */
+	public BlockGzipInputStreamFactory(final File file, final ExecutorService executor, final int readAhead){
+		this(file, null, executor, readAhead);
+	}
+
+	/**
+	 * Creates a factory using a previously built index of the file.
+	 *
+	 * @param file the gzip file
+	 * @param index the block index of the file (null to build it when first needed)
+	 * @param executor the executor used for decompression (null for a pool per stream)
+	 * @param readAhead the number of blocks decompressed ahead of the read position
+	 */
+	public BlockGzipInputStreamFactory(final File file, final BlockGzipIndex index, final ExecutorService executor, final int readAhead){
+		this.file = file;
+		this.index = index;
+		this.executor = executor;
+		this.readAhead = readAhead;
+	}
+
+	/**
+	 * Retrieves the block index of the file, building it if necessary.
+	 *
+	 * @return the block index
+	 * @throws IOException if there is a problem reading the file
+	 */
+	public synchronized BlockGzipIndex getIndex() throws IOException {
+		if(index == null){
+			index = BlockGzipIndex.build(file);
+		}
+		return index;
+	}
+
+	@Override
+	public BlockGzipInputStream inputStream() throws IOException {
+		if(executor != null){
+			return new BlockGzipInputStream(file, getIndex(), executor, false, readAhead);
+		}
+
+		final ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r){
+				final Thread thread = new Thread(r, "block-gzip-inflater");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		try {
+			return new BlockGzipInputStream(file, getIndex(), pool, true, readAhead);
+		} catch(final IOException ioe){
+			pool.shutdown();
+			throw ioe;
+		}
+	}
+}
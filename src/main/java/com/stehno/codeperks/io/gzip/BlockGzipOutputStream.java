@@ -0,0 +1,180 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.gzip;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.stehno.codeperks.io.DeflaterPool;
+
+/**
+ * OutputStream writing data in the BGZF block-compressed gzip format: a series of gzip members
+ * of at most 64 KB, each recording its compressed size in a "BC" extra subfield, followed by an
+ * empty end-of-file member. The output is a valid (multi-member) gzip file, readable by any gzip
+ * tool, and may be read in parallel or at random offsets with a BlockGzipInputStream.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class BlockGzipOutputStream extends FilterOutputStream {
+
+	/**
+	 * The maximum amount of uncompressed data held in a block, leaving room for incompressible
+	 * data to fit into the 64 KB block size limit.
+	 */
+	public static final int BLOCK_DATA_SIZE = 0xff00;
+
+	private static final int MAX_BLOCK_SIZE = 0x10000;
+	private static final int HEADER_LENGTH = 18;
+
+	private static final byte[] EOF_BLOCK = {
+		0x1f, (byte)0x8b, 0x08, 0x04, 0, 0, 0, 0, 0, (byte)0xff, 0x06, 0, 0x42, 0x43, 0x02, 0, 0x1b, 0,
+		0x03, 0, 0, 0, 0, 0, 0, 0, 0, 0
+	};
+
+	private final int level;
+	private final Deflater deflater;
+	private final Deflater storer = DeflaterPool.shared().acquire(Deflater.NO_COMPRESSION, true);
+	private final CRC32 crc = new CRC32();
+	private final byte[] data = new byte[BLOCK_DATA_SIZE];
+	private final byte[] block = new byte[MAX_BLOCK_SIZE];
+	private int length;
+	private boolean closed;
+
+	public BlockGzipOutputStream(final OutputStream out){
+		this(out, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Creates a stream writing blocks compressed at the given level.
+	 *
+	 * @param out the stream the compressed data is written to
+	 * @param level the Deflater compression level
+	 */
+	public BlockGzipOutputStream(final OutputStream out, final int level){
+		super(out);
+		this.level = level;
+		this.deflater = DeflaterPool.shared().acquire(level, true);
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		if(length == data.length){
+			writeBlock();
+		}
+		data[length++] = (byte)b;
+	}
+
+	@Override
+	public void write(final byte[] bytes, final int off, final int len) throws IOException {
+		int offset = off;
+		int remaining = len;
+		while(remaining > 0){
+			if(length == data.length){
+				writeBlock();
+			}
+			final int count = Math.min(remaining, data.length - length);
+			System.arraycopy(bytes, offset, data, length, count);
+			length += count;
+			offset += count;
+			remaining -= count;
+		}
+	}
+
+	/**
+	 * Completes the current block, if any, and flushes the underlying stream. Flushing often
+	 * produces small blocks, which compress poorly.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if(length > 0){
+			writeBlock();
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes the remaining data and the end-of-file marker block, then closes the underlying
+	 * stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+
+		try {
+			if(length > 0){
+				writeBlock();
+			}
+			out.write(EOF_BLOCK);
+		} finally {
+			DeflaterPool.shared().release(level, true, deflater);
+			DeflaterPool.shared().release(Deflater.NO_COMPRESSION, true, storer);
+			out.close();
+		}
+	}
+
+	private void writeBlock() throws IOException {
+		int compressed = deflate(deflater);
+		if(compressed < 0){
+			compressed = deflate(storer);
+		}
+
+		crc.reset();
+		crc.update(data, 0, length);
+
+		final int blockSize = HEADER_LENGTH + compressed + 8;
+		final byte[] header = {
+			0x1f, (byte)0x8b, 0x08, 0x04, 0, 0, 0, 0, 0, (byte)0xff, 0x06, 0, 0x42, 0x43, 0x02, 0,
+			(byte)(blockSize - 1), (byte)((blockSize - 1) >> 8)
+		};
+		out.write(header);
+		out.write(block, 0, compressed);
+		writeIntLE((int)crc.getValue());
+		writeIntLE(length);
+
+		length = 0;
+	}
+
+	/**
+	 * Deflates the current data into the block buffer.
+	 *
+	 * @return the compressed length or -1 if the data does not fit into a block
+	 */
+	private int deflate(final Deflater def){
+		final int capacity = MAX_BLOCK_SIZE - HEADER_LENGTH - 8;
+		def.reset();
+		def.setInput(data, 0, length);
+		def.finish();
+
+		int compressed = 0;
+		while(!def.finished() && compressed < capacity){
+			compressed += def.deflate(block, compressed, capacity - compressed);
+		}
+		return def.finished() ? compressed : -1;
+	}
+
+	private void writeIntLE(final int value) throws IOException {
+		out.write(value & 0xff);
+		out.write((value >> 8) & 0xff);
+		out.write((value >> 16) & 0xff);
+		out.write((value >> 24) & 0xff);
+	}
+}
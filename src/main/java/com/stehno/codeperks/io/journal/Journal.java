@@ -0,0 +1,312 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.journal;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of records, written through memory-mapped, preallocated segment files in
+ * a directory. An append is a copy into the mapping, so it costs no system call; use
+ * <code>force()</code> to make the appended records durable.<br/><br/>
+ *
+ * Each segment starts with an 8-byte header and holds records of the form
+ * <code>[int length][int crc32][data]</code>, where the length includes the record header. The
+ * length is written last, so a record becomes visible to JournalReaders only once it is complete.
+ * When a record does not fit in the current segment, a length of -1 marks the end of the segment
+ * and appending continues in a new one.<br/><br/>
+ *
+ * When a journal is opened on a directory which already holds segments, the last segment is
+ * scanned to the last record with a valid checksum and anything after it, such as a record torn
+ * by a crash, is erased before appending resumes.<br/><br/>
+ *
+ * Instances are thread-safe.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class Journal {
+
+	/**
+	 * The default size of a segment file (64 MB).
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	static final int MAGIC = 0x4a524e4c;
+	static final int VERSION = 1;
+	static final int HEADER_LENGTH = 8;
+	static final int RECORD_HEADER_LENGTH = 8;
+	static final int END_OF_SEGMENT = -1;
+
+	private static final String SUFFIX = ".journal";
+
+	private final File directory;
+	private final int segmentSize;
+	private final CRC32 crc = new CRC32();
+	private RandomAccessFile raf;
+	private MappedByteBuffer segment;
+	private long sequence;
+	private boolean closed;
+
+	/**
+	 * Opens the journal in the given directory with the default segment size, recovering any
+	 * existing segments.
+	 *
+	 * @param directory the journal directory, which is created if it does not exist
+	 * @throws IOException if there is a problem opening or recovering the journal
+	 */
+	public Journal(final File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Opens the journal in the given directory, recovering any existing segments. The segment size
+	 * applies to new segments; existing segments keep their size.
+	 *
+	 * @param directory the journal directory, which is created if it does not exist
+	 * @param segmentSize the size of a segment file in bytes
+	 * @throws IOException if there is a problem opening or recovering the journal
+	 */
+	public Journal(final File directory, final int segmentSize) throws IOException {
+		if(segmentSize <= HEADER_LENGTH + RECORD_HEADER_LENGTH){
+			throw new IllegalArgumentException("Segment size is too small: " + segmentSize);
+		}
+		if(!directory.isDirectory() && !directory.mkdirs()){
+			throw new IOException("Unable to create journal directory: " + directory);
+		}
+
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+
+		final File[] segments = segments(directory);
+		if(segments.length == 0){
+			openSegment(0);
+		} else {
+			recover(segments[segments.length - 1]);
+		}
+	}
+
+	/**
+	 * Appends a record to the journal.
+	 *
+	 * @param data the record data
+	 * @throws IOException if there is a problem creating a new segment
+	 */
+	public void append(final byte[] data) throws IOException {
+		append(data, 0, data.length);
+	}
+
+	/**
+	 * Appends a record to the journal.
+	 *
+	 * @param data the array holding the record data
+	 * @param off the offset of the record data
+	 * @param len the length of the record data
+	 * @throws IOException if there is a problem creating a new segment
+	 * @throws IllegalArgumentException if the record is larger than a segment may hold
+	 */
+	public synchronized void append(final byte[] data, final int off, final int len) throws IOException {
+		if(closed){
+			throw new IOException("Journal has been closed");
+		}
+
+		final int length = RECORD_HEADER_LENGTH + len;
+		if(length > segmentSize - HEADER_LENGTH){
+			throw new IllegalArgumentException("Record of " + len + " bytes is larger than a segment may hold");
+		}
+
+		if(segment.remaining() < length){
+			roll();
+		}
+
+		final int position = segment.position();
+		crc.reset();
+		crc.update(data, off, len);
+		segment.putInt(position + 4, (int)crc.getValue());
+		segment.position(position + RECORD_HEADER_LENGTH);
+		segment.put(data, off, len);
+
+		// the length publishes the record, so it is written last
+		segment.putInt(position, length);
+	}
+
+	/**
+	 * Forces the appended records of the current segment to the storage device.
+	 */
+	public synchronized void force(){
+		if(!closed){
+			segment.force();
+		}
+	}
+
+	/**
+	 * Retrieves the journal directory.
+	 *
+	 * @return the directory holding the segment files
+	 */
+	public File getDirectory(){
+		return directory;
+	}
+
+	/**
+	 * Forces the current segment to the storage device and closes the journal. The segment keeps its
+	 * preallocated size, so that appending resumes in it when the journal is reopened.
+	 *
+	 * @throws IOException if there is a problem closing the segment file
+	 */
+	public synchronized void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+
+		segment.force();
+		raf.close();
+	}
+
+	/**
+	 * Lists the segment files of the given journal directory, in order.
+	 */
+	static File[] segments(final File directory){
+		final File[] segments = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(final File file){
+				return file.isFile() && file.getName().endsWith(SUFFIX);
+			}
+		});
+		if(segments == null){
+			return new File[0];
+		}
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	static File segmentFile(final File directory, final long sequence){
+		return new File(directory, String.format("%016d%s", sequence, SUFFIX));
+	}
+
+	static long sequenceOf(final File segment){
+		final String name = segment.getName();
+		return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+	}
+
+	/**
+	 * Determines whether the record at the given position of a segment is complete and valid.
+	 *
+	 * @return the record length, or 0 if there is no valid record at the position
+	 */
+	static int validLength(final ByteBuffer segment, final int position, final CRC32 crc, final byte[] scratch){
+		if(position + RECORD_HEADER_LENGTH > segment.limit()){
+			return 0;
+		}
+
+		final int length = segment.getInt(position);
+		if(length < RECORD_HEADER_LENGTH || length > segment.limit() - position){
+			return 0;
+		}
+
+		crc.reset();
+		final ByteBuffer data = segment.duplicate();
+		data.limit(position + length);
+		data.position(position + RECORD_HEADER_LENGTH);
+		while(data.hasRemaining()){
+			final int count = Math.min(scratch.length, data.remaining());
+			data.get(scratch, 0, count);
+			crc.update(scratch, 0, count);
+		}
+		return (int)crc.getValue() == segment.getInt(position + 4) ? length : 0;
+	}
+
+	private void roll() throws IOException {
+		if(segment.remaining() >= 4){
+			segment.putInt(segment.position(), END_OF_SEGMENT);
+		}
+		segment.force();
+		raf.close();
+		openSegment(sequence + 1);
+	}
+
+	/**
+	 * Creates and maps a new, preallocated segment. The segment is prepared under a temporary name
+	 * and renamed, so that readers never see it partially initialized.
+	 */
+	private void openSegment(final long newSequence) throws IOException {
+		final File file = segmentFile(directory, newSequence);
+		final File temp = new File(directory, file.getName() + ".tmp");
+
+		final RandomAccessFile init = new RandomAccessFile(temp, "rw");
+		try {
+			init.setLength(segmentSize);
+			init.writeInt(MAGIC);
+			init.writeInt(VERSION);
+		} finally {
+			init.close();
+		}
+		if(!temp.renameTo(file)){
+			throw new IOException("Unable to create journal segment: " + file);
+		}
+
+		map(file, newSequence);
+		segment.position(HEADER_LENGTH);
+	}
+
+	private void map(final File file, final long newSequence) throws IOException {
+		this.raf = new RandomAccessFile(file, "rw");
+		this.segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+		this.sequence = newSequence;
+	}
+
+	/**
+	 * Positions the journal after the last valid record of the given segment, erasing whatever follows.
+	 */
+	private void recover(final File file) throws IOException {
+		map(file, sequenceOf(file));
+		if(segment.capacity() < HEADER_LENGTH || segment.getInt(0) != MAGIC){
+			raf.close();
+			throw new IOException("Invalid journal segment: " + file);
+		}
+
+		final byte[] scratch = new byte[64 * 1024];
+		int position = HEADER_LENGTH;
+		int length;
+		while((length = validLength(segment, position, crc, scratch)) > 0){
+			position += length;
+		}
+
+		if(position + 4 <= segment.capacity() && segment.getInt(position) == END_OF_SEGMENT){
+			// the segment was completed, but its successor was never created
+			segment.force();
+			raf.close();
+			openSegment(sequence + 1);
+			return;
+		}
+
+		// later records may have reached the disk ahead of a torn one, so the whole tail is erased
+		Arrays.fill(scratch, (byte)0);
+		segment.position(position);
+		while(segment.hasRemaining()){
+			segment.put(scratch, 0, Math.min(scratch.length, segment.remaining()));
+		}
+		segment.force();
+		segment.position(position);
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Tails the records of a Journal directory, following the journal from segment to segment. Any
+ * number of readers, in the writing process or in others, may tail a journal while it is being
+ * appended to; a record is returned only once it is complete and its checksum is valid.<br/><br/>
+ *
+ * The position of a reader may be saved with <code>getSegment()</code> and <code>getOffset()</code>
+ * and later restored through the constructor. Instances are not thread-safe.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class JournalReader {
+
+	private final File directory;
+	private final CRC32 crc = new CRC32();
+	private RandomAccessFile raf;
+	private MappedByteBuffer segment;
+	private long sequence;
+	private int offset;
+
+	/**
+	 * Creates a reader positioned at the first record of the journal in the given directory.
+	 *
+	 * @param directory the journal directory
+	 */
+	public JournalReader(final File directory){
+		this(directory, 0, Journal.HEADER_LENGTH);
+	}
+
+	/**
+	 * Creates a reader positioned at the given segment and offset, as reported by a previous reader.
+	 * If the segment no longer exists, reading starts at the first segment after it.
+	 *
+	 * @param directory the journal directory
+	 * @param sequence the segment sequence number
+	 * @param offset the offset within the segment
+	 */
+	public JournalReader(final File directory, final long sequence, final int offset){
+		this.directory = directory;
+		this.sequence = sequence;
+		this.offset = Math.max(offset, Journal.HEADER_LENGTH);
+	}
+
+	/**
+	 * Retrieves the next record of the journal, if one is available.
+	 *
+	 * @return the record data, or null if no further record has been appended yet
+	 * @throws IOException if there is a problem opening a segment
+	 */
+	public byte[] poll() throws IOException {
+		if(segment == null && !open()){
+			return null;
+		}
+
+		while(atEndOfSegment()){
+			final File next = Journal.segmentFile(directory, sequence + 1);
+			if(!next.exists()){
+				return null;
+			}
+			closeSegment();
+			sequence++;
+			offset = Journal.HEADER_LENGTH;
+			if(!open()){
+				return null;
+			}
+		}
+
+		final int length = segment.getInt(offset);
+		if(length < Journal.RECORD_HEADER_LENGTH || length > segment.limit() - offset){
+			return null;
+		}
+
+		final byte[] data = new byte[length - Journal.RECORD_HEADER_LENGTH];
+		final ByteBuffer record = segment.duplicate();
+		record.position(offset + Journal.RECORD_HEADER_LENGTH);
+		record.get(data);
+
+		// a record in the process of being written is not yet valid, and is read again on the next poll
+		crc.reset();
+		crc.update(data);
+		if((int)crc.getValue() != segment.getInt(offset + 4)){
+			return null;
+		}
+
+		offset += length;
+		return data;
+	}
+
+	/**
+	 * Retrieves the sequence number of the segment being read.
+	 *
+	 * @return the segment sequence number
+	 */
+	public long getSegment(){
+		return sequence;
+	}
+
+	/**
+	 * Retrieves the offset of the next record within the segment being read.
+	 *
+	 * @return the segment offset
+	 */
+	public int getOffset(){
+		return offset;
+	}
+
+	/**
+	 * Closes the reader.
+	 *
+	 * @throws IOException if there is a problem closing the segment file
+	 */
+	public void close() throws IOException {
+		closeSegment();
+	}
+
+	private boolean atEndOfSegment(){
+		if(offset + 4 <= segment.limit() && segment.getInt(offset) == Journal.END_OF_SEGMENT){
+			return true;
+		}
+		// no record fits in the remaining space, so the writer will have moved on
+		return offset + Journal.RECORD_HEADER_LENGTH > segment.limit();
+	}
+
+	/**
+	 * Maps the current segment, or the first segment after it if it has been removed.
+	 */
+	private boolean open() throws IOException {
+		File file = Journal.segmentFile(directory, sequence);
+		if(!file.exists()){
+			file = null;
+			for(final File candidate : Journal.segments(directory)){
+				if(Journal.sequenceOf(candidate) > sequence){
+					file = candidate;
+					sequence = Journal.sequenceOf(candidate);
+					offset = Journal.HEADER_LENGTH;
+					break;
+				}
+			}
+			if(file == null){
+				return false;
+			}
+		}
+
+		raf = new RandomAccessFile(file, "r");
+		try {
+			segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} catch(final IOException ioe){
+			raf.close();
+			raf = null;
+			throw ioe;
+		}
+
+		if(segment.limit() < Journal.HEADER_LENGTH || segment.getInt(0) != Journal.MAGIC){
+			closeSegment();
+			throw new IOException("Invalid journal segment: " + file);
+		}
+		return true;
+	}
+
+	private void closeSegment() throws IOException {
+		segment = null;
+		if(raf != null){
+			raf.close();
+			raf = null;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.search;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick matcher for any number of patterns. The patterns are compiled into a
+ * deterministic automaton with a full 256-entry transition row per state, so the data is scanned
+ * once, one table lookup per byte, however many patterns there are.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+final class AhoCorasickMatcher implements ByteMatcher {
+
+	private static final int[] NONE = new int[0];
+
+	private final int[] lengths;
+	private final int[] transitions;
+	private final int[][] outputs;
+
+	AhoCorasickMatcher(final byte[][] patterns){
+		this.lengths = new int[patterns.length];
+
+		// builds the trie, with -1 marking the missing transitions
+		int capacity = 64;
+		int[] delta = new int[capacity * 256];
+		Arrays.fill(delta, -1);
+		int[][] own = new int[capacity][];
+		int states = 1;
+
+		for(int p=0; p<patterns.length; p++){
+			lengths[p] = patterns[p].length;
+			int state = 0;
+			for(final byte b : patterns[p]){
+				final int index = state * 256 + (b & 0xff);
+				if(delta[index] == -1){
+					if(states == capacity){
+						capacity *= 2;
+						final int oldLength = delta.length;
+						delta = Arrays.copyOf(delta, capacity * 256);
+						Arrays.fill(delta, oldLength, delta.length, -1);
+						own = Arrays.copyOf(own, capacity);
+					}
+					delta[index] = states++;
+				}
+				state = delta[index];
+			}
+			own[state] = append(own[state], p);
+		}
+
+		// breadth-first, completes the transitions through the failure links and merges the outputs
+		final int[] fail = new int[states];
+		final int[][] merged = new int[states][];
+		final int[] queue = new int[states];
+		int head = 0;
+		int tail = 0;
+
+		merged[0] = own[0] != null ? own[0] : NONE;
+		for(int c=0; c<256; c++){
+			final int next = delta[c];
+			if(next == -1){
+				delta[c] = 0;
+			} else {
+				fail[next] = 0;
+				queue[tail++] = next;
+			}
+		}
+
+		while(head < tail){
+			final int state = queue[head++];
+			merged[state] = concat(own[state], merged[fail[state]]);
+			for(int c=0; c<256; c++){
+				final int index = state * 256 + c;
+				final int next = delta[index];
+				if(next == -1){
+					delta[index] = delta[fail[state] * 256 + c];
+				} else {
+					fail[next] = delta[fail[state] * 256 + c];
+					queue[tail++] = next;
+				}
+			}
+		}
+
+		this.transitions = Arrays.copyOf(delta, states * 256);
+		this.outputs = merged;
+	}
+
+	@Override
+	public void find(final ByteBuffer buffer, final int reportLimit, final long baseOffset, final List<Match> matches){
+		final int limit = buffer.limit();
+		int state = 0;
+		for(int i=0; i<limit; i++){
+			state = transitions[state * 256 + (buffer.get(i) & 0xff)];
+			final int[] found = outputs[state];
+			for(int f=0; f<found.length; f++){
+				final int start = i - lengths[found[f]] + 1;
+				if(start < reportLimit){
+					matches.add(new Match(baseOffset + start, found[f]));
+				}
+			}
+		}
+	}
+
+	private static int[] append(final int[] values, final int value){
+		if(values == null){
+			return new int[]{ value };
+		}
+		final int[] appended = Arrays.copyOf(values, values.length + 1);
+		appended[values.length] = value;
+		return appended;
+	}
+
+	private static int[] concat(final int[] a, final int[] b){
+		if(a == null){
+			return b;
+		}
+		if(b.length == 0){
+			return a;
+		}
+		final int[] both = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, both, a.length, b.length);
+		return both;
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.search;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Pattern matching algorithm used by the FileSearch. Implementations are immutable once built
+ * and are shared by the search threads.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+interface ByteMatcher {
+
+	/**
+	 * Finds all (possibly overlapping) occurrences of the patterns in the buffer, from position
+	 * zero to its limit.
+	 *
+	 * @param buffer the buffer to be searched
+	 * @param reportLimit only matches starting before this buffer position are reported
+	 * @param baseOffset the file offset of the start of the buffer
+	 * @param matches the list the matches are added to
+	 */
+	void find(ByteBuffer buffer, int reportLimit, long baseOffset, List<Match> matches);
+}
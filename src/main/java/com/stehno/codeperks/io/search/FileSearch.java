@@ -0,0 +1,187 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.stehno.codeperks.io.ConcurrentIo;
+import com.stehno.codeperks.io.file.MappedFile;
+
+/**
+ * Finds all occurrences of one or more byte patterns in a file, searching the file over
+ * memory-mapped regions rather than decoding it into lines of text. A single pattern is matched
+ * with Boyer-Moore-Horspool and multiple patterns with an Aho-Corasick automaton.<br/><br/>
+ *
+ * When an ExecutorService is provided, the file is split into ranges which are searched in
+ * parallel. Each range is read a pattern length past its end, so that matches spanning a range
+ * boundary are found, and reports only the matches starting within it.<br/><br/>
+ *
+ * <b>Usage</b><br/>
+ *
+ * <pre>
+ * final List&lt;Match&gt; matches = new FileSearch("ERROR", "FATAL").setExecutor(executor).find(logFile);
+ * </pre>
+ *
+ * Instances may be reused, and shared between threads once configured.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class FileSearch {
+
+	/**
+	 * The default size of the ranges searched in parallel (16 MB).
+	 */
+	public static final int DEFAULT_RANGE_SIZE = 16 * 1024 * 1024;
+
+	private static final int SLICE_SIZE = 1024 * 1024;
+
+	private final ByteMatcher matcher;
+	private final int maxLength;
+	private ExecutorService executor;
+	private int rangeSize = DEFAULT_RANGE_SIZE;
+
+	/**
+	 * Creates a search for the given byte patterns.
+	 *
+	 * @param patterns the (non-empty) patterns
+	 */
+	public FileSearch(final byte[]... patterns){
+		if(patterns.length == 0){
+			throw new IllegalArgumentException("At least one pattern is required");
+		}
+
+		int longest = 0;
+		for(final byte[] pattern : patterns){
+			if(pattern.length == 0){
+				throw new IllegalArgumentException("Patterns must not be empty");
+			}
+			longest = Math.max(longest, pattern.length);
+		}
+
+		this.maxLength = longest;
+		this.matcher = patterns.length == 1 ? new HorspoolMatcher(patterns[0]) : new AhoCorasickMatcher(patterns);
+	}
+
+	/**
+	 * Creates a search for the given string patterns, encoded as UTF-8.
+	 *
+	 * @param patterns the (non-empty) patterns
+	 */
+	public FileSearch(final String... patterns){
+		this(encode(patterns));
+	}
+
+	/**
+	 * Sets the executor used to search ranges of the file in parallel. By default the file is
+	 * searched on the calling thread.
+	 *
+	 * @param executor the executor (null to search on the calling thread)
+	 * @return a reference to the search
+	 */
+	public FileSearch setExecutor(final ExecutorService executor){
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Sets the size of the ranges searched by each parallel task.
+	 *
+	 * @param rangeSize the range size in bytes
+	 * @return a reference to the search
+	 */
+	public FileSearch setRangeSize(final int rangeSize){
+		if(rangeSize < 1){
+			throw new IllegalArgumentException("Range size must be positive: " + rangeSize);
+		}
+		this.rangeSize = rangeSize;
+		return this;
+	}
+
+	/**
+	 * Finds all occurrences of the patterns in the given file.
+	 *
+	 * @param file the file to be searched
+	 * @return the matches, ordered by offset
+	 * @throws IOException if there is a problem mapping the file
+	 */
+	public List<Match> find(final File file) throws IOException {
+		final List<Match> matches = new ArrayList<Match>();
+		if(file.length() == 0){
+			return matches;
+		}
+
+		// the overlap lets every slice, with its pattern-length extension, be a view of the mapping
+		final MappedFile mapped = new MappedFile(file, ByteOrder.BIG_ENDIAN, MappedFile.DEFAULT_WINDOW_SIZE, SLICE_SIZE + maxLength);
+		try {
+			final long size = mapped.size();
+			if(executor == null){
+				search(mapped, 0, size, matches);
+			} else {
+				final List<Future<List<Match>>> futures = new ArrayList<Future<List<Match>>>();
+				for(long start=0; start<size; start+=rangeSize){
+					final long rangeStart = start;
+					final long rangeEnd = Math.min(size, start + rangeSize);
+					futures.add(executor.submit(new Callable<List<Match>>() {
+						@Override
+						public List<Match> call(){
+							final List<Match> found = new ArrayList<Match>();
+							search(mapped, rangeStart, rangeEnd, found);
+							return found;
+						}
+					}));
+				}
+				for(final Future<List<Match>> future : futures){
+					matches.addAll(ConcurrentIo.await(future, "search file"));
+				}
+			}
+		} finally {
+			mapped.close();
+		}
+
+		Collections.sort(matches);
+		return matches;
+	}
+
+	private void search(final MappedFile mapped, final long start, final long end, final List<Match> matches){
+		final long size = mapped.size();
+		for(long position=start; position<end; position+=SLICE_SIZE){
+			final int reportLimit = (int)Math.min(SLICE_SIZE, end - position);
+			final int length = (int)Math.min(SLICE_SIZE + maxLength - 1, size - position);
+			matcher.find(mapped.slice(position, length), reportLimit, position, matches);
+		}
+	}
+
+	private static byte[][] encode(final String[] patterns){
+		final byte[][] encoded = new byte[patterns.length][];
+		try {
+			for(int i=0; i<patterns.length; i++){
+				encoded[i] = patterns[i].getBytes("UTF-8");
+			}
+		} catch(final UnsupportedEncodingException uee){
+			throw new IllegalStateException("UTF-8 encoding is not supported", uee);
+		}
+		return encoded;
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.search;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Boyer-Moore-Horspool matcher for a single pattern. The pattern is compared from its last byte,
+ * and on a mismatch the search skips ahead by the distance from the last occurrence of the byte
+ * under the end of the pattern, so long patterns skip most of the data.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+final class HorspoolMatcher implements ByteMatcher {
+
+	private final byte[] pattern;
+	private final int[] shifts = new int[256];
+
+	HorspoolMatcher(final byte[] pattern){
+		this.pattern = pattern.clone();
+
+		final int last = pattern.length - 1;
+		Arrays.fill(shifts, pattern.length);
+		for(int i=0; i<last; i++){
+			shifts[pattern[i] & 0xff] = last - i;
+		}
+	}
+
+	@Override
+	public void find(final ByteBuffer buffer, final int reportLimit, final long baseOffset, final List<Match> matches){
+		final int last = pattern.length - 1;
+		final int end = Math.min(buffer.limit() - pattern.length, reportLimit - 1);
+
+		int position = 0;
+		while(position <= end){
+			final byte tail = buffer.get(position + last);
+			if(tail == pattern[last]){
+				int i = last - 1;
+				while(i >= 0 && buffer.get(position + i) == pattern[i]){
+					i--;
+				}
+				if(i < 0){
+					matches.add(new Match(baseOffset + position, 0));
+				}
+			}
+			position += shifts[tail & 0xff];
+		}
+	}
+}
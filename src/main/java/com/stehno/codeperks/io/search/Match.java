@@ -0,0 +1,77 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.search;
+
+/**
+ * An occurrence of a search pattern in a file.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public final class Match implements Comparable<Match> {
+
+	private final long offset;
+	private final int pattern;
+
+	Match(final long offset, final int pattern){
+		this.offset = offset;
+		this.pattern = pattern;
+	}
+
+	/**
+	 * Retrieves the file offset at which the pattern starts.
+	 *
+	 * @return the match offset
+	 */
+	public long getOffset(){
+		return offset;
+	}
+
+	/**
+	 * Retrieves the index of the matched pattern, in the order the patterns were given to the FileSearch.
+	 *
+	 * @return the pattern index
+	 */
+	public int getPattern(){
+		return pattern;
+	}
+
+	@Override
+	public int compareTo(final Match other){
+		if(offset != other.offset){
+			return offset < other.offset ? -1 : 1;
+		}
+		return pattern - other.pattern;
+	}
+
+	@Override
+	public boolean equals(final Object obj){
+		if(!(obj instanceof Match)){
+			return false;
+		}
+		final Match other = (Match)obj;
+		return offset == other.offset && pattern == other.pattern;
+	}
+
+	@Override
+	public int hashCode(){
+		return (int)(offset ^ (offset >>> 32)) * 31 + pattern;
+	}
+
+	@Override
+	public String toString(){
+		return "Match{offset=" + offset + ", pattern=" + pattern + "}";
+	}
+}
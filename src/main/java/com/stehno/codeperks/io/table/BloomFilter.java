@@ -0,0 +1,124 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.table;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.stehno.codeperks.io.file.MappedFile;
+
+/**
+ * Bloom filter over byte array keys. The bit positions are derived from a single 64-bit hash of
+ * the key by double hashing, so a key is hashed once however many probes are made. A filter is
+ * built in memory by the table writer and queried in place, from the mapped table file, by the
+ * reader.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+final class BloomFilter {
+
+	private final long[] bits;
+	private final int hashes;
+
+	/**
+	 * Creates a filter sized for the given number of keys.
+	 *
+	 * @param expectedKeys the expected number of keys
+	 * @param bitsPerKey the number of bits allotted to each key
+	 */
+	BloomFilter(final long expectedKeys, final int bitsPerKey){
+		final long bitCount = Math.max(64, Math.max(1, expectedKeys) * bitsPerKey);
+		if(bitCount / 64 > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("Too many keys for the filter: " + expectedKeys);
+		}
+
+		this.bits = new long[(int)((bitCount + 63) / 64)];
+		this.hashes = hashCount(bitsPerKey);
+	}
+
+	/**
+	 * Computes the optimal number of hash probes, bits-per-key * ln(2), for the given density.
+	 */
+	static int hashCount(final int bitsPerKey){
+		return Math.max(1, Math.min(30, (int)Math.round(bitsPerKey * 0.69)));
+	}
+
+	void add(final byte[] key){
+		final long hash = hash(key);
+		final long bitCount = (long)bits.length * 64;
+		final int h1 = (int)hash;
+		final int h2 = (int)(hash >>> 32);
+		for(int i=0; i<hashes; i++){
+			final long bit = ((h1 + (long)i * h2) & Long.MAX_VALUE) % bitCount;
+			bits[(int)(bit >>> 6)] |= 1L << (bit & 63);
+		}
+	}
+
+	int getWordCount(){
+		return bits.length;
+	}
+
+	int getHashCount(){
+		return hashes;
+	}
+
+	void writeTo(final DataOutput out) throws IOException {
+		for(final long word : bits){
+			out.writeLong(word);
+		}
+	}
+
+	/**
+	 * Determines whether the given key may be present in a filter stored in the mapped file.
+	 *
+	 * @param file the mapped file
+	 * @param offset the file offset of the first word of the filter
+	 * @param words the number of 64-bit words in the filter
+	 * @param hashes the number of hash probes
+	 * @param key the key
+	 * @return false if the key is definitely absent
+	 */
+	static boolean mightContain(final MappedFile file, final long offset, final int words, final int hashes, final byte[] key){
+		final long hash = hash(key);
+		final long bitCount = (long)words * 64;
+		final int h1 = (int)hash;
+		final int h2 = (int)(hash >>> 32);
+		for(int i=0; i<hashes; i++){
+			final long bit = ((h1 + (long)i * h2) & Long.MAX_VALUE) % bitCount;
+			if((file.getLong(offset + (bit >>> 6) * 8) & (1L << (bit & 63))) == 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 64-bit FNV-1a hash of the key, with a final avalanche so that both halves are usable probes.
+	 */
+	static long hash(final byte[] key){
+		long hash = 0xcbf29ce484222325L;
+		for(final byte b : key){
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
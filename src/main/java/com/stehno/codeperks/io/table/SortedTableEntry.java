@@ -0,0 +1,59 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.table;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A key/value entry returned by a range scan of a SortedTableReader. The value is a read-only view
+ * of the mapped table file and is not copied unless requested.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public final class SortedTableEntry {
+
+	private final byte[] key;
+	private final ByteBuffer value;
+
+	SortedTableEntry(final byte[] key, final ByteBuffer value){
+		this.key = key;
+		this.value = value;
+	}
+
+	public byte[] getKey(){
+		return key;
+	}
+
+	/**
+	 * Retrieves a read-only view of the value.
+	 *
+	 * @return the value buffer, positioned at zero
+	 */
+	public ByteBuffer getValue(){
+		return value.duplicate();
+	}
+
+	/**
+	 * Retrieves a copy of the value.
+	 *
+	 * @return the value bytes
+	 */
+	public byte[] getValueBytes(){
+		final byte[] bytes = new byte[value.remaining()];
+		value.duplicate().get(bytes);
+		return bytes;
+	}
+}
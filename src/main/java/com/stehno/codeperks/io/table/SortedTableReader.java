@@ -0,0 +1,273 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.table;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.stehno.codeperks.io.file.MappedFile;
+
+/**
+ * Reads a sorted table written by the SortedTableWriter. The file is memory-mapped and nothing
+ * but the footer is loaded onto the heap: the Bloom filter and the sparse block index are
+ * consulted in place, so opening a table is immediate regardless of its size.<br/><br/>
+ *
+ * A point lookup which passes the Bloom filter binary searches the index and then reads a single
+ * data block. Range scans walk the data blocks in order. Instances are thread-safe.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class SortedTableReader {
+
+	private final MappedFile file;
+	private final long indexTableOffset;
+	private final int blockCount;
+	private final long bloomOffset;
+	private final int bloomWords;
+	private final int bloomHashes;
+	private final long entryCount;
+
+	/**
+	 * Opens the given table file.
+	 *
+	 * @param file the table file
+	 * @throws IOException if there is a problem mapping the file or it is not a sorted table
+	 */
+	public SortedTableReader(final File file) throws IOException {
+		this.file = new MappedFile(file);
+
+		final long footer = this.file.size() - SortedTableWriter.FOOTER_LENGTH;
+		if(footer < 0 || this.file.getInt(footer + 40) != SortedTableWriter.MAGIC){
+			this.file.close();
+			throw new IOException("Not a sorted table file: " + file);
+		}
+		if(this.file.getInt(footer + 36) != SortedTableWriter.VERSION){
+			this.file.close();
+			throw new IOException("Unsupported sorted table version (" + this.file.getInt(footer + 36) + "): " + file);
+		}
+
+		this.indexTableOffset = this.file.getLong(footer);
+		this.blockCount = this.file.getInt(footer + 8);
+		this.bloomOffset = this.file.getLong(footer + 12);
+		this.bloomWords = this.file.getInt(footer + 20);
+		this.bloomHashes = this.file.getInt(footer + 24);
+		this.entryCount = this.file.getLong(footer + 28);
+	}
+
+	/**
+	 * Retrieves the number of entries in the table.
+	 *
+	 * @return the entry count
+	 */
+	public long size(){
+		return entryCount;
+	}
+
+	/**
+	 * Retrieves the value stored for the given key.
+	 *
+	 * @param key the key
+	 * @return a copy of the value, or null if the key is not present
+	 */
+	public byte[] get(final byte[] key){
+		final ByteBuffer value = getBuffer(key);
+		if(value == null){
+			return null;
+		}
+
+		final byte[] bytes = new byte[value.remaining()];
+		value.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Retrieves a read-only view of the value stored for the given key, without copying it.
+	 *
+	 * @param key the key
+	 * @return the value buffer, or null if the key is not present
+	 */
+	public ByteBuffer getBuffer(final byte[] key){
+		if(!BloomFilter.mightContain(file, bloomOffset, bloomWords, bloomHashes, key)){
+			return null;
+		}
+
+		final int blockIndex = findBlock(key);
+		if(blockIndex < 0){
+			return null;
+		}
+
+		final ByteBuffer block = block(blockIndex);
+		while(block.hasRemaining()){
+			final int keyLength = block.getInt();
+			final int valueLength = block.getInt();
+			final int cmp = compare(block, block.position(), keyLength, key);
+			if(cmp == 0){
+				return slice(block, block.position() + keyLength, valueLength);
+			} else if(cmp > 0){
+				break;
+			}
+			block.position(block.position() + keyLength + valueLength);
+		}
+		return null;
+	}
+
+	/**
+	 * Iterates over the entries with keys in the given range, in key order.
+	 *
+	 * @param from the lowest key to be returned, inclusive (null for the first key)
+	 * @param to the key at which iteration stops, exclusive (null for no limit)
+	 * @return an iterator over the entries
+	 */
+	public Iterator<SortedTableEntry> scan(final byte[] from, final byte[] to){
+		return new ScanIterator(from == null ? 0 : Math.max(0, findBlock(from)), from, to);
+	}
+
+	/**
+	 * Closes the table file. The mapping itself is released once it is garbage collected.
+	 *
+	 * @throws IOException if there is a problem closing the file
+	 */
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * Finds the last block whose first key is not greater than the given key.
+	 *
+	 * @return the block index, or -1 if the key precedes the first block
+	 */
+	private int findBlock(final byte[] key){
+		int low = 0;
+		int high = blockCount - 1;
+		int found = -1;
+		while(low <= high){
+			final int mid = (low + high) >>> 1;
+			final long entry = file.getLong(indexTableOffset + 8L * mid);
+			if(compare(file, entry + 4, file.getInt(entry), key) <= 0){
+				found = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return found;
+	}
+
+	private ByteBuffer block(final int blockIndex){
+		final long entry = file.getLong(indexTableOffset + 8L * blockIndex);
+		final long keyEnd = entry + 4 + file.getInt(entry);
+		return file.slice(file.getLong(keyEnd), file.getInt(keyEnd + 8));
+	}
+
+	private static ByteBuffer slice(final ByteBuffer buffer, final int position, final int length){
+		final ByteBuffer slice = buffer.duplicate();
+		slice.position(position);
+		slice.limit(position + length);
+		return slice.slice();
+	}
+
+	private static int compare(final ByteBuffer buffer, final int position, final int length, final byte[] key){
+		final int common = Math.min(length, key.length);
+		for(int i=0; i<common; i++){
+			final int diff = (buffer.get(position + i) & 0xff) - (key[i] & 0xff);
+			if(diff != 0){
+				return diff;
+			}
+		}
+		return length - key.length;
+	}
+
+	private static int compare(final MappedFile file, final long position, final int length, final byte[] key){
+		final int common = Math.min(length, key.length);
+		for(int i=0; i<common; i++){
+			final int diff = (file.get(position + i) & 0xff) - (key[i] & 0xff);
+			if(diff != 0){
+				return diff;
+			}
+		}
+		return length - key.length;
+	}
+
+	/**
+	 * Iterator walking the data blocks from a starting block.
+	 */
+	private final class ScanIterator implements Iterator<SortedTableEntry> {
+
+		private final byte[] from;
+		private final byte[] to;
+		private int nextBlock;
+		private ByteBuffer block;
+		private SortedTableEntry next;
+		private boolean done;
+
+		ScanIterator(final int startBlock, final byte[] from, final byte[] to){
+			this.nextBlock = startBlock;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public boolean hasNext(){
+			while(next == null && !done){
+				if(block == null || !block.hasRemaining()){
+					if(nextBlock >= blockCount){
+						done = true;
+						break;
+					}
+					block = block(nextBlock++);
+				}
+
+				final int keyLength = block.getInt();
+				final int valueLength = block.getInt();
+				final int keyStart = block.position();
+				block.position(keyStart + keyLength + valueLength);
+
+				if(from != null && compare(block, keyStart, keyLength, from) < 0){
+					continue;
+				}
+				if(to != null && compare(block, keyStart, keyLength, to) >= 0){
+					done = true;
+					break;
+				}
+
+				final byte[] key = new byte[keyLength];
+				for(int i=0; i<keyLength; i++){
+					key[i] = block.get(keyStart + i);
+				}
+				next = new SortedTableEntry(key, slice(block, keyStart + keyLength, valueLength));
+			}
+			return next != null;
+		}
+
+		@Override
+		public SortedTableEntry next(){
+			if(!hasNext()){
+				throw new NoSuchElementException();
+			}
+			final SortedTableEntry entry = next;
+			next = null;
+			return entry;
+		}
+
+		@Override
+		public void remove(){
+			throw new UnsupportedOperationException("Sorted tables are immutable");
+		}
+	}
+}
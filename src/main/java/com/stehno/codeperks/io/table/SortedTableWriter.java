@@ -0,0 +1,232 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.io.table;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import com.stehno.codeperks.io.SegmentedByteArrayOutputStream;
+
+/**
+ * Writes an immutable sorted table of byte array keys and values, to be read by the
+ * SortedTableReader. The keys must be added in strictly ascending (unsigned lexicographic) order.<br/><br/>
+ *
+ * The table is laid out as a sequence of data blocks of roughly the configured size, followed by
+ * a sparse index holding the first key of each block, a Bloom filter over all of the keys and a
+ * fixed-size footer locating the other sections. All of the numbers are big-endian:
+ *
+ * <pre>
+ * block entry:  int keyLength, int valueLength, key, value
+ * index entry:  int keyLength, first key, long blockOffset, int blockLength
+ * index table:  long indexEntryOffset (one per block)
+ * bloom filter: long word (one per 64 bits)
+ * footer:       long indexTableOffset, int blockCount, long bloomOffset, int bloomWords,
+ *               int bloomHashes, long entryCount, int version, int magic
+ * </pre>
+ *
+ * The writer does not close the stream, so that it may be used within the FileIoTemplate:
+ *
+ * <pre>
+ * FileIoTemplate.outputFile(file, new OutputStreamCallback&lt;BufferedOutputStream&gt;() {
+ *     public void output(BufferedOutputStream out) throws IOException {
+ *         final SortedTableWriter writer = new SortedTableWriter(out, entryCount);
+ *         for(...){
+ *             writer.add(key, value);
+ *         }
+ *         writer.finish();
+ *     }
+ * });
+ * </pre>
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class SortedTableWriter {
+
+	/**
+	 * The default target size of a data block (4 KB).
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+	/**
+	 * The default number of Bloom filter bits per key, giving a false-positive rate of about 1%.
+	 */
+	public static final int DEFAULT_BITS_PER_KEY = 10;
+
+	static final int MAGIC = 0x53535442;
+	static final int VERSION = 1;
+	static final int FOOTER_LENGTH = 44;
+
+	private final DataOutputStream out;
+	private final int blockSize;
+	private final BloomFilter bloom;
+	private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+	private final DataOutputStream blockOut = new DataOutputStream(block);
+	private final SegmentedByteArrayOutputStream index = new SegmentedByteArrayOutputStream();
+	private final DataOutputStream indexOut = new DataOutputStream(index);
+	private long[] indexOffsets = new long[64];
+	private int blockCount;
+	private long position;
+	private long entryCount;
+	private byte[] blockFirstKey;
+	private byte[] lastKey;
+	private boolean finished;
+
+	/**
+	 * Creates a writer with the default block size and Bloom filter density.
+	 *
+	 * @param out the stream the table is written to
+	 * @param expectedEntries the expected number of entries, used to size the Bloom filter
+	 */
+	public SortedTableWriter(final OutputStream out, final long expectedEntries){
+		this(out, expectedEntries, DEFAULT_BLOCK_SIZE, DEFAULT_BITS_PER_KEY);
+	}
+
+	/**
+	 * Creates a writer with the given block size and Bloom filter density.
+	 *
+	 * @param out the stream the table is written to
+	 * @param expectedEntries the expected number of entries, used to size the Bloom filter
+	 * @param blockSize the target size of a data block in bytes
+	 * @param bitsPerKey the number of Bloom filter bits per expected entry
+	 */
+	public SortedTableWriter(final OutputStream out, final long expectedEntries, final int blockSize, final int bitsPerKey){
+		if(blockSize < 1 || bitsPerKey < 1){
+			throw new IllegalArgumentException("Block size and bits per key must be positive");
+		}
+
+		this.out = new DataOutputStream(out);
+		this.blockSize = blockSize;
+		this.bloom = new BloomFilter(expectedEntries, bitsPerKey);
+	}
+
+	/**
+	 * Adds an entry to the table.
+	 *
+	 * @param key the key, which must be greater than the previously added key
+	 * @param value the value
+	 * @throws IOException if there is a problem writing the table
+	 * @throws IllegalArgumentException if the key is out of order
+	 */
+	public void add(final byte[] key, final byte[] value) throws IOException {
+		if(finished){
+			throw new IllegalStateException("The table has already been finished");
+		}
+		if(lastKey != null && compare(lastKey, key) >= 0){
+			throw new IllegalArgumentException("Keys must be added in strictly ascending order");
+		}
+
+		if(block.size() == 0){
+			blockFirstKey = key.clone();
+		}
+		blockOut.writeInt(key.length);
+		blockOut.writeInt(value.length);
+		blockOut.write(key);
+		blockOut.write(value);
+
+		bloom.add(key);
+		lastKey = key.clone();
+		entryCount++;
+
+		if(block.size() >= blockSize){
+			flushBlock();
+		}
+	}
+
+	/**
+	 * Writes the final data block, the index, the Bloom filter and the footer. The stream is
+	 * flushed but not closed.
+	 *
+	 * @throws IOException if there is a problem writing the table
+	 */
+	public void finish() throws IOException {
+		if(finished){
+			return;
+		}
+		flushBlock();
+		finished = true;
+
+		final long indexStart = position;
+		indexOut.flush();
+		index.writeTo(out);
+		position += index.size();
+		index.reset();
+
+		final long indexTableOffset = position;
+		for(int i=0; i<blockCount; i++){
+			out.writeLong(indexStart + indexOffsets[i]);
+		}
+		position += 8L * blockCount;
+
+		final long bloomOffset = position;
+		bloom.writeTo(out);
+
+		out.writeLong(indexTableOffset);
+		out.writeInt(blockCount);
+		out.writeLong(bloomOffset);
+		out.writeInt(bloom.getWordCount());
+		out.writeInt(bloom.getHashCount());
+		out.writeLong(entryCount);
+		out.writeInt(VERSION);
+		out.writeInt(MAGIC);
+		out.flush();
+	}
+
+	/**
+	 * Retrieves the number of entries added to the table.
+	 *
+	 * @return the entry count
+	 */
+	public long getEntryCount(){
+		return entryCount;
+	}
+
+	private void flushBlock() throws IOException {
+		if(block.size() == 0){
+			return;
+		}
+
+		if(blockCount == indexOffsets.length){
+			indexOffsets = Arrays.copyOf(indexOffsets, blockCount * 2);
+		}
+		indexOffsets[blockCount++] = index.size();
+
+		indexOut.writeInt(blockFirstKey.length);
+		indexOut.write(blockFirstKey);
+		indexOut.writeLong(position);
+		indexOut.writeInt(block.size());
+
+		block.writeTo(out);
+		position += block.size();
+		block.reset();
+	}
+
+	/**
+	 * Compares two keys as unsigned byte strings.
+	 */
+	static int compare(final byte[] a, final byte[] b){
+		final int length = Math.min(a.length, b.length);
+		for(int i=0; i<length; i++){
+			final int diff = (a[i] & 0xff) - (b[i] & 0xff);
+			if(diff != 0){
+				return diff;
+			}
+		}
+		return a.length - b.length;
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ *	Copyright 2006 Christopher J. Stehno (chris@stehno.com)
+ *
+ * 	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ * 	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+package com.stehno.codeperks.io.zip;
+
+import java.util.zip.Deflater;
+
+/**
+ * Compression policy which adjusts the deflate level from entry to entry to hold the compression
+ * throughput near a target rate, so that an archive is compressed as well as the machine can
+ * afford at the moment: the level is lowered while the measured throughput falls short of the
+ * target and raised while it exceeds it.<br/><br/>
+ *
+ * The throughput is a moving average of the rate at which the entries are deflated, measured by
+ * the ZipBuilder and reported through the CompressionObserver interface; entries smaller than
+ * 64 KB are not measured, as their rate is dominated by fixed costs. The compression ratio of each
+ * level is tracked as well, and the level is not raised when the next level has not compressed
+ * noticeably better than the current one. In parallel mode the rate is that of a single
+ * compressing thread.<br/><br/>
+ *
+ * Another policy may be given to decide which entries are stored, such as a
+ * ContentAwareCompressionPolicy; the adaptive policy then only chooses the level of the entries
+ * it deflates.<br/><br/>
+ *
+ * <b>Usage</b><br/>
+ *
+ * <pre>
+ * new ZipBuilder(out).setCompressionPolicy(new AdaptiveCompressionPolicy(50, new ContentAwareCompressionPolicy()));
+ * </pre>
+ *
+ * Instances are thread-safe, but should be used by one builder at a time.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class AdaptiveCompressionPolicy implements CompressionPolicy, CompressionObserver {
+
+	/**
+	 * The default relative distance from the target within which the level is left unchanged (25%).
+	 */
+	public static final double DEFAULT_TOLERANCE = 0.25;
+
+	private static final long MIN_MEASURED_SIZE = 64 * 1024;
+	private static final double SMOOTHING = 0.3;
+	private static final double RATIO_GAIN = 0.99;
+
+	private final double target;
+	private final CompressionPolicy delegate;
+	private final double[] ratios = new double[10];
+	private double tolerance = DEFAULT_TOLERANCE;
+	private int minLevel = Deflater.BEST_SPEED;
+	private int maxLevel = Deflater.BEST_COMPRESSION;
+	private int level = 6;
+	private double throughput = Double.NaN;
+
+	/**
+	 * Creates a policy deflating every entry, at the level holding the throughput near the given rate.
+	 *
+	 * @param target the target throughput, in megabytes (of uncompressed data) per second
+	 */
+	public AdaptiveCompressionPolicy(final double target){
+		this(target, null);
+	}
+
+	/**
+	 * Creates a policy storing the entries which the given policy stores, and deflating the rest
+	 * at the level holding the throughput near the given rate.
+	 *
+	 * @param target the target throughput, in megabytes (of uncompressed data) per second
+	 * @param delegate the policy deciding which entries are stored (null to deflate every entry)
+	 */
+	public AdaptiveCompressionPolicy(final double target, final CompressionPolicy delegate){
+		if(target <= 0){
+			throw new IllegalArgumentException("Target throughput must be positive: " + target);
+		}
+		this.target = target;
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Sets the relative distance from the target within which the level is left unchanged.
+	 *
+	 * @param tolerance the tolerance (0.25 leaves the level unchanged between 75% and 125% of the target)
+	 * @return a reference to the policy
+	 */
+	public synchronized AdaptiveCompressionPolicy setTolerance(final double tolerance){
+		this.tolerance = tolerance;
+		return this;
+	}
+
+	/**
+	 * Sets the range of levels the policy may choose from, and starts from the middle of it.
+	 *
+	 * @param minLevel the lowest level (1-9)
+	 * @param maxLevel the highest level (1-9)
+	 * @return a reference to the policy
+	 */
+	public synchronized AdaptiveCompressionPolicy setLevels(final int minLevel, final int maxLevel){
+		if(minLevel < 1 || maxLevel > 9 || minLevel > maxLevel){
+			throw new IllegalArgumentException("Invalid level range: " + minLevel + "-" + maxLevel);
+		}
+		this.minLevel = minLevel;
+		this.maxLevel = maxLevel;
+		this.level = (minLevel + maxLevel) / 2;
+		this.throughput = Double.NaN;
+		return this;
+	}
+
+	/**
+	 * Retrieves the level currently chosen for deflated entries.
+	 *
+	 * @return the current level
+	 */
+	public synchronized int getLevel(){
+		return level;
+	}
+
+	/**
+	 * Retrieves the moving average of the measured throughput at the current level.
+	 *
+	 * @return the throughput in megabytes per second, or NaN if it has not been measured yet
+	 */
+	public synchronized double getThroughput(){
+		return throughput;
+	}
+
+	@Override
+	public synchronized int compressionFor(final String name, final byte[] sample, final int length){
+		if(delegate != null && delegate.compressionFor(name, sample, length) == Deflater.NO_COMPRESSION){
+			return Deflater.NO_COMPRESSION;
+		}
+		return level;
+	}
+
+	@Override
+	public synchronized void entryCompressed(final String name, final int entryLevel, final long size, final long compressedSize, final long nanos){
+		if(size < MIN_MEASURED_SIZE || nanos <= 0 || entryLevel < 1 || entryLevel > 9){
+			return;
+		}
+
+		final double ratio = (double)compressedSize / size;
+		ratios[entryLevel] = ratios[entryLevel] == 0 ? ratio : ratios[entryLevel] + SMOOTHING * (ratio - ratios[entryLevel]);
+
+		// entries deflated at a level since abandoned do not describe the current one
+		if(entryLevel != level){
+			return;
+		}
+
+		final double rate = size * 1000.0 / nanos;
+		throughput = Double.isNaN(throughput) ? rate : throughput + SMOOTHING * (rate - throughput);
+
+		if(throughput < target * (1 - tolerance) && level > minLevel){
+			changeLevel(level - 1);
+		} else if(throughput > target * (1 + tolerance) && level < maxLevel && (ratios[level + 1] == 0 || ratios[level + 1] < ratios[level] * RATIO_GAIN)){
+			changeLevel(level + 1);
+		}
+	}
+
+	private void changeLevel(final int newLevel){
+		level = newLevel;
+		throughput = Double.NaN;
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ *	Copyright 2006 Christopher J. Stehno (chris@stehno.com)
+ *
+ * 	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ * 	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+package com.stehno.codeperks.io.zip;
+
+/**
+ * Receives the measurements of each entry deflated by a ZipBuilder. A CompressionPolicy which also
+ * implements this interface is notified by the builder, on the thread adding the entries, once the
+ * entry has been written.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public interface CompressionObserver {
+
+	/**
+	 * Called when an entry has been deflated.
+	 *
+	 * @param name the entry name
+	 * @param level the deflate level used
+	 * @param size the uncompressed size of the entry
+	 * @param compressedSize the compressed size of the entry
+	 * @param nanos the time spent deflating the entry, in nanoseconds
+	 */
+	void entryCompressed(String name, int level, long size, long compressedSize, long nanos);
+}
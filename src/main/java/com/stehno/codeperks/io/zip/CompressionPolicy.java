@@ -0,0 +1,35 @@
+/*
+ *	Copyright 2006 Christopher J. Stehno (chris@stehno.com)
+ *
+ * 	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ * 	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+package com.stehno.codeperks.io.zip;
+
+/**
+ * Decides, entry by entry, how the ZipBuilder compresses the entries which do not specify their
+ * own method.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public interface CompressionPolicy {
+
+	/**
+	 * Determines the compression of an entry from its name and a sample of its leading data.
+	 *
+	 * @param name the entry name
+	 * @param sample the buffer holding the sample, the first (up to) <code>ZipBuilder.SAMPLE_SIZE</code> bytes of the entry data
+	 * @param length the number of bytes in the sample
+	 * @return the deflate level (1-9 or Deflater.DEFAULT_COMPRESSION), or Deflater.NO_COMPRESSION to store the entry uncompressed
+	 */
+	int compressionFor(String name, byte[] sample, int length);
+}
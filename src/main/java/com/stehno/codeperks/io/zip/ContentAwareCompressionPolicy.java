@@ -0,0 +1,186 @@
+/*
+ *	Copyright 2006 Christopher J. Stehno (chris@stehno.com)
+ *
+ * 	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ * 	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+package com.stehno.codeperks.io.zip;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Compression policy which stores the entries whose data is already compressed and deflates the
+ * rest. Each entry is judged, cheapest first, by:
+ *
+ * <ol>
+ * 	<li>its file extension, against lists of compressed (jpg, png, zip, pdf...) and compressible (txt, xml, html...) formats</li>
+ * 	<li>the MIME type guessed from its name, or from the magic number of its data, by URLConnection; images,
+ * 	audio and video are stored and text is deflated</li>
+ * 	<li>the entropy of the byte values of its sample; data at or above the threshold (7.5 bits per byte by
+ * 	default) is indistinguishable from random and is stored</li>
+ * </ol>
+ *
+ * <b>Usage</b><br/>
+ *
+ * <pre>
+ * new ZipBuilder(out).setCompressionPolicy(new ContentAwareCompressionPolicy(Deflater.BEST_SPEED).addStoredExtensions("dat"));
+ * </pre>
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class ContentAwareCompressionPolicy implements CompressionPolicy {
+
+	/**
+	 * The default entropy, in bits per byte, at or above which sampled data is stored.
+	 */
+	public static final double DEFAULT_ENTROPY_THRESHOLD = 7.5;
+
+	private static final int MIN_ENTROPY_SAMPLE = 256;
+
+	private final int level;
+	private final Set<String> storedExtensions = new HashSet<String>(Arrays.asList(
+		"jpg", "jpeg", "png", "gif", "webp", "heic", "jp2",
+		"mp3", "m4a", "aac", "ogg", "oga", "opus", "flac", "wma",
+		"mp4", "m4v", "mov", "avi", "mkv", "webm", "wmv", "flv", "mpg", "mpeg",
+		"zip", "jar", "war", "ear", "apk", "gz", "tgz", "bz2", "tbz2", "xz", "txz", "lz", "lzma", "zst", "7z", "rar", "cab",
+		"docx", "xlsx", "pptx", "odt", "ods", "odp", "epub", "pdf", "woff", "woff2", "swf", "dmg"
+	));
+	private final Set<String> deflatedExtensions = new HashSet<String>(Arrays.asList(
+		"txt", "log", "csv", "tsv", "xml", "html", "htm", "xhtml", "css", "js", "json", "svg", "md",
+		"java", "groovy", "properties", "sql", "sh", "bat", "yml", "yaml", "ini", "tex", "rtf", "bmp", "tif", "tiff", "wav"
+	));
+	private double entropyThreshold = DEFAULT_ENTROPY_THRESHOLD;
+
+	/**
+	 * Creates a policy deflating compressible entries with the default compression level.
+	 */
+	public ContentAwareCompressionPolicy(){
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Creates a policy deflating compressible entries with the given compression level.
+	 *
+	 * @param level the compression level (1-9 or Deflater.DEFAULT_COMPRESSION)
+	 */
+	public ContentAwareCompressionPolicy(final int level){
+		if((level < 1 || level > 9) && level != Deflater.DEFAULT_COMPRESSION){
+			throw new IllegalArgumentException("invalid compression level");
+		}
+		this.level = level;
+	}
+
+	/**
+	 * Adds extensions (without the dot, case-insensitive) of formats which are always stored.
+	 *
+	 * @param extensions the extensions
+	 * @return a reference to the policy
+	 */
+	public ContentAwareCompressionPolicy addStoredExtensions(final String... extensions){
+		for(final String extension : extensions){
+			final String ext = extension.toLowerCase();
+			deflatedExtensions.remove(ext);
+			storedExtensions.add(ext);
+		}
+		return this;
+	}
+
+	/**
+	 * Adds extensions (without the dot, case-insensitive) of formats which are always deflated.
+	 *
+	 * @param extensions the extensions
+	 * @return a reference to the policy
+	 */
+	public ContentAwareCompressionPolicy addDeflatedExtensions(final String... extensions){
+		for(final String extension : extensions){
+			final String ext = extension.toLowerCase();
+			storedExtensions.remove(ext);
+			deflatedExtensions.add(ext);
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the entropy, in bits per byte (0-8), at or above which sampled data is stored.
+	 *
+	 * @param entropyThreshold the threshold
+	 * @return a reference to the policy
+	 */
+	public ContentAwareCompressionPolicy setEntropyThreshold(final double entropyThreshold){
+		this.entropyThreshold = entropyThreshold;
+		return this;
+	}
+
+	@Override
+	public int compressionFor(final String name, final byte[] sample, final int length){
+		final String extension = extensionOf(name);
+		if(storedExtensions.contains(extension)){
+			return Deflater.NO_COMPRESSION;
+		}
+		if(deflatedExtensions.contains(extension)){
+			return level;
+		}
+
+		String mimeType = URLConnection.guessContentTypeFromName(name);
+		if(mimeType == null && length > 0){
+			mimeType = guessContentType(sample, length);
+		}
+		if(mimeType != null){
+			if(mimeType.startsWith("text/") || mimeType.endsWith("xml")){
+				return level;
+			}
+			if(mimeType.startsWith("image/") || mimeType.startsWith("audio/") || mimeType.startsWith("video/")){
+				return Deflater.NO_COMPRESSION;
+			}
+		}
+
+		return length >= MIN_ENTROPY_SAMPLE && entropy(sample, length) >= entropyThreshold ? Deflater.NO_COMPRESSION : level;
+	}
+
+	/**
+	 * Computes the Shannon entropy of the byte values of the data, in bits per byte.
+	 */
+	static double entropy(final byte[] data, final int length){
+		final int[] counts = new int[256];
+		for(int i=0; i<length; i++){
+			counts[data[i] & 0xff]++;
+		}
+
+		double entropy = 0;
+		for(final int count : counts){
+			if(count != 0){
+				final double p = (double)count / length;
+				entropy -= p * Math.log(p);
+			}
+		}
+		return entropy / Math.log(2);
+	}
+
+	private static String guessContentType(final byte[] sample, final int length){
+		try {
+			return URLConnection.guessContentTypeFromStream(new ByteArrayInputStream(sample, 0, length));
+		} catch(final IOException ioe){
+			return null;
+		}
+	}
+
+	private static String extensionOf(final String name){
+		final int dot = name.lastIndexOf('.');
+		return dot > name.lastIndexOf('/') ? name.substring(dot + 1).toLowerCase() : "";
+	}
+}
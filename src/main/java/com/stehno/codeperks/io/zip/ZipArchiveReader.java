@@ -0,0 +1,506 @@
+/*
+ *	Copyright 2006 Christopher J. Stehno (chris@stehno.com)
+ *
+ * 	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ * 	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+package com.stehno.codeperks.io.zip;
+
+import static com.stehno.codeperks.io.zip.ZipWriter.CENTRAL_HEADER_SIGNATURE;
+import static com.stehno.codeperks.io.zip.ZipWriter.END_SIGNATURE;
+import static com.stehno.codeperks.io.zip.ZipWriter.LIMIT_32;
+import static com.stehno.codeperks.io.zip.ZipWriter.LOCAL_HEADER_SIGNATURE;
+import static com.stehno.codeperks.io.zip.ZipWriter.ZIP64_END_SIGNATURE;
+import static com.stehno.codeperks.io.zip.ZipWriter.ZIP64_EXTRA_ID;
+import static com.stehno.codeperks.io.zip.ZipWriter.ZIP64_LOCATOR_SIGNATURE;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import com.stehno.codeperks.io.InflaterPool;
+import com.stehno.codeperks.io.file.MappedFile;
+
+/**
+ * Random-access reader of zip files, such as those written by the ZipBuilder. The archive is
+ * memory-mapped and its central directory is parsed once, when the reader is opened, into a
+ * compact open-addressing hash index of the entry names; the index holds only the hash and the
+ * central directory offset of each entry, and the names themselves are compared in the mapping.
+ * An entry is then found with a single probe sequence and served directly from the mapping,
+ * without scanning the archive.<br/><br/>
+ *
+ * Zip64 archives are supported. Instances are thread-safe, and are intended to be opened once and
+ * shared by any number of concurrent readers.<br/><br/>
+ *
+ * <b>Usage</b><br/>
+ *
+ * <pre>
+ * final ZipArchiveReader reader = new ZipArchiveReader(new File("bundle.zip"));
+ * final InputStream in = reader.getInputStream("config/app.properties");
+ * </pre>
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class ZipArchiveReader {
+
+	private static final int END_LENGTH = 22;
+	private static final int CENTRAL_HEADER_LENGTH = 46;
+	private static final int LOCAL_HEADER_LENGTH = 30;
+	private static final int ZIP64_LOCATOR_LENGTH = 20;
+
+	private final MappedFile file;
+	private final long[] offsets;
+	private final int[] hashes;
+	private final int[] slots;
+
+	/**
+	 * Opens the given zip file and indexes its central directory.
+	 *
+	 * @param file the zip file
+	 * @throws IOException if there is a problem mapping the file or it is not a valid zip file
+	 */
+	public ZipArchiveReader(final File file) throws IOException {
+		this.file = new MappedFile(file, ByteOrder.LITTLE_ENDIAN);
+		try {
+			final long end = findEnd();
+			long count = this.file.getShort(end + 10) & 0xffff;
+			long offset = this.file.getInt(end + 16) & LIMIT_32;
+
+			final long locator = end - ZIP64_LOCATOR_LENGTH;
+			if(locator >= 0 && this.file.getInt(locator) == ZIP64_LOCATOR_SIGNATURE){
+				final long zip64End = this.file.getLong(locator + 8);
+				if(zip64End < 0 || zip64End + 56 > this.file.size() || this.file.getInt(zip64End) != ZIP64_END_SIGNATURE){
+					throw new ZipException("Invalid zip64 end record: " + file);
+				}
+				count = this.file.getLong(zip64End + 32);
+				offset = this.file.getLong(zip64End + 48);
+			}
+			if(count > Integer.MAX_VALUE / 2){
+				throw new ZipException("Too many entries: " + count);
+			}
+
+			this.offsets = new long[(int)count];
+			this.hashes = new int[(int)count];
+			this.slots = new int[Math.max(2, Integer.highestOneBit((int)count) << 2)];
+			index(offset);
+
+		} catch(final IOException ioe){
+			this.file.close();
+			throw ioe;
+		} catch(final RuntimeException re){
+			this.file.close();
+			throw new ZipException("Invalid zip file: " + file + ": " + re);
+		}
+	}
+
+	/**
+	 * Retrieves the number of entries in the archive.
+	 *
+	 * @return the entry count
+	 */
+	public int size(){
+		return offsets.length;
+	}
+
+	/**
+	 * Retrieves the names of the entries, in the order of the central directory.
+	 *
+	 * @return the entry names
+	 */
+	public List<String> getNames(){
+		final List<String> names = new ArrayList<String>(offsets.length);
+		for(final long offset : offsets){
+			names.add(string(offset + CENTRAL_HEADER_LENGTH, file.getShort(offset + 28) & 0xffff));
+		}
+		return Collections.unmodifiableList(names);
+	}
+
+	/**
+	 * Determines whether or not the archive contains an entry with the given name.
+	 *
+	 * @param name the entry name
+	 * @return true if the entry exists
+	 */
+	public boolean contains(final String name){
+		return find(name) != -1;
+	}
+
+	/**
+	 * Retrieves the entry with the given name.
+	 *
+	 * @param name the entry name
+	 * @return a new ZipEntry describing the entry, or null if it does not exist
+	 */
+	public ZipEntry getEntry(final String name){
+		final long offset = find(name);
+		if(offset == -1){
+			return null;
+		}
+
+		final Record record = new Record(offset);
+		final ZipEntry entry = new ZipEntry(name);
+		entry.setMethod(record.method);
+		entry.setTime(javaTime(file.getInt(offset + 12)));
+		entry.setCrc(record.crc);
+		entry.setSize(record.size);
+		entry.setCompressedSize(record.compressedSize);
+
+		final int nameLength = file.getShort(offset + 28) & 0xffff;
+		final int extraLength = file.getShort(offset + 30) & 0xffff;
+		final int commentLength = file.getShort(offset + 32) & 0xffff;
+		if(commentLength != 0){
+			entry.setComment(string(offset + CENTRAL_HEADER_LENGTH + nameLength + extraLength, commentLength));
+		}
+		return entry;
+	}
+
+	/**
+	 * Opens a stream of the uncompressed data of the entry with the given name, reading directly
+	 * from the mapping.
+	 *
+	 * @param name the entry name
+	 * @return a stream of the entry data, or null if the entry does not exist
+	 * @throws ZipException if the entry is invalid or uses an unsupported compression method
+	 */
+	public InputStream getInputStream(final String name) throws ZipException {
+		final long offset = find(name);
+		if(offset == -1){
+			return null;
+		}
+
+		final Record record = new Record(offset).readable(name);
+		final InputStream raw = file.openStream(record.dataOffset(), record.compressedSize);
+		if(record.method == ZipEntry.STORED){
+			return raw;
+		}
+
+		// the nowrap inflater may need a dummy byte past the end of the data
+		return new EntryInputStream(new SequenceInputStream(raw, new ByteArrayInputStream(new byte[1])), record.size);
+	}
+
+	/**
+	 * Opens a stream of the raw (still compressed, for deflated entries) data of the entry with
+	 * the given name, so that it may be copied into another archive as is.
+	 */
+	InputStream getRawInputStream(final String name) throws ZipException {
+		final long offset = find(name);
+		if(offset == -1){
+			return null;
+		}
+
+		final Record record = new Record(offset).readable(name);
+		return file.openStream(record.dataOffset(), record.compressedSize);
+	}
+
+	/**
+	 * Retrieves the uncompressed data of the entry with the given name. The data of a stored entry
+	 * is a read-only view of the mapping; that of a deflated entry is inflated onto the heap.
+	 *
+	 * @param name the entry name
+	 * @return a buffer of the entry data, or null if the entry does not exist
+	 * @throws ZipException if the entry is invalid, too large for a buffer, or uses an unsupported compression method
+	 */
+	public ByteBuffer getBuffer(final String name) throws ZipException {
+		final long offset = find(name);
+		if(offset == -1){
+			return null;
+		}
+
+		final Record record = new Record(offset).readable(name);
+		if(record.size > Integer.MAX_VALUE){
+			throw new ZipException("Entry is too large for a buffer: " + name);
+		}
+		if(record.method == ZipEntry.STORED){
+			return file.slice(record.dataOffset(), (int)record.size);
+		}
+
+		final byte[] data = new byte[(int)record.size];
+		final byte[] input = new byte[(int)Math.min(64 * 1024, record.compressedSize + 1)];
+		final Inflater inflater = InflaterPool.shared().acquire(true);
+		try {
+			long position = record.dataOffset();
+			long remaining = record.compressedSize;
+			boolean dummy = false;
+			int length = 0;
+			while(length < data.length){
+				if(inflater.needsInput()){
+					if(remaining == 0){
+						if(dummy){
+							break;
+						}
+						// the nowrap inflater may need a dummy byte past the end of the data
+						input[0] = 0;
+						inflater.setInput(input, 0, 1);
+						dummy = true;
+					} else {
+						final int count = (int)Math.min(input.length, remaining);
+						file.get(position, input, 0, count);
+						inflater.setInput(input, 0, count);
+						position += count;
+						remaining -= count;
+					}
+				}
+				final int inflated = inflater.inflate(data, length, data.length - length);
+				if(inflated == 0 && (inflater.finished() || inflater.needsDictionary())){
+					break;
+				}
+				length += inflated;
+			}
+			if(length != data.length){
+				throw new ZipException("Invalid compressed data for entry: " + name);
+			}
+		} catch(final DataFormatException dfe){
+			throw new ZipException("Invalid compressed data for entry: " + name + ": " + dfe.getMessage());
+		} finally {
+			InflaterPool.shared().release(true, inflater);
+		}
+		return ByteBuffer.wrap(data).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Closes the underlying file. Buffers already retrieved remain valid.
+	 *
+	 * @throws IOException if there is a problem closing the file
+	 */
+	public void close() throws IOException {
+		file.close();
+	}
+
+	private long findEnd() throws ZipException {
+		final long last = file.size() - END_LENGTH;
+		final long first = Math.max(0, last - 0xffff);
+		for(long position=last; position>=first; position--){
+			if(file.getInt(position) == END_SIGNATURE && position + END_LENGTH + (file.getShort(position + 20) & 0xffff) <= file.size()){
+				return position;
+			}
+		}
+		throw new ZipException("No end of central directory record found");
+	}
+
+	/**
+	 * Walks the central directory, recording the offset and name hash of each entry and inserting it into the table.
+	 */
+	private void index(final long start) throws ZipException {
+		final int mask = slots.length - 1;
+		long position = start;
+		for(int i=0; i<offsets.length; i++){
+			if(file.getInt(position) != CENTRAL_HEADER_SIGNATURE){
+				throw new ZipException("Invalid central directory header at " + position);
+			}
+
+			final int nameLength = file.getShort(position + 28) & 0xffff;
+			int hash = 0x811c9dc5;
+			for(long p=position + CENTRAL_HEADER_LENGTH, end=p + nameLength; p<end; p++){
+				hash = (hash ^ (file.get(p) & 0xff)) * 0x01000193;
+			}
+
+			offsets[i] = position;
+			hashes[i] = hash;
+
+			int slot = hash & mask;
+			while(slots[slot] != 0){
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = i + 1;
+
+			position += CENTRAL_HEADER_LENGTH + nameLength + (file.getShort(position + 30) & 0xffff) + (file.getShort(position + 32) & 0xffff);
+		}
+	}
+
+	/**
+	 * Finds the central directory offset of the named entry, or -1 if there is no such entry.
+	 */
+	private long find(final String name){
+		final byte[] key = ZipWriter.utf8(name);
+		int hash = 0x811c9dc5;
+		for(final byte b : key){
+			hash = (hash ^ (b & 0xff)) * 0x01000193;
+		}
+
+		final int mask = slots.length - 1;
+		for(int slot=hash & mask; slots[slot] != 0; slot=(slot + 1) & mask){
+			final int index = slots[slot] - 1;
+			if(hashes[index] == hash && nameEquals(offsets[index], key)){
+				return offsets[index];
+			}
+		}
+		return -1;
+	}
+
+	private boolean nameEquals(final long offset, final byte[] key){
+		if((file.getShort(offset + 28) & 0xffff) != key.length){
+			return false;
+		}
+		final long start = offset + CENTRAL_HEADER_LENGTH;
+		for(int i=0; i<key.length; i++){
+			if(file.get(start + i) != key[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private String string(final long position, final int length){
+		final byte[] bytes = new byte[length];
+		file.get(position, bytes, 0, length);
+		try {
+			return new String(bytes, "UTF-8");
+		} catch(final UnsupportedEncodingException uee){
+			throw new IllegalStateException("UTF-8 encoding is not supported", uee);
+		}
+	}
+
+	/**
+	 * Converts an MS-DOS date (high word) and time (low word) to a Java time.
+	 */
+	static long javaTime(final int dosTime){
+		final Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(
+			((dosTime >>> 25) & 0x7f) + 1980,
+			((dosTime >>> 21) & 0x0f) - 1,
+			(dosTime >>> 16) & 0x1f,
+			(dosTime >>> 11) & 0x1f,
+			(dosTime >>> 5) & 0x3f,
+			(dosTime << 1) & 0x3e
+		);
+		return calendar.getTimeInMillis();
+	}
+
+	/**
+	 * The location and sizes of an entry, read from its central directory header (and Zip64 extra field).
+	 */
+	private final class Record {
+
+		final int method;
+		final long crc;
+		final long compressedSize;
+		final long size;
+		final long localOffset;
+
+		Record(final long offset){
+			this.method = file.getShort(offset + 10) & 0xffff;
+			this.crc = file.getInt(offset + 16) & LIMIT_32;
+
+			long compressed = file.getInt(offset + 20) & LIMIT_32;
+			long uncompressed = file.getInt(offset + 24) & LIMIT_32;
+			long local = file.getInt(offset + 42) & LIMIT_32;
+
+			if(compressed == LIMIT_32 || uncompressed == LIMIT_32 || local == LIMIT_32){
+				final int nameLength = file.getShort(offset + 28) & 0xffff;
+				final int extraLength = file.getShort(offset + 30) & 0xffff;
+				long position = offset + CENTRAL_HEADER_LENGTH + nameLength;
+				final long end = position + extraLength;
+				while(position + 4 <= end){
+					final int id = file.getShort(position) & 0xffff;
+					final int length = file.getShort(position + 2) & 0xffff;
+					if(id == ZIP64_EXTRA_ID){
+						long value = position + 4;
+						if(uncompressed == LIMIT_32){
+							uncompressed = file.getLong(value);
+							value += 8;
+						}
+						if(compressed == LIMIT_32){
+							compressed = file.getLong(value);
+							value += 8;
+						}
+						if(local == LIMIT_32){
+							local = file.getLong(value);
+						}
+						break;
+					}
+					position += 4 + length;
+				}
+			}
+
+			this.compressedSize = compressed;
+			this.size = uncompressed;
+			this.localOffset = local;
+		}
+
+		Record readable(final String name) throws ZipException {
+			if(method != ZipEntry.STORED && method != ZipEntry.DEFLATED){
+				throw new ZipException("Unsupported compression method " + method + " for entry: " + name);
+			}
+			return this;
+		}
+
+		long dataOffset() throws ZipException {
+			if(file.getInt(localOffset) != LOCAL_HEADER_SIGNATURE){
+				throw new ZipException("Invalid local header at " + localOffset);
+			}
+			final long start = localOffset + LOCAL_HEADER_LENGTH + (file.getShort(localOffset + 26) & 0xffff) + (file.getShort(localOffset + 28) & 0xffff);
+			if(start + compressedSize > file.size()){
+				throw new ZipException("Entry data extends past the end of the file at " + localOffset);
+			}
+			return start;
+		}
+	}
+
+	/**
+	 * Inflating stream over the data of a deflated entry, releasing its inflater when closed.
+	 */
+	private static final class EntryInputStream extends InflaterInputStream {
+
+		private long remaining;
+		private boolean closed;
+
+		EntryInputStream(final InputStream raw, final long size){
+			super(raw, InflaterPool.shared().acquire(true), 8 * 1024);
+			this.remaining = size;
+		}
+
+		@Override
+		public int read(final byte[] bytes, final int off, final int len) throws IOException {
+			if(remaining <= 0){
+				return -1;
+			}
+			final int count = super.read(bytes, off, (int)Math.min(len, remaining));
+			if(count > 0){
+				remaining -= count;
+			}
+			return count;
+		}
+
+		@Override
+		public int available(){
+			return (int)Math.min(Integer.MAX_VALUE, remaining);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(closed){
+				return;
+			}
+			closed = true;
+			try {
+				super.close();
+			} finally {
+				InflaterPool.shared().release(true, inf);
+			}
+		}
+	}
+}
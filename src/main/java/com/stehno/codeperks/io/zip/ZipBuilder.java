@@ -15,14 +15,37 @@
  */
 package com.stehno.codeperks.io.zip;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.IOUtils;
 
+import com.stehno.codeperks.io.ConcurrentIo;
+import com.stehno.codeperks.io.DeflaterPool;
+import com.stehno.codeperks.io.file.ReadAheadFileSequence;
+import com.stehno.codeperks.io.file.SpillingOutputStream;
+
 /**
  * Uses the builder pattern to build zip files.<br/><br/>
  *
@@ -34,11 +57,62 @@ import org.apache.commons.io.IOUtils;
  * 		.setCompressionLevel(
  * </pre>
  *
+ * Entries are deflated unless <code>useNoCompression()</code> is called or the ZipEntry specifies
+ * its own method. The CRC and size of stored entries are computed by the builder, and stored
+ * entries added from files are copied with <code>FileChannel.transferTo()</code> when the builder
+ * writes directly to a FileOutputStream. A CompressionPolicy may instead choose the method and level
+ * of each entry from its name and a sample of its data.<br/><br/>
+ *
+ * When rebuilding an archive which has changed little since it was last built, the previous
+ * archive may be given to <code>reuseEntriesFrom()</code>: entries whose name, size and CRC are
+ * unchanged are then copied from it in their compressed form, and only the new or modified
+ * entries are compressed.<br/><br/>
+ *
+ * Whole directory trees may be added with <code>addDirectory()</code>, which reads the upcoming
+ * files on background threads while the current one is being compressed.<br/><br/>
+ *
+ * In parallel mode (see <code>useParallelCompression()</code>) the entries are compressed
+ * concurrently on an ExecutorService, each into its own buffer (spilled to a temporary file when
+ * large), and written to the zip file in the order they were added. The input streams given to
+ * <code>addEntry()</code> are then read and closed later, on the executor threads, rather than
+ * before the method returns.
+ *
  * @author Christopher J. Stehno (chris@stehno.com)
  */
 public class ZipBuilder {
 
-	private ZipOutputStream zos;
+	/**
+	 * The default size above which an entry compressed in parallel is spilled to a temporary file (1 MB).
+	 */
+	public static final int DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+
+	/**
+	 * The length of the leading sample of entry data given to the CompressionPolicy (4 KB).
+	 */
+	public static final int SAMPLE_SIZE = 4 * 1024;
+
+	/**
+	 * The default size of the buffer holding the archive before it is written to the stream (64 KB).
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The default number of files read ahead by <code>addDirectory()</code>.
+	 */
+	public static final int DEFAULT_READ_AHEAD_DEPTH = 4;
+
+	private final OutputStream os;
+	private final ZipWriter writer;
+	private final LinkedList<PendingEntry> pending = new LinkedList<PendingEntry>();
+	private int method = ZipEntry.DEFLATED;
+	private int level = Deflater.DEFAULT_COMPRESSION;
+	private ExecutorService executor;
+	private int maxPending;
+	private int spillThreshold = DEFAULT_SPILL_THRESHOLD;
+	private CompressionPolicy compressionPolicy;
+	private ZipArchiveReader previous;
+	private int reusedEntryCount;
+	private int readAheadDepth = DEFAULT_READ_AHEAD_DEPTH;
 
 	/**
 	 * Creates a zip builder with the given output stream. The stream will be closed when the <code>zip()</code>
@@ -47,17 +121,44 @@ public class ZipBuilder {
 	 * @param os the output stream the zip file is to be written into
 	 */
 	public ZipBuilder(final OutputStream os){
+		this(os, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a zip builder with the given output stream, buffering at most the given number of bytes
+	 * before writing them to the stream. A small buffer passes the archive on to the stream sooner,
+	 * as a response stream needs to, at the cost of more writes.
+	 *
+	 * @param os the output stream the zip file is to be written into
+	 * @param bufferSize the size of the write buffer in bytes
+	 */
+	public ZipBuilder(final OutputStream os, final int bufferSize){
 		super();
-		this.zos = new ZipOutputStream(os);
+		if(bufferSize < 1){
+			throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+		}
+		this.os = os;
+		this.writer = new ZipWriter(os, bufferSize);
 	}
 
 	/**
-	 * Used to specify the the zip file should be compressed. By default no compression is performed.
+	 * Used to specify the the zip file should be compressed, which is the default.
 	 *
 	 * @return a reference to the zip builder
 	 */
 	public ZipBuilder useCompression(){
-		zos.setMethod(ZipOutputStream.DEFLATED);
+		this.method = ZipEntry.DEFLATED;
+		return(this);
+	}
+
+	/**
+	 * Used to specify that the zip file entries should be stored without compression, such as when
+	 * the data is already compressed media.
+	 *
+	 * @return a reference to the zip builder
+	 */
+	public ZipBuilder useNoCompression(){
+		this.method = ZipEntry.STORED;
 		return(this);
 	}
 
@@ -68,7 +169,104 @@ public class ZipBuilder {
 	 * @return a reference to the builder
 	 */
 	public ZipBuilder setCompressionLevel(final int compression){
-		zos.setLevel(compression);
+		if((compression < 0 || compression > 9) && compression != Deflater.DEFAULT_COMPRESSION){
+			throw new IllegalArgumentException("invalid compression level");
+		}
+		this.level = compression;
+		return(this);
+	}
+
+	/**
+	 * Used to specify a policy choosing the compression of each entry which does not specify its
+	 * own method, in place of the method and level configured on the builder.
+	 *
+	 * @param compressionPolicy the compression policy (null for none)
+	 * @return a reference to the builder
+	 */
+	public ZipBuilder setCompressionPolicy(final CompressionPolicy compressionPolicy){
+		this.compressionPolicy = compressionPolicy;
+		return(this);
+	}
+
+	/**
+	 * Used to specify a previous build of the archive, from which the entries whose name, size and
+	 * CRC are unchanged are copied without being compressed again. Entries which specify their own
+	 * method (or are given one by the compression policy) are only reused when it matches. The data
+	 * of the other entries added with the same name as a previous entry is buffered, spilling to a
+	 * temporary file when large, while its CRC is computed. The reader is not closed by the builder.
+	 *
+	 * @param previous the reader of the previous archive (null for none)
+	 * @return a reference to the builder
+	 */
+	public ZipBuilder reuseEntriesFrom(final ZipArchiveReader previous){
+		this.previous = previous;
+		return(this);
+	}
+
+	/**
+	 * Retrieves the number of entries written so far which were copied from the previous archive.
+	 *
+	 * @return the number of reused entries
+	 */
+	public int getReusedEntryCount(){
+		return reusedEntryCount;
+	}
+
+	/**
+	 * Used to compress the entries in parallel on the given executor. The compressed entries are
+	 * written in the order they were added, and at most twice as many entries as there are
+	 * processors are held compressed awaiting their turn.<br/><br/>
+	 *
+	 * In this mode the entry data is read on the executor threads, so byte arrays passed to
+	 * <code>addEntry()</code> must not be modified afterwards, and input streams are read and
+	 * closed by a worker thread after the method returns. If the zip file cannot be written, the
+	 * streams of the entries not yet compressed are closed without being read.
+	 *
+	 * @param executor the executor used to compress the entries
+	 * @return a reference to the builder
+	 */
+	public ZipBuilder useParallelCompression(final ExecutorService executor){
+		return(useParallelCompression(executor, 2 * Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Used to compress the entries in parallel on the given executor, holding at most the given
+	 * number of entries compressed or in progress at a time.
+	 *
+	 * @param executor the executor used to compress the entries
+	 * @param maxPending the maximum number of entries in progress
+	 * @return a reference to the builder
+	 */
+	public ZipBuilder useParallelCompression(final ExecutorService executor, final int maxPending){
+		this.executor = executor;
+		this.maxPending = Math.max(1, maxPending);
+		return(this);
+	}
+
+	/**
+	 * Used to specify the size above which an entry compressed in parallel is spilled from memory
+	 * to a temporary file while it awaits its turn to be written.
+	 *
+	 * @param spillThreshold the threshold in bytes
+	 * @return a reference to the builder
+	 */
+	public ZipBuilder setSpillThreshold(final int spillThreshold){
+		this.spillThreshold = spillThreshold;
+		return(this);
+	}
+
+	/**
+	 * Used to specify the number of files which <code>addDirectory()</code> opens and begins reading
+	 * ahead of the one being compressed.
+	 *
+	 * @param readAheadDepth the read-ahead depth (at least one)
+	 * @return a reference to the builder
+	 */
+	public ZipBuilder setReadAheadDepth(final int readAheadDepth){
+		if(readAheadDepth < 1){
+			throw new IllegalArgumentException("Read-ahead depth must be at least one: " + readAheadDepth);
+		}
+		this.readAheadDepth = readAheadDepth;
 		return(this);
 	}
 
@@ -80,7 +278,7 @@ public class ZipBuilder {
 	 * @return a reference to the builder
 	 */
 	public ZipBuilder setComment(final String comment){
-		zos.setComment(comment);
+		writer.setComment(comment);
 		return(this);
 	}
 
@@ -93,9 +291,37 @@ public class ZipBuilder {
 	 * @throws IOException if there is a problem writing the entry data
 	 */
 	public ZipBuilder addEntry(final ZipEntry entry, final byte[] bytes) throws IOException {
-		zos.putNextEntry(entry);
-		zos.write(bytes);
-		zos.closeEntry();
+		final int entryLevel = usesPolicy(entry) ? applyPolicy(entry, bytes, Math.min(bytes.length, SAMPLE_SIZE)) : level;
+
+		if(executor != null){
+			return(submit(entry, entryLevel, new ByteArrayInputStream(bytes)));
+		}
+
+		final ZipEntry old = previous != null ? previous.getEntry(entry.getName()) : null;
+		if(old != null && old.getSize() == bytes.length){
+			final CRC32 crc = new CRC32();
+			crc.update(bytes);
+			if(reusable(entry, old, crc.getValue(), bytes.length)){
+				write(new CompressedEntry(entry, old));
+				return(this);
+			}
+		}
+
+		if(methodFor(entry) == ZipEntry.STORED && !hasCrcAndSize(entry)){
+			final CRC32 crc = new CRC32();
+			crc.update(bytes);
+			writer.writeEntry(entry, ZipEntry.STORED, crc.getValue(), bytes.length, bytes.length, new ByteArrayInputStream(bytes));
+			return(this);
+		}
+
+		final ZipWriter.EntryOutputStream out = writer.beginEntry(entry, methodFor(entry), entryLevel);
+		try {
+			out.write(bytes);
+			out.close();
+		} finally {
+			out.abort();
+		}
+		observe(entry, entryLevel, out.size(), out.compressedSize(), out.nanos());
 		return(this);
 	}
 
@@ -109,16 +335,237 @@ public class ZipBuilder {
 	 * @throws IOException if there is a problem writing the entry data
 	 */
 	public ZipBuilder addEntry(final ZipEntry entry, final InputStream in) throws IOException {
-		zos.putNextEntry(entry);
+		InputStream source = in;
+		int entryLevel = level;
+		if(usesPolicy(entry)){
+			final PushbackInputStream pushback = new PushbackInputStream(in, SAMPLE_SIZE);
+			source = pushback;
+			try {
+				final byte[] sample = new byte[SAMPLE_SIZE];
+				final int length = readSample(pushback, sample);
+				pushback.unread(sample, 0, length);
+				entryLevel = applyPolicy(entry, sample, length);
+			} catch(final IOException ioe){
+				IOUtils.closeQuietly(in);
+				throw ioe;
+			}
+		}
 
-		try {IOUtils.copy(in,zos);}
-		catch(final IOException ioe){throw ioe;}
-		finally {IOUtils.closeQuietly(in);}
+		return(add(entry, entryLevel, source));
+	}
+
+	private ZipBuilder add(final ZipEntry entry, final int entryLevel, final InputStream source) throws IOException {
+		if(executor != null){
+			return(submit(entry, entryLevel, source));
+		}
+
+		if((methodFor(entry) == ZipEntry.STORED && !hasCrcAndSize(entry)) || (previous != null && previous.contains(entry.getName()))){
+			// the data is buffered (spilling to a temporary file) while its CRC is computed
+			write(compress(previous, entry, methodFor(entry), entryLevel, spillThreshold, source));
+			return(this);
+		}
+
+		final ZipWriter.EntryOutputStream out;
+		try {
+			out = writer.beginEntry(entry, methodFor(entry), entryLevel);
+		} catch(final IOException ioe){
+			IOUtils.closeQuietly(source);
+			throw ioe;
+		}
+
+		try {
+			IOUtils.copy(source,out);
+			out.close();
+		} finally {
+			IOUtils.closeQuietly(source);
+			out.abort();
+		}
+		observe(entry, entryLevel, out.size(), out.compressedSize(), out.nanos());
+		return(this);
+	}
+
+	/**
+	 * Used to add an entry to the zip file from the contents of a file. The data of a stored entry
+	 * is read once to compute its CRC and is then transferred directly from the file. The entry
+	 * time is taken from the modification time of the file, unless the entry has its own.
+	 *
+	 * @param entry the zip entry
+	 * @param file the file containing the data for the entry
+	 * @return a reference to the builder
+	 * @throws IOException if there is a problem reading the file or writing the entry data
+	 */
+	public ZipBuilder addEntry(final ZipEntry entry, final File file) throws IOException {
+		if(entry.getTime() == -1){
+			entry.setTime(file.lastModified());
+		}
+
+		int entryLevel = level;
+		if(usesPolicy(entry)){
+			final byte[] sample = new byte[SAMPLE_SIZE];
+			final InputStream in = new FileInputStream(file);
+			try {
+				entryLevel = applyPolicy(entry, sample, readSample(in, sample));
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+		}
+
+		final ZipArchiveReader reused = previous != null && previous.contains(entry.getName()) ? previous : null;
+		if(methodFor(entry) != ZipEntry.STORED && reused == null){
+			return(add(entry, entryLevel, new FileInputStream(file)));
+		}
+
+		// the file is read once for its CRC, then either reused, transferred as is or compressed
+		final int entryMethod = methodFor(entry);
+		final int fileLevel = entryLevel;
+		final int threshold = spillThreshold;
+		final Callable<CompressedEntry> task = new Callable<CompressedEntry>() {
+			@Override
+			public CompressedEntry call() throws IOException {
+				final CompressedEntry checksummed = checksum(entry, file);
+				final ZipEntry old = reused != null ? reused.getEntry(entry.getName()) : null;
+				if(old != null && reusable(entry, old, checksummed.crc, checksummed.size)){
+					return new CompressedEntry(entry, old);
+				}
+				return entryMethod == ZipEntry.STORED ? checksummed : compress(entry, entryMethod, fileLevel, threshold, new FileInputStream(file));
+			}
+		};
+
+		if(executor != null){
+			return(enqueue(task, null));
+		}
+
+		try {
+			write(task.call());
+		} catch(final IOException ioe){
+			throw ioe;
+		} catch(final Exception e){
+			throw new IOException("Unable to add entry: " + e);
+		}
+		return(this);
+	}
+
+	/**
+	 * Used to add an entry to the zip file from the contents of a file.
+	 *
+	 * @param name the entry name
+	 * @param file the file containing the entry data
+	 * @return a reference to the builder
+	 * @throws IOException if there is a problem reading the file or writing the entry data
+	 */
+	public ZipBuilder addEntry(final String name, final File file) throws IOException {
+		return(addEntry(new ZipEntry(name), file));
+	}
 
-		zos.closeEntry();
+	/**
+	 * Used to add the files of a directory tree, named by their paths relative to the directory.
+	 *
+	 * @param directory the root of the tree
+	 * @return a reference to the builder
+	 * @throws IOException if there is a problem reading a file or writing the entry data
+	 */
+	public ZipBuilder addDirectory(final File directory) throws IOException {
+		return(addDirectory(directory, null, null, null));
+	}
+
+	/**
+	 * Used to add the files of a directory tree, named by the prefix followed by their paths relative
+	 * to the directory, in name order. Empty directories are added as directory entries, and entry
+	 * times are taken from the modification times of the files. Symbolic links to directories are
+	 * followed, but a directory already reached by another path is skipped, so links back to an
+	 * ancestor do not recurse endlessly.<br/><br/>
+	 *
+	 * The upcoming files are opened and read ahead on background threads (see
+	 * <code>setReadAheadDepth()</code>), so that compressing one file does not wait on reading the
+	 * next. Files stored without a compression policy are instead transferred as by
+	 * <code>addEntry(ZipEntry, File)</code>.
+	 *
+	 * @param directory the root of the tree
+	 * @param prefix the prefix of the entry names, such as a directory name (may be null)
+	 * @param include the filter of the files to be added (null for all files)
+	 * @param exclude the filter of the files and directories to be skipped, excluded directories being skipped entirely (null for none)
+	 * @return a reference to the builder
+	 * @throws IOException if there is a problem reading a file or writing the entry data
+	 */
+	public ZipBuilder addDirectory(final File directory, final String prefix, final FileFilter include, final FileFilter exclude) throws IOException {
+		if(!directory.isDirectory()){
+			throw new IOException("Not a directory: " + directory);
+		}
+
+		String base = prefix != null ? prefix.replace('\\', '/') : "";
+		if(base.length() != 0 && !base.endsWith("/")){
+			base += "/";
+		}
+
+		final List<String> names = new ArrayList<String>();
+		final List<File> files = new ArrayList<File>();
+		collect(directory, base, include, exclude, new HashSet<String>(), names, files);
+
+		final boolean transferred = compressionPolicy == null && method == ZipEntry.STORED;
+		final List<File> streamed = new ArrayList<File>();
+		if(!transferred){
+			for(int i=0; i<names.size(); i++){
+				if(!names.get(i).endsWith("/")){
+					streamed.add(files.get(i));
+				}
+			}
+		}
+
+		final ReadAheadFileSequence sequence = new ReadAheadFileSequence(streamed, readAheadDepth);
+		try {
+			for(int i=0; i<names.size(); i++){
+				final File file = files.get(i);
+				final ZipEntry entry = new ZipEntry(names.get(i));
+				entry.setTime(file.lastModified());
+
+				if(entry.isDirectory()){
+					entry.setMethod(ZipEntry.STORED);
+					addEntry(entry, new byte[0]);
+				} else if(transferred){
+					addEntry(entry, file);
+				} else {
+					addEntry(entry, sequence.next());
+				}
+			}
+		} finally {
+			sequence.close();
+		}
 		return(this);
 	}
 
+	/**
+	 * Walks the tree in name order, collecting the included files and the empty directories along with their entry names.
+	 */
+	private static void collect(final File directory, final String base, final FileFilter include, final FileFilter exclude, final Set<String> visited, final List<String> names, final List<File> files) throws IOException {
+		if(!visited.add(directory.getCanonicalPath())){
+			return;
+		}
+
+		final File[] children = directory.listFiles();
+		if(children == null){
+			throw new IOException("Unable to list directory: " + directory);
+		}
+		Arrays.sort(children);
+
+		if(children.length == 0 && base.length() != 0){
+			names.add(base);
+			files.add(directory);
+			return;
+		}
+
+		for(final File child : children){
+			if(exclude != null && exclude.accept(child)){
+				continue;
+			}
+			if(child.isDirectory()){
+				collect(child, base + child.getName() + "/", include, exclude, visited, names, files);
+			} else if(child.isFile() && (include == null || include.accept(child))){
+				names.add(base + child.getName());
+				files.add(child);
+			}
+		}
+	}
+
 	/**
 	 * Used to add an entry with the given parameters.
 	 *
@@ -184,13 +631,339 @@ public class ZipBuilder {
 	 * @throws IOException if there is a problem writing the zip file
 	 */
 	public void zip() throws IOException {
-		try {zos.finish();}
+		try {
+			while(!pending.isEmpty()){
+				write(ConcurrentIo.await(pending.removeFirst().future, "compress entry"));
+			}
+			writer.finish();
+		}
 		catch(final IOException ioe){throw ioe;}
-		finally {IOUtils.closeQuietly(zos);}
+		finally {
+			abortPending();
+			IOUtils.closeQuietly(os);
+		}
+	}
+
+	private int methodFor(final ZipEntry entry){
+		return entry.getMethod() != -1 ? entry.getMethod() : method;
+	}
+
+	private boolean usesPolicy(final ZipEntry entry){
+		return compressionPolicy != null && entry.getMethod() == -1;
+	}
+
+	/**
+	 * Sets the method of the entry chosen by the compression policy, returning the level to deflate it with.
+	 */
+	private int applyPolicy(final ZipEntry entry, final byte[] sample, final int length){
+		final int compression = compressionPolicy.compressionFor(entry.getName(), sample, length);
+		if(compression == Deflater.NO_COMPRESSION){
+			entry.setMethod(ZipEntry.STORED);
+			return level;
+		}
+		entry.setMethod(ZipEntry.DEFLATED);
+		return compression;
+	}
+
+	private static int readSample(final InputStream in, final byte[] sample) throws IOException {
+		int length = 0;
+		int count;
+		while(length < sample.length && (count = in.read(sample, length, sample.length - length)) != -1){
+			length += count;
+		}
+		return length;
+	}
+
+	/**
+	 * Determines whether the data of the previous entry may be used for the new one.
+	 */
+	private static boolean reusable(final ZipEntry entry, final ZipEntry old, final long crc, final long size){
+		return old.getSize() == size
+			&& old.getCrc() == crc
+			&& (old.getMethod() == ZipEntry.STORED || old.getMethod() == ZipEntry.DEFLATED)
+			&& (entry.getMethod() == -1 || entry.getMethod() == old.getMethod());
+	}
+
+	/**
+	 * Reports a deflated entry to the compression policy, if it observes the compression.
+	 */
+	private void observe(final ZipEntry entry, final int entryLevel, final long size, final long compressedSize, final long nanos){
+		if(compressionPolicy instanceof CompressionObserver && methodFor(entry) == ZipEntry.DEFLATED){
+			((CompressionObserver)compressionPolicy).entryCompressed(entry.getName(), entryLevel, size, compressedSize, nanos);
+		}
+	}
+
+	private static boolean hasCrcAndSize(final ZipEntry entry){
+		return entry.getCrc() != -1 && entry.getSize() != -1;
+	}
+
+	/**
+	 * Queues the entry to be compressed on the executor, then writes any entries at the head of the
+	 * queue which are complete, waiting for them if too many entries are in progress.
+	 */
+	private ZipBuilder submit(final ZipEntry entry, final int entryLevel, final InputStream in) throws IOException {
+		final int entryMethod = methodFor(entry);
+		final int threshold = spillThreshold;
+		final ZipArchiveReader reused = previous;
+		return(enqueue(new Callable<CompressedEntry>() {
+			@Override
+			public CompressedEntry call() throws IOException {
+				return compress(reused, entry, entryMethod, entryLevel, threshold, in);
+			}
+		}, in));
+	}
+
+	private ZipBuilder enqueue(final Callable<CompressedEntry> task, final InputStream in) throws IOException {
+		final PendingEntry entry = new PendingEntry(task, in);
+		entry.future = executor.submit(entry);
+		pending.addLast(entry);
+
+		try {
+			while(!pending.isEmpty() && (pending.getFirst().future.isDone() || pending.size() > maxPending)){
+				write(ConcurrentIo.await(pending.removeFirst().future, "compress entry"));
+			}
+		} catch(final IOException ioe){
+			abortPending();
+			throw ioe;
+		}
+		return(this);
+	}
+
+	private void write(final CompressedEntry compressed) throws IOException {
+		if(compressed.reused != null){
+			final ZipEntry old = compressed.reused;
+			final InputStream raw = previous.getRawInputStream(old.getName());
+			try {
+				writer.writeEntry(compressed.entry, old.getMethod(), old.getCrc(), old.getCompressedSize(), old.getSize(), raw);
+			} finally {
+				IOUtils.closeQuietly(raw);
+			}
+			reusedEntryCount++;
+			return;
+		}
+
+		if(compressed.file != null){
+			final FileInputStream in = new FileInputStream(compressed.file);
+			try {
+				writer.writeEntry(compressed.entry, compressed.crc, compressed.size, in.getChannel());
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+			return;
+		}
+
+		try {
+			final InputStream raw = compressed.data.toInputStream();
+			try {
+				writer.writeEntry(compressed.entry, compressed.method, compressed.crc, compressed.data.size(), compressed.size, raw);
+			} finally {
+				IOUtils.closeQuietly(raw);
+			}
+			observe(compressed.entry, compressed.level, compressed.size, compressed.data.size(), compressed.nanos);
+		} finally {
+			compressed.dispose();
+		}
+	}
+
+	/**
+	 * Cancels the entries not yet started, closing their streams, and releases the buffers of the
+	 * others once they are compressed.
+	 */
+	private void abortPending(){
+		boolean interrupted = false;
+		for(final PendingEntry entry : pending){
+			if(entry.cancel()){
+				continue;
+			}
+
+			while(true){
+				try {
+					final CompressedEntry compressed = entry.future.get();
+					if(compressed != null){
+						compressed.dispose();
+					}
+					break;
+				} catch(final InterruptedException ie){
+					// the worker still owns the buffer, so it must be awaited
+					interrupted = true;
+				} catch(final ExecutionException ee){
+					// the entry failed, so there is nothing to release
+					break;
+				}
+			}
+		}
+		pending.clear();
+
+		if(interrupted){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Compresses the data of an entry as <code>compress()</code> does, unless the previous archive has an
+	 * entry of the same name; the data is then buffered while its CRC is computed, and the previous
+	 * entry is reused if it is unchanged.
+	 */
+	private static CompressedEntry compress(final ZipArchiveReader previous, final ZipEntry entry, final int method, final int level, final int threshold, final InputStream in) throws IOException {
+		final ZipEntry old = previous != null ? previous.getEntry(entry.getName()) : null;
+		if(old == null){
+			return compress(entry, method, level, threshold, in);
+		}
+
+		final CompressedEntry buffered = compress(entry, ZipEntry.STORED, level, threshold, in);
+		if(reusable(entry, old, buffered.crc, buffered.size)){
+			buffered.dispose();
+			return new CompressedEntry(entry, old);
+		}
+		if(method == ZipEntry.STORED){
+			return buffered;
+		}
+
+		try {
+			return compress(entry, method, level, threshold, buffered.data.toInputStream());
+		} finally {
+			buffered.dispose();
+		}
+	}
+
+	/**
+	 * Reads and compresses (or, for stored entries, buffers) the data of an entry, computing its CRC and size.
+	 */
+	private static CompressedEntry compress(final ZipEntry entry, final int method, final int level, final int threshold, final InputStream in) throws IOException {
+		final SpillingOutputStream data = new SpillingOutputStream(threshold);
+		final CRC32 crc = new CRC32();
+		long size = 0;
+		long nanos = 0;
+
+		final Deflater deflater = method == ZipEntry.DEFLATED ? DeflaterPool.shared().acquire(level, true) : null;
+		try {
+			final OutputStream out = deflater != null ? new DeflaterOutputStream(data, deflater, 64 * 1024) : data;
+			final byte[] buffer = new byte[64 * 1024];
+			int count;
+			while((count = in.read(buffer)) != -1){
+				crc.update(buffer, 0, count);
+				final long start = System.nanoTime();
+				out.write(buffer, 0, count);
+				nanos += System.nanoTime() - start;
+				size += count;
+			}
+			final long start = System.nanoTime();
+			out.close();
+			nanos += System.nanoTime() - start;
+		} catch(final IOException ioe){
+			data.dispose();
+			throw ioe;
+		} finally {
+			IOUtils.closeQuietly(in);
+			DeflaterPool.shared().release(level, true, deflater);
+		}
+
+		return new CompressedEntry(entry, method, level, crc.getValue(), size, nanos, data, null);
+	}
+
+	/**
+	 * Reads a file to compute the CRC and size of the stored entry written from it.
+	 */
+	private static CompressedEntry checksum(final ZipEntry entry, final File file) throws IOException {
+		final CRC32 crc = new CRC32();
+		long size = 0;
+
+		final InputStream in = new FileInputStream(file);
+		try {
+			final byte[] buffer = new byte[64 * 1024];
+			int count;
+			while((count = in.read(buffer)) != -1){
+				crc.update(buffer, 0, count);
+				size += count;
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+
+		return new CompressedEntry(entry, ZipEntry.STORED, 0, crc.getValue(), size, 0, null, file);
 	}
 
 	// Dont really want to pull in another dependency just for this
 	private boolean isNotBlank(final String s){
 		return s != null && s.trim().length() != 0;
 	}
+
+	/**
+	 * An entry queued for compression, with the stream it will be read from (if any). Either the
+	 * worker starts the task or <code>cancel()</code> closes the stream, never both; Future.cancel()
+	 * alone cannot tell whether a task has started.
+	 */
+	private static final class PendingEntry implements Callable<CompressedEntry> {
+
+		private final Callable<CompressedEntry> task;
+		private final InputStream in;
+		private final AtomicBoolean claimed = new AtomicBoolean();
+		Future<CompressedEntry> future;
+
+		PendingEntry(final Callable<CompressedEntry> task, final InputStream in){
+			this.task = task;
+			this.in = in;
+		}
+
+		@Override
+		public CompressedEntry call() throws Exception {
+			return claimed.compareAndSet(false, true) ? task.call() : null;
+		}
+
+		boolean cancel(){
+			if(!claimed.compareAndSet(false, true)){
+				return false;
+			}
+			future.cancel(false);
+			IOUtils.closeQuietly(in);
+			return true;
+		}
+	}
+
+	/**
+	 * The compressed data of an entry awaiting its turn to be written, the file holding the data
+	 * of a stored entry, or the previous entry whose data is reused.
+	 */
+	private static final class CompressedEntry {
+
+		final ZipEntry entry;
+		final int method;
+		final int level;
+		final long crc;
+		final long size;
+		final long nanos;
+		final SpillingOutputStream data;
+		final File file;
+		final ZipEntry reused;
+
+		CompressedEntry(final ZipEntry entry, final int method, final int level, final long crc, final long size, final long nanos, final SpillingOutputStream data, final File file){
+			this.entry = entry;
+			this.method = method;
+			this.level = level;
+			this.crc = crc;
+			this.size = size;
+			this.nanos = nanos;
+			this.data = data;
+			this.file = file;
+			this.reused = null;
+		}
+
+		CompressedEntry(final ZipEntry entry, final ZipEntry reused){
+			this.entry = entry;
+			this.method = reused.getMethod();
+			this.level = 0;
+			this.crc = reused.getCrc();
+			this.size = reused.getSize();
+			this.nanos = 0;
+			this.data = null;
+			this.file = null;
+			this.reused = reused;
+		}
+
+		void dispose(){
+			if(data != null){
+				data.dispose();
+			}
+		}
+	}
 }
@@ -0,0 +1,238 @@
+/*
+ *	Copyright 2006 Christopher J. Stehno (chris@stehno.com)
+ *
+ * 	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ * 	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+package com.stehno.codeperks.io.zip;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import org.apache.commons.io.IOUtils;
+
+import com.stehno.codeperks.io.ConcurrentIo;
+
+/**
+ * Extracts the entries of a zip file to a directory. The entries are found through the central
+ * directory index of a ZipArchiveReader and, when an ExecutorService is provided, decompressed in
+ * parallel, each straight from the mapped archive into its own file.<br/><br/>
+ *
+ * Each file is preallocated to the size of its entry before it is written, and the CRC of the data
+ * is validated as it is written; an entry failing validation is deleted and the extraction fails.
+ * Entry names which could escape the target directory (absolute names, or names containing
+ * <code>..</code>, backslashes or drive letters) are rejected unless their canonical path remains
+ * within it; other names need no file system checks.<br/><br/>
+ *
+ * <b>Usage</b><br/>
+ *
+ * <pre>
+ * new ZipExtractor(reader).setExecutor(executor).extract(new File("/opt/app"));
+ * </pre>
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class ZipExtractor {
+
+	private final ZipArchiveReader reader;
+	private ExecutorService executor;
+
+	/**
+	 * Creates an extractor of the archive opened by the given reader, which is not closed by the extractor.
+	 *
+	 * @param reader the archive reader
+	 */
+	public ZipExtractor(final ZipArchiveReader reader){
+		this.reader = reader;
+	}
+
+	/**
+	 * Sets the executor used to extract the entries in parallel. By default the entries are
+	 * extracted on the calling thread.
+	 *
+	 * @param executor the executor (null to extract on the calling thread)
+	 * @return a reference to the extractor
+	 */
+	public ZipExtractor setExecutor(final ExecutorService executor){
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Extracts all of the entries into the given directory, which is created if necessary. If the
+	 * extraction fails, no more files are written once this method has thrown, so the directory may
+	 * be cleaned up safely; files extracted before the failure are left in place.
+	 *
+	 * @param directory the target directory
+	 * @return the number of files extracted
+	 * @throws IOException if there is a problem writing a file, or an entry is invalid or has an unsafe name
+	 */
+	public int extract(final File directory) throws IOException {
+		final File root = directory.getAbsoluteFile();
+		mkdirs(root);
+
+		// the directories are created up front, so the entry tasks need only create their own parents
+		final List<String> names = new ArrayList<String>();
+		for(final String name : reader.getNames()){
+			final File target = resolve(root, name);
+			if(name.endsWith("/")){
+				mkdirs(target);
+			} else {
+				names.add(name);
+			}
+		}
+
+		if(executor == null){
+			for(final String name : names){
+				extract(name, resolve(root, name));
+			}
+			return names.size();
+		}
+
+		final AtomicBoolean failed = new AtomicBoolean();
+		final List<Future<Void>> futures = new ArrayList<Future<Void>>(names.size());
+		for(final String name : names){
+			final File target = resolve(root, name);
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					if(!failed.get()){
+						extract(name, target);
+					}
+					return null;
+				}
+			}));
+		}
+
+		try {
+			for(final Future<Void> future : futures){
+				ConcurrentIo.await(future, "extract entry");
+			}
+		} catch(final IOException ioe){
+			// Future.cancel() does not stop a running task, so the remaining tasks are skipped and awaited instead
+			failed.set(true);
+			awaitQuietly(futures);
+			throw ioe;
+		}
+		return names.size();
+	}
+
+	/**
+	 * Writes the data of an entry to its file, validating its CRC.
+	 */
+	private void extract(final String name, final File target) throws IOException {
+		final ZipEntry entry = reader.getEntry(name);
+		mkdirs(target.getParentFile());
+
+		final RandomAccessFile file = new RandomAccessFile(target, "rw");
+		final InputStream in = reader.getInputStream(name);
+		boolean valid = false;
+		try {
+			file.setLength(entry.getSize());
+
+			final CRC32 crc = new CRC32();
+			final byte[] buffer = new byte[64 * 1024];
+			long size = 0;
+			int count;
+			while((count = in.read(buffer)) != -1){
+				crc.update(buffer, 0, count);
+				file.write(buffer, 0, count);
+				size += count;
+			}
+
+			if(size != entry.getSize() || crc.getValue() != entry.getCrc()){
+				throw new ZipException("Invalid entry size or crc-32 for entry: " + name);
+			}
+			valid = true;
+		} finally {
+			IOUtils.closeQuietly(in);
+			file.close();
+			if(!valid){
+				target.delete();
+			}
+		}
+
+		if(entry.getTime() != -1){
+			target.setLastModified(entry.getTime());
+		}
+	}
+
+	/**
+	 * Resolves the file of an entry, rejecting names which would place it outside of the root directory.
+	 */
+	static File resolve(final File root, final String name) throws IOException {
+		if(!isPlain(name)){
+			final String base = root.getCanonicalPath();
+			final String path = new File(root, name).getCanonicalPath();
+			if(name.startsWith("/") || name.startsWith("\\") || !path.startsWith(base + File.separator)){
+				throw new ZipException("Entry is outside of the target directory: " + name);
+			}
+		}
+		return new File(root, name);
+	}
+
+	/**
+	 * Determines whether a name is relative and free of parent references, separators other than
+	 * the slash and drive letters, so that it cannot resolve outside of the target directory.
+	 */
+	private static boolean isPlain(final String name){
+		if(name.length() == 0 || name.charAt(0) == '/'){
+			return false;
+		}
+		for(int i=0; i<name.length(); i++){
+			final char c = name.charAt(i);
+			if(c == '\\' || c == ':' || c == 0 || (c == '.' && i + 1 < name.length() && name.charAt(i + 1) == '.')){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void awaitQuietly(final List<Future<Void>> futures){
+		boolean interrupted = false;
+		for(final Future<Void> future : futures){
+			while(true){
+				try {
+					future.get();
+					break;
+				} catch(final InterruptedException ie){
+					interrupted = true;
+				} catch(final ExecutionException ee){
+					// only the first failure is reported
+					break;
+				}
+			}
+		}
+		if(interrupted){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void mkdirs(final File directory) throws IOException {
+		// another thread may create the same directory concurrently
+		if(!directory.mkdirs() && !directory.isDirectory()){
+			throw new IOException("Unable to create directory: " + directory);
+		}
+	}
+}
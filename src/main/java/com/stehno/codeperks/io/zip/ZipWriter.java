@@ -0,0 +1,594 @@
+/*
+ *	Copyright 2006 Christopher J. Stehno (chris@stehno.com)
+ *
+ * 	Licensed under the Apache License, Version 2.0 (the "License");
+ *	you may not use this file except in compliance with the License.
+ *	You may obtain a copy of the License at
+ *
+ *		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Unless required by applicable law or agreed to in writing, software
+ *	distributed under the License is distributed on an "AS IS" BASIS,
+ * 	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *	See the License for the specific language governing permissions and
+ *	limitations under the License.
+ */
+package com.stehno.codeperks.io.zip;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import com.stehno.codeperks.io.DeflaterPool;
+
+/**
+ * Low-level writer of the zip file format, used by the ZipBuilder in place of a ZipOutputStream
+ * so that entries may also be written from data which has already been compressed (and whose
+ * CRC and sizes are therefore known up front).<br/><br/>
+ *
+ * Entry names and comments are encoded as UTF-8 (and flagged as such), and the Zip64 extensions
+ * are used when entry sizes, offsets or the number of entries exceed the limits of the original
+ * format. Instances are not thread-safe.
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+final class ZipWriter {
+
+	static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+	static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	static final int END_SIGNATURE = 0x06054b50;
+	static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	static final int ZIP64_EXTRA_ID = 0x0001;
+	static final int FLAG_DATA_DESCRIPTOR = 0x08;
+	static final int FLAG_UTF8 = 0x800;
+	static final long LIMIT_32 = 0xffffffffL;
+	static final int LIMIT_16 = 0xffff;
+
+	private static final int VERSION_STORED = 10;
+	private static final int VERSION_DEFLATED = 20;
+	private static final int VERSION_ZIP64 = 45;
+
+	private final OutputStream out;
+	private final FileChannel channel;
+	private final List<CentralRecord> central = new ArrayList<CentralRecord>();
+	private final Set<String> names = new HashSet<String>();
+	private final byte[] scratch = new byte[8];
+	private byte[] comment;
+	private long position;
+	private boolean entryOpen;
+	private boolean finished;
+
+	/**
+	 * Creates a writer on the given stream, which is not closed by the writer. When the stream is a
+	 * FileOutputStream, stored entries written from files are transferred directly between the
+	 * file channels.
+	 */
+	ZipWriter(final OutputStream out){
+		this(out, 64 * 1024);
+	}
+
+	/**
+	 * Creates a writer on the given stream, buffering at most the given number of bytes before
+	 * writing them to the stream.
+	 */
+	ZipWriter(final OutputStream out, final int bufferSize){
+		this.out = new BufferedOutputStream(out, bufferSize);
+		this.channel = out instanceof FileOutputStream ? ((FileOutputStream)out).getChannel() : null;
+	}
+
+	void setComment(final String comment){
+		this.comment = comment != null ? utf8(comment) : null;
+	}
+
+	/**
+	 * Retrieves the number of bytes written so far.
+	 */
+	long position(){
+		return position;
+	}
+
+	/**
+	 * Begins an entry whose data is written, uncompressed, to the returned stream. Deflated entries
+	 * are compressed as they are written and followed by a data descriptor; stored entries must
+	 * have their size and CRC set on the ZipEntry. The entry is completed by closing the stream, or
+	 * abandoned by aborting it if writing its data fails.
+	 *
+	 * @param entry the entry
+	 * @param method the compression method (ZipEntry.STORED or ZipEntry.DEFLATED)
+	 * @param level the deflate level
+	 * @return the stream the entry data is written to
+	 */
+	EntryOutputStream beginEntry(final ZipEntry entry, final int method, final int level) throws IOException {
+		ensureWritable(entry);
+
+		final CentralRecord record;
+		if(method == ZipEntry.STORED){
+			if(entry.getSize() == -1 || entry.getCrc() == -1){
+				throw new ZipException("STORED entry missing size or crc-32: " + entry.getName());
+			}
+			record = new CentralRecord(entry, method, 0, position);
+			record.crc = entry.getCrc();
+			record.size = entry.getSize();
+			record.compressedSize = entry.getSize();
+		} else {
+			record = new CentralRecord(entry, ZipEntry.DEFLATED, FLAG_DATA_DESCRIPTOR, position);
+		}
+
+		writeLocalHeader(record);
+		entryOpen = true;
+		return new EntryOutputStream(record, level);
+	}
+
+	/**
+	 * Writes an entry from its raw (already compressed, for deflated entries) data.
+	 *
+	 * @param entry the entry
+	 * @param method the compression method of the raw data
+	 * @param crc the CRC-32 of the uncompressed data
+	 * @param compressedSize the length of the raw data
+	 * @param size the length of the uncompressed data
+	 * @param raw the stream of raw data, which is read but not closed
+	 */
+	void writeEntry(final ZipEntry entry, final int method, final long crc, final long compressedSize, final long size, final InputStream raw) throws IOException {
+		final CentralRecord record = beginRawEntry(entry, method, crc, compressedSize, size);
+		copy(entry, raw, compressedSize);
+		central.add(record);
+	}
+
+	/**
+	 * Writes a stored entry from the first <code>size</code> bytes of the given file channel. When
+	 * the writer is on a FileOutputStream, the bytes are transferred with
+	 * <code>FileChannel.transferTo()</code> rather than copied through the heap.
+	 *
+	 * @param entry the entry
+	 * @param crc the CRC-32 of the data
+	 * @param size the length of the data
+	 * @param source the channel of the file holding the data, which is not closed
+	 */
+	void writeEntry(final ZipEntry entry, final long crc, final long size, final FileChannel source) throws IOException {
+		final CentralRecord record = beginRawEntry(entry, ZipEntry.STORED, crc, size, size);
+		if(channel != null){
+			out.flush();
+			long transferred = 0;
+			while(transferred < size){
+				final long count = source.transferTo(transferred, size - transferred, channel);
+				if(count <= 0){
+					throw new ZipException("Unexpected end of data for entry: " + entry.getName());
+				}
+				transferred += count;
+			}
+			position += size;
+		} else {
+			source.position(0);
+			copy(entry, Channels.newInputStream(source), size);
+		}
+		central.add(record);
+	}
+
+	private void copy(final ZipEntry entry, final InputStream raw, final long length) throws IOException {
+		final byte[] buffer = new byte[64 * 1024];
+		long remaining = length;
+		while(remaining > 0){
+			final int count = raw.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+			if(count == -1){
+				throw new ZipException("Unexpected end of data for entry: " + entry.getName());
+			}
+			write(buffer, 0, count);
+			remaining -= count;
+		}
+	}
+
+	/**
+	 * Writes the local header of an entry whose raw data of known length is then written by the caller.
+	 */
+	private CentralRecord beginRawEntry(final ZipEntry entry, final int method, final long crc, final long compressedSize, final long size) throws IOException {
+		ensureWritable(entry);
+
+		final CentralRecord record = new CentralRecord(entry, method, 0, position);
+		record.crc = crc;
+		record.compressedSize = compressedSize;
+		record.size = size;
+		writeLocalHeader(record);
+		return record;
+	}
+
+	/**
+	 * Writes the central directory and the end records. The underlying stream is flushed but not closed.
+	 */
+	void finish() throws IOException {
+		if(finished){
+			return;
+		}
+		if(entryOpen){
+			throw new ZipException("The last entry has not been completed");
+		}
+		finished = true;
+
+		final long centralOffset = position;
+		for(final CentralRecord record : central){
+			writeCentralHeader(record);
+		}
+		final long centralSize = position - centralOffset;
+
+		final boolean zip64 = central.size() >= LIMIT_16 || centralOffset >= LIMIT_32 || centralSize >= LIMIT_32;
+		if(zip64){
+			final long zip64EndOffset = position;
+			writeInt(ZIP64_END_SIGNATURE);
+			writeLong(44);
+			writeShort(VERSION_ZIP64);
+			writeShort(VERSION_ZIP64);
+			writeInt(0);
+			writeInt(0);
+			writeLong(central.size());
+			writeLong(central.size());
+			writeLong(centralSize);
+			writeLong(centralOffset);
+
+			writeInt(ZIP64_LOCATOR_SIGNATURE);
+			writeInt(0);
+			writeLong(zip64EndOffset);
+			writeInt(1);
+		}
+
+		writeInt(END_SIGNATURE);
+		writeShort(0);
+		writeShort(0);
+		writeShort(Math.min(central.size(), LIMIT_16));
+		writeShort(Math.min(central.size(), LIMIT_16));
+		writeInt((int)Math.min(centralSize, LIMIT_32));
+		writeInt((int)Math.min(centralOffset, LIMIT_32));
+		writeShort(comment != null ? comment.length : 0);
+		if(comment != null){
+			write(comment, 0, comment.length);
+		}
+		out.flush();
+	}
+
+	private void ensureWritable(final ZipEntry entry) throws IOException {
+		if(finished){
+			throw new ZipException("The zip file has already been finished");
+		}
+		if(entryOpen){
+			throw new ZipException("The previous entry has not been completed");
+		}
+		if(!names.add(entry.getName())){
+			throw new ZipException("duplicate entry: " + entry.getName());
+		}
+	}
+
+	private void writeLocalHeader(final CentralRecord record) throws IOException {
+		final boolean descriptor = (record.flags & FLAG_DATA_DESCRIPTOR) != 0;
+		final boolean zip64 = !descriptor && (record.size >= LIMIT_32 || record.compressedSize >= LIMIT_32);
+		final byte[] extra = zip64 ? withZip64(record.extra, new long[]{ record.size, record.compressedSize }) : record.extra;
+
+		writeInt(LOCAL_HEADER_SIGNATURE);
+		writeShort(zip64 ? VERSION_ZIP64 : record.version());
+		writeShort(record.flags);
+		writeShort(record.method);
+		writeInt(record.dosTime);
+		writeInt(descriptor ? 0 : (int)record.crc);
+		writeInt(descriptor ? 0 : (int)(zip64 ? LIMIT_32 : record.compressedSize));
+		writeInt(descriptor ? 0 : (int)(zip64 ? LIMIT_32 : record.size));
+		writeShort(record.name.length);
+		writeShort(extra.length);
+		write(record.name, 0, record.name.length);
+		write(extra, 0, extra.length);
+	}
+
+	private void writeDataDescriptor(final CentralRecord record) throws IOException {
+		writeInt(DATA_DESCRIPTOR_SIGNATURE);
+		writeInt((int)record.crc);
+		if(record.size >= LIMIT_32 || record.compressedSize >= LIMIT_32){
+			writeLong(record.compressedSize);
+			writeLong(record.size);
+		} else {
+			writeInt((int)record.compressedSize);
+			writeInt((int)record.size);
+		}
+	}
+
+	private void writeCentralHeader(final CentralRecord record) throws IOException {
+		final List<Long> zip64Values = new ArrayList<Long>(3);
+		if(record.size >= LIMIT_32){
+			zip64Values.add(record.size);
+		}
+		if(record.compressedSize >= LIMIT_32){
+			zip64Values.add(record.compressedSize);
+		}
+		if(record.offset >= LIMIT_32){
+			zip64Values.add(record.offset);
+		}
+
+		final byte[] extra;
+		if(zip64Values.isEmpty()){
+			extra = record.extra;
+		} else {
+			final long[] values = new long[zip64Values.size()];
+			for(int i=0; i<values.length; i++){
+				values[i] = zip64Values.get(i);
+			}
+			extra = withZip64(record.extra, values);
+		}
+		final int version = zip64Values.isEmpty() ? record.version() : VERSION_ZIP64;
+
+		writeInt(CENTRAL_HEADER_SIGNATURE);
+		writeShort(version);
+		writeShort(version);
+		writeShort(record.flags);
+		writeShort(record.method);
+		writeInt(record.dosTime);
+		writeInt((int)record.crc);
+		writeInt((int)Math.min(record.compressedSize, LIMIT_32));
+		writeInt((int)Math.min(record.size, LIMIT_32));
+		writeShort(record.name.length);
+		writeShort(extra.length);
+		writeShort(record.comment.length);
+		writeShort(0);
+		writeShort(0);
+		writeInt(0);
+		writeInt((int)Math.min(record.offset, LIMIT_32));
+		write(record.name, 0, record.name.length);
+		write(extra, 0, extra.length);
+		write(record.comment, 0, record.comment.length);
+	}
+
+	void write(final byte[] bytes, final int off, final int len) throws IOException {
+		out.write(bytes, off, len);
+		position += len;
+	}
+
+	private void writeShort(final int value) throws IOException {
+		scratch[0] = (byte)value;
+		scratch[1] = (byte)(value >>> 8);
+		write(scratch, 0, 2);
+	}
+
+	private void writeInt(final int value) throws IOException {
+		scratch[0] = (byte)value;
+		scratch[1] = (byte)(value >>> 8);
+		scratch[2] = (byte)(value >>> 16);
+		scratch[3] = (byte)(value >>> 24);
+		write(scratch, 0, 4);
+	}
+
+	private void writeLong(final long value) throws IOException {
+		writeInt((int)value);
+		writeInt((int)(value >>> 32));
+	}
+
+	/**
+	 * Replaces any Zip64 field of the given extra data with one holding the given values.
+	 */
+	private static byte[] withZip64(final byte[] extra, final long[] values){
+		final byte[] others = withoutExtra(extra, ZIP64_EXTRA_ID);
+		final byte[] combined = new byte[4 + values.length * 8 + others.length];
+		combined[0] = (byte)ZIP64_EXTRA_ID;
+		combined[2] = (byte)(values.length * 8);
+		for(int i=0; i<values.length; i++){
+			for(int b=0; b<8; b++){
+				combined[4 + i * 8 + b] = (byte)(values[i] >>> (8 * b));
+			}
+		}
+		System.arraycopy(others, 0, combined, 4 + values.length * 8, others.length);
+		return combined;
+	}
+
+	/**
+	 * Removes the fields with the given header id from the extra data.
+	 */
+	static byte[] withoutExtra(final byte[] extra, final int id){
+		if(extra == null){
+			return new byte[0];
+		}
+
+		final byte[] kept = new byte[extra.length];
+		int length = 0;
+		int position = 0;
+		while(position + 4 <= extra.length){
+			final int fieldId = (extra[position] & 0xff) | (extra[position + 1] & 0xff) << 8;
+			final int fieldLength = (extra[position + 2] & 0xff) | (extra[position + 3] & 0xff) << 8;
+			final int end = Math.min(extra.length, position + 4 + fieldLength);
+			if(fieldId != id){
+				System.arraycopy(extra, position, kept, length, end - position);
+				length += end - position;
+			}
+			position = end;
+		}
+		final byte[] result = new byte[length];
+		System.arraycopy(kept, 0, result, 0, length);
+		return result;
+	}
+
+	/**
+	 * Converts a Java time to the MS-DOS date (high word) and time (low word) used by the zip format.
+	 */
+	static int dosTime(final long time){
+		final Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(time == -1 ? System.currentTimeMillis() : time);
+
+		final int year = calendar.get(Calendar.YEAR);
+		if(year < 1980){
+			return (1 << 21) | (1 << 16);
+		}
+		return (year - 1980) << 25
+			| (calendar.get(Calendar.MONTH) + 1) << 21
+			| calendar.get(Calendar.DAY_OF_MONTH) << 16
+			| calendar.get(Calendar.HOUR_OF_DAY) << 11
+			| calendar.get(Calendar.MINUTE) << 5
+			| calendar.get(Calendar.SECOND) >> 1;
+	}
+
+	static byte[] utf8(final String s){
+		try {
+			return s.getBytes("UTF-8");
+		} catch(final UnsupportedEncodingException uee){
+			throw new IllegalStateException("UTF-8 encoding is not supported", uee);
+		}
+	}
+
+	/**
+	 * The central directory information of a written entry.
+	 */
+	private static final class CentralRecord {
+
+		final byte[] name;
+		final byte[] comment;
+		final byte[] extra;
+		final int method;
+		final int flags;
+		final int dosTime;
+		final long offset;
+		long crc;
+		long compressedSize;
+		long size;
+
+		CentralRecord(final ZipEntry entry, final int method, final int flags, final long offset){
+			this.name = utf8(entry.getName());
+			this.comment = entry.getComment() != null ? utf8(entry.getComment()) : new byte[0];
+			this.extra = withoutExtra(entry.getExtra(), ZIP64_EXTRA_ID);
+			this.method = method;
+			this.flags = flags | FLAG_UTF8;
+			this.dosTime = dosTime(entry.getTime());
+			this.offset = offset;
+		}
+
+		int version(){
+			return method == ZipEntry.STORED ? VERSION_STORED : VERSION_DEFLATED;
+		}
+	}
+
+	/**
+	 * Stream receiving the uncompressed data of an entry begun with <code>beginEntry()</code>, which
+	 * also measures the time spent deflating it.
+	 */
+	final class EntryOutputStream extends OutputStream {
+
+		private final CentralRecord record;
+		private final CRC32 crc = new CRC32();
+		private final int level;
+		private final Deflater deflater;
+		private final byte[] buffer;
+		private final byte[] single = new byte[1];
+		private long size;
+		private long nanos;
+		private boolean closed;
+
+		EntryOutputStream(final CentralRecord record, final int level){
+			this.record = record;
+			this.level = level;
+			this.deflater = record.method == ZipEntry.DEFLATED ? DeflaterPool.shared().acquire(level, true) : null;
+			this.buffer = deflater != null ? new byte[64 * 1024] : null;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			single[0] = (byte)b;
+			write(single, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] bytes, final int off, final int len) throws IOException {
+			if(closed){
+				throw new IOException("Entry has been closed");
+			}
+
+			crc.update(bytes, off, len);
+			size += len;
+			if(deflater == null){
+				ZipWriter.this.write(bytes, off, len);
+			} else {
+				deflater.setInput(bytes, off, len);
+				while(!deflater.needsInput()){
+					deflate();
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(closed){
+				return;
+			}
+			closed = true;
+			entryOpen = false;
+
+			if(deflater != null){
+				try {
+					deflater.finish();
+					while(!deflater.finished()){
+						deflate();
+					}
+					record.compressedSize = deflater.getBytesWritten();
+				} finally {
+					DeflaterPool.shared().release(level, true, deflater);
+				}
+				record.crc = crc.getValue();
+				record.size = size;
+				writeDataDescriptor(record);
+
+			} else if(size != record.size || crc.getValue() != record.crc){
+				throw new ZipException("Invalid entry size or crc-32 for STORED entry: " + new String(record.name, "UTF-8"));
+			}
+			central.add(record);
+		}
+
+		/**
+		 * Abandons the entry if it has not been closed, returning its Deflater to the pool. The
+		 * archive is left incomplete.
+		 */
+		void abort(){
+			if(closed){
+				return;
+			}
+			closed = true;
+			entryOpen = false;
+			DeflaterPool.shared().release(level, true, deflater);
+		}
+
+		/**
+		 * Retrieves the number of uncompressed bytes written to the entry.
+		 */
+		long size(){
+			return size;
+		}
+
+		/**
+		 * Retrieves the compressed size of the entry, once it has been closed.
+		 */
+		long compressedSize(){
+			return record.compressedSize;
+		}
+
+		/**
+		 * Retrieves the time spent in the Deflater, in nanoseconds.
+		 */
+		long nanos(){
+			return nanos;
+		}
+
+		private void deflate() throws IOException {
+			final long start = System.nanoTime();
+			final int count = deflater.deflate(buffer, 0, buffer.length);
+			nanos += System.nanoTime() - start;
+			if(count > 0){
+				ZipWriter.this.write(buffer, 0, count);
+			}
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2009 Christopher J. Stehno
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.stehno.codeperks.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import com.stehno.codeperks.io.zip.ZipBuilder;
+
+/**
+ * Streams a zip archive built with a ZipBuilder directly into an HttpServletResponse, so that the
+ * archive is never held in memory and the client receives the first bytes while the rest is
+ * still being built.<br/><br/>
+ *
+ * No content length is set, so the container sends the response with chunked transfer encoding.
+ * Entries are deflated by default, with their sizes and CRC written in data descriptors after the
+ * data, so no entry is buffered; stored entries and parallel compression do buffer their entries,
+ * as described by the ZipBuilder. The response is flushed each time the given number of bytes has
+ * been written since the last flush, the builder buffering no more than that interval.<br/><br/>
+ *
+ * Once a write to the client fails, as it does when the client disconnects, the download is
+ * aborted: every later write fails at once, so the builder stops compressing within a buffer of
+ * the failure rather than building the rest of the archive.<br/><br/>
+ *
+ * <b>Usage</b><br/>
+ *
+ * <pre>
+ * final ZipDownload download = new ZipDownload(response, "export.zip");
+ * try {
+ *     download.start().addDirectory(exportDirectory).zip();
+ * } catch(final IOException ioe){
+ *     if(!download.isAborted()) throw ioe;
+ * }
+ * </pre>
+ *
+ * @author Christopher J. Stehno (chris@stehno.com)
+ */
+public class ZipDownload {
+
+    /**
+     * The default number of bytes written between flushes of the response (64 KB).
+     */
+    public static final int DEFAULT_FLUSH_INTERVAL = 64 * 1024;
+
+    private final HttpServletResponse response;
+    private final String filename;
+    private int flushInterval = DEFAULT_FLUSH_INTERVAL;
+    private ResponseOutputStream stream;
+
+    /**
+     * Creates a download of an archive with the given file name into the given response.
+     *
+     * @param response the http response
+     * @param filename the file name suggested to the client (may be null)
+     */
+    public ZipDownload(final HttpServletResponse response, final String filename){
+        this.response = response;
+        this.filename = filename;
+    }
+
+    /**
+     * Specify the number of bytes written to the response between flushes. The default is 64 KB.
+     *
+     * @param flushInterval the flush interval in bytes
+     * @return a reference to the download
+     */
+    public ZipDownload setFlushInterval(final int flushInterval){
+        if(flushInterval < 1){
+            throw new IllegalArgumentException("Flush interval must be positive: " + flushInterval);
+        }
+        this.flushInterval = flushInterval;
+        return this;
+    }
+
+    /**
+     * Sets the response headers and creates the builder writing the archive into the response. The
+     * response is completed by the <code>zip()</code> method of the builder.
+     *
+     * @return the builder of the archive
+     * @throws IOException if there is a problem opening the response stream
+     */
+    public ZipBuilder start() throws IOException {
+        if(stream != null){
+            throw new IllegalStateException("The download has already been started");
+        }
+
+        response.setContentType("application/zip");
+        if(filename != null){
+            response.setHeader("Content-Disposition", "attachment; filename=\"" + filename.replace("\\", "\\\\").replace("\"", "\\\"") + "\"");
+        }
+
+        // the builder buffers no more than the interval, so that the response is flushed at that cadence
+        stream = new ResponseOutputStream(response.getOutputStream(), flushInterval);
+        return new ZipBuilder(stream, Math.min(flushInterval, ZipBuilder.DEFAULT_BUFFER_SIZE));
+    }
+
+    /**
+     * Determines whether or not the download was aborted by a failed write to the client.
+     *
+     * @return true if the client could not be written to
+     */
+    public boolean isAborted(){
+        return stream != null && stream.aborted;
+    }
+
+    /**
+     * Retrieves the number of bytes of the archive written to the response so far.
+     *
+     * @return the number of bytes written
+     */
+    public long getBytesWritten(){
+        return stream != null ? stream.written : 0;
+    }
+
+    /**
+     * Stream writing into the response, flushing it at the flush interval and refusing all writes
+     * once one has failed.
+     */
+    private static final class ResponseOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final int flushInterval;
+        private long written;
+        private int unflushed;
+        private volatile boolean aborted;
+
+        ResponseOutputStream(final OutputStream out, final int flushInterval){
+            this.out = out;
+            this.flushInterval = flushInterval;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{ (byte)b }, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int off, final int len) throws IOException {
+            // large writes are split at the interval, so that the response is flushed at every interval
+            int position = off;
+            final int end = off + len;
+            while(position < end){
+                final int count = Math.min(end - position, flushInterval - unflushed);
+                ensureConnected();
+                try {
+                    out.write(bytes, position, count);
+                } catch(final IOException ioe){
+                    aborted = true;
+                    throw ioe;
+                }
+                position += count;
+                written += count;
+                unflushed += count;
+                if(unflushed >= flushInterval){
+                    flush();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            ensureConnected();
+            try {
+                out.flush();
+            } catch(final IOException ioe){
+                aborted = true;
+                throw ioe;
+            }
+            unflushed = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(!aborted){
+                out.close();
+            }
+        }
+
+        private void ensureConnected() throws IOException {
+            if(aborted){
+                throw new IOException("The download was aborted by a failed write to the client");
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.stehno.codeperks.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+public class DeflaterPoolTest {
+
+	private static final byte[] DATA = "pooled pooled pooled pooled pooled pooled".getBytes();
+
+	@Test
+	public void reuse() throws DataFormatException {
+		final DeflaterPool deflaters = new DeflaterPool(1);
+		final InflaterPool inflaters = new InflaterPool(1);
+
+		final Deflater deflater = deflaters.acquire(Deflater.BEST_SPEED, true);
+		final byte[] first = deflate(deflater);
+		deflaters.release(Deflater.BEST_SPEED, true, deflater);
+
+		// a recycled deflater is reset, and kept apart from the other levels and modes
+		assertNotSame(deflater, deflaters.acquire(Deflater.BEST_SPEED, false));
+		assertNotSame(deflater, deflaters.acquire(Deflater.BEST_COMPRESSION, true));
+		final Deflater recycled = deflaters.acquire(Deflater.BEST_SPEED, true);
+		assertSame(deflater, recycled);
+		assertArrayEquals(first, deflate(recycled));
+
+		final Inflater inflater = inflaters.acquire(true);
+		assertArrayEquals(DATA, inflate(inflater, first));
+		inflaters.release(true, inflater);
+
+		final Inflater again = inflaters.acquire(true);
+		assertSame(inflater, again);
+		assertArrayEquals(DATA, inflate(again, first));
+		assertEquals(first.length, again.getBytesRead());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void invalid_level(){
+		new DeflaterPool(1).acquire(10, true);
+	}
+
+	private static byte[] deflate(final Deflater deflater){
+		deflater.setInput(DATA);
+		deflater.finish();
+		final byte[] buffer = new byte[256];
+		final int length = deflater.deflate(buffer);
+		final byte[] compressed = new byte[length];
+		System.arraycopy(buffer, 0, compressed, 0, length);
+		return compressed;
+	}
+
+	private static byte[] inflate(final Inflater inflater, final byte[] compressed) throws DataFormatException {
+		inflater.setInput(compressed);
+		final byte[] data = new byte[DATA.length];
+		inflater.inflate(data);
+		return data;
+	}
+}
@@ -0,0 +1,113 @@
+package com.stehno.codeperks.io;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.stehno.codeperks.io.file.FileInputStreamFactory;
+import com.stehno.codeperks.io.file.FileOutputStreamFactory;
+
+public class PrimitiveArrayIoTest {
+
+	private static final int COUNT = 20000;
+
+	@Test
+	public void longs_compatible_with_data_streams() throws IOException {
+		final long[] values = new long[COUNT];
+		for(int i=0; i<COUNT; i++){
+			values[i] = i * 1000003L - 7;
+		}
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrimitiveArrayIo.write(baos, values, ByteOrder.BIG_ENDIAN);
+
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+		for(int i=0; i<COUNT; i++){
+			assertTrue(values[i] == in.readLong());
+		}
+
+		final long[] read = new long[COUNT];
+		PrimitiveArrayIo.read(new ByteArrayInputStream(baos.toByteArray()), read, ByteOrder.BIG_ENDIAN);
+		assertTrue(Arrays.equals(values, read));
+	}
+
+	@Test
+	public void ints_little_endian_channels() throws IOException {
+		final int[] values = new int[COUNT];
+		for(int i=0; i<COUNT; i++){
+			values[i] = i * 31 - 100;
+		}
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrimitiveArrayIo.write(Channels.newChannel(baos), values, ByteOrder.LITTLE_ENDIAN);
+		final byte[] bytes = baos.toByteArray();
+		assertTrue(bytes[0] == (byte)-100);
+
+		final int[] read = new int[COUNT];
+		PrimitiveArrayIo.read(Channels.newChannel(new ByteArrayInputStream(bytes)), read, ByteOrder.LITTLE_ENDIAN);
+		assertTrue(Arrays.equals(values, read));
+	}
+
+	@Test
+	public void doubles_with_factories() throws IOException {
+		final double[] values = new double[COUNT];
+		for(int i=0; i<COUNT; i++){
+			values[i] = i / 3.0;
+		}
+
+		final File file = File.createTempFile("doubles.", ".bin");
+		try {
+			PrimitiveArrayIo.write(new FileOutputStreamFactory(file), values, ByteOrder.nativeOrder());
+			assertTrue(Arrays.equals(values, PrimitiveArrayIo.readDoubles(new FileInputStreamFactory(file), COUNT, ByteOrder.nativeOrder())));
+		} finally {
+			FileUtils.deleteQuietly(file);
+		}
+	}
+
+	@Test
+	public void floats_compatible_with_data_streams() throws IOException {
+		final float[] values = {1.5f, -2.25f, Float.MAX_VALUE, Float.MIN_VALUE, 0f};
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(baos);
+		for(final float value : values){
+			out.writeFloat(value);
+		}
+
+		final float[] read = PrimitiveArrayIo.readFloats(new InputStreamFactory<InputStream>() {
+			@Override
+			public InputStream inputStream() throws IOException {
+				return new ByteArrayInputStream(baos.toByteArray());
+			}
+		}, values.length, ByteOrder.BIG_ENDIAN);
+		assertTrue(Arrays.equals(values, read));
+
+		final ByteArrayOutputStream written = new ByteArrayOutputStream();
+		PrimitiveArrayIo.write(new OutputStreamFactory<OutputStream>() {
+			@Override
+			public OutputStream outputStream() throws IOException {
+				return written;
+			}
+		}, values, ByteOrder.BIG_ENDIAN);
+		assertTrue(Arrays.equals(baos.toByteArray(), written.toByteArray()));
+	}
+
+	@Test(expected=EOFException.class)
+	public void read_past_end() throws IOException {
+		PrimitiveArrayIo.read(new ByteArrayInputStream(new byte[12]), new long[2], ByteOrder.BIG_ENDIAN);
+	}
+}
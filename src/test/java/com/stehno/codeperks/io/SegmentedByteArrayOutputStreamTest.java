@@ -0,0 +1,99 @@
+package com.stehno.codeperks.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class SegmentedByteArrayOutputStreamTest {
+
+	private final ByteSegmentPool pool = new ByteSegmentPool(16, 4);
+
+	@Test
+	public void write_across_segments() throws IOException {
+		final byte[] data = data(50);
+		final SegmentedByteArrayOutputStream out = new SegmentedByteArrayOutputStream(pool);
+		out.write(data, 0, 10);
+		out.write(data[10]);
+		out.write(data, 11, 39);
+
+		assertEquals(50, out.size());
+		assertTrue(Arrays.equals(data, out.toByteArray()));
+		assertTrue(Arrays.equals(data, IOUtils.toByteArray(out.toInputStream())));
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		out.writeTo(baos);
+		assertTrue(Arrays.equals(data, baos.toByteArray()));
+	}
+
+	@Test
+	public void byte_buffers() throws IOException {
+		final byte[] data = data(40);
+		final SegmentedByteArrayOutputStream out = new SegmentedByteArrayOutputStream(pool);
+		out.write(data);
+
+		final ByteBuffer[] buffers = out.toByteBuffers();
+		assertEquals(3, buffers.length);
+		assertEquals(16, buffers[0].remaining());
+		assertEquals(16, buffers[1].remaining());
+		assertEquals(8, buffers[2].remaining());
+
+		final ByteBuffer all = ByteBuffer.allocate(40);
+		for(final ByteBuffer buffer : buffers){
+			all.put(buffer);
+		}
+		assertTrue(Arrays.equals(data, all.array()));
+	}
+
+	@Test
+	public void read_from() throws IOException {
+		final byte[] data = data(100);
+		final SegmentedByteArrayOutputStream out = new SegmentedByteArrayOutputStream(pool);
+		assertEquals(100, out.readFrom(new ByteArrayInputStream(data)));
+		assertTrue(Arrays.equals(data, out.toByteArray()));
+	}
+
+	@Test
+	public void reset_recycles_segments() throws IOException {
+		final int[] released = new int[1];
+		final ByteSegmentPool countingPool = new ByteSegmentPool(16, 4){
+			@Override
+			public void release(final byte[] segment){
+				released[0]++;
+				super.release(segment);
+			}
+		};
+
+		final SegmentedByteArrayOutputStream out = new SegmentedByteArrayOutputStream(countingPool);
+		out.write(data(20));
+		out.reset();
+
+		assertEquals(2, released[0]);
+		assertEquals(0, out.size());
+		assertEquals(0, out.toByteArray().length);
+		assertEquals(-1, out.toInputStream().read());
+	}
+
+	@Test
+	public void pool_reuse(){
+		final byte[] segment = pool.acquire();
+		pool.release(segment);
+		assertSame(segment, pool.acquire());
+	}
+
+	private static byte[] data(final int length){
+		final byte[] data = new byte[length];
+		for(int i=0; i<length; i++){
+			data[i] = (byte)(i * 7);
+		}
+		return data;
+	}
+}
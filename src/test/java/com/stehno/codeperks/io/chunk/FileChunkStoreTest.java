@@ -0,0 +1,91 @@
+package com.stehno.codeperks.io.chunk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.stehno.codeperks.io.InputStreamFactory;
+
+public class FileChunkStoreTest {
+
+	private File directory;
+	private byte[] original;
+
+	@Before
+	public void before() throws IOException {
+		directory = File.createTempFile("chunks.", ".dir");
+		directory.delete();
+
+		original = new byte[1024 * 1024];
+		new Random(42).nextBytes(original);
+	}
+
+	@After
+	public void after() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void chunk_sizes_and_offsets() throws IOException {
+		final long[] expectedOffset = new long[1];
+		new Chunker(1024, 4096, 16384).chunk(factory(original), new ChunkCallback() {
+			@Override
+			public void chunk(final Chunk chunk) throws IOException {
+				assertEquals(expectedOffset[0], chunk.getOffset());
+				assertTrue(chunk.getLength() <= 16384);
+				if(chunk.getOffset() + chunk.getLength() < original.length){
+					assertTrue(chunk.getLength() >= 1024);
+				}
+				expectedOffset[0] += chunk.getLength();
+			}
+		});
+		assertEquals(original.length, expectedOffset[0]);
+	}
+
+	@Test
+	public void skips_unchanged_chunks() throws IOException {
+		final Chunker chunker = new Chunker();
+		final FileChunkStore store = new FileChunkStore(directory);
+
+		final List<Chunk> first = store.store(factory(original), chunker);
+		assertEquals(original.length, store.getStoredBytes());
+
+		// inserts a few bytes near the start, which shifts all of the following content
+		final byte[] modified = new byte[original.length + 5];
+		System.arraycopy(original, 0, modified, 0, 1000);
+		System.arraycopy("hello".getBytes(), 0, modified, 1000, 5);
+		System.arraycopy(original, 1000, modified, 1005, original.length - 1000);
+
+		final List<Chunk> second = store.store(factory(modified), chunker);
+		assertTrue("Too little was deduplicated: " + store.getSkippedBytes(), store.getSkippedBytes() > original.length * 9L / 10);
+
+		final ByteArrayOutputStream restored = new ByteArrayOutputStream();
+		store.restore(first, restored);
+		assertArrayEquals(original, restored.toByteArray());
+
+		restored.reset();
+		store.restore(second, restored);
+		assertArrayEquals(modified, restored.toByteArray());
+	}
+
+	private static InputStreamFactory<ByteArrayInputStream> factory(final byte[] bytes){
+		return new InputStreamFactory<ByteArrayInputStream>() {
+			@Override
+			public ByteArrayInputStream inputStream(){
+				return new ByteArrayInputStream(bytes);
+			}
+		};
+	}
+}
@@ -0,0 +1,86 @@
+package com.stehno.codeperks.io.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.stehno.codeperks.io.InputStreamCallback;
+
+public class CheckpointInputStreamTest {
+
+	private File file;
+	private CheckpointInputStreamFactory factory;
+
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("checkpoint.", ".txt");
+		final StringBuilder content = new StringBuilder();
+		for(int i=1; i<=100; i++){
+			content.append(i).append("\r\n");
+		}
+		FileUtils.writeStringToFile(file, content.toString());
+
+		// a zero interval checkpoints on every call
+		factory = new CheckpointInputStreamFactory(file, CheckpointInputStreamFactory.checkpointFileFor(file), 0);
+	}
+
+	@After
+	public void after(){
+		FileUtils.deleteQuietly(file);
+		FileUtils.deleteQuietly(factory.getCheckpointFile());
+	}
+
+	@Test
+	public void resumes_from_checkpoint() throws IOException {
+		try {
+			FileIoTemplate.inputFileCheckpointed(factory, new InputStreamCallback<CheckpointInputStream>() {
+				@Override
+				public void input(final CheckpointInputStream in) throws IOException {
+					assertFalse(in.isResumed());
+					long sum = 0;
+					String line;
+					while((line = in.readLine("UTF-8")) != null){
+						final int value = Integer.parseInt(line);
+						if(value == 61){
+							throw new IllegalStateException("interrupted");
+						}
+						sum += value;
+						in.checkpoint(sum);
+					}
+				}
+			});
+			fail("The processing should have been interrupted");
+		} catch(final IllegalStateException ise){
+			assertTrue(factory.getCheckpointFile().exists());
+		}
+
+		final long[] total = new long[1];
+		FileIoTemplate.inputFileCheckpointed(factory, new InputStreamCallback<CheckpointInputStream>() {
+			@Override
+			public void input(final CheckpointInputStream in) throws IOException {
+				assertTrue(in.isResumed());
+				long sum = (Long)in.getState();
+				assertEquals(1830, sum);
+
+				String line;
+				while((line = in.readLine("UTF-8")) != null){
+					sum += Integer.parseInt(line);
+					in.checkpoint(sum);
+				}
+				total[0] = sum;
+			}
+		});
+
+		assertEquals(5050, total[0]);
+		assertFalse(factory.getCheckpointFile().exists());
+	}
+}
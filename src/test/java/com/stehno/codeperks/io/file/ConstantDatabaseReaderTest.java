@@ -0,0 +1,67 @@
+package com.stehno.codeperks.io.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConstantDatabaseReaderTest {
+
+	private static final int COUNT = 10000;
+
+	private File file;
+
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("constant.", ".cdb");
+
+		// a small table memory forces the hash tables to be built over several passes
+		final ConstantDatabaseWriter writer = new ConstantDatabaseWriter(file).setTableMemory(4096);
+		try {
+			for(int i=0; i<COUNT; i++){
+				writer.add(("key-" + i).getBytes(), ("value-" + i).getBytes());
+			}
+			writer.add("key-7".getBytes(), "again".getBytes());
+		} finally {
+			writer.close();
+		}
+	}
+
+	@After
+	public void after(){
+		FileUtils.deleteQuietly(file);
+	}
+
+	@Test
+	public void lookups() throws IOException {
+		final ConstantDatabaseReader reader = new ConstantDatabaseReader(file);
+		try {
+			for(int i=0; i<COUNT; i++){
+				assertEquals("value-" + i, new String(reader.get(("key-" + i).getBytes())));
+			}
+			assertNull(reader.get("key-x".getBytes()));
+			assertNull(reader.get(new byte[0]));
+
+			final List<ByteBuffer> values = reader.getAll("key-7".getBytes());
+			assertEquals(2, values.size());
+			assertEquals("value-7", toString(values.get(0)));
+			assertEquals("again", toString(values.get(1)));
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static String toString(final ByteBuffer buffer){
+		final byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return new String(bytes);
+	}
+}
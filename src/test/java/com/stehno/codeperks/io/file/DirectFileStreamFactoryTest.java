@@ -0,0 +1,99 @@
+package com.stehno.codeperks.io.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.stehno.codeperks.io.InputStreamCallback;
+import com.stehno.codeperks.io.IoTemplate;
+import com.stehno.codeperks.io.OutputStreamCallback;
+
+public class DirectFileStreamFactoryTest {
+
+	private File file;
+
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("direct.", ".bin");
+	}
+
+	@Test
+	public void write_and_read_unaligned() throws IOException {
+		assertRoundTrip(data(10000), 4096);
+	}
+
+	@Test
+	public void write_and_read_aligned() throws IOException {
+		assertRoundTrip(data(8192), 4096);
+	}
+
+	@Test
+	public void write_and_read_empty() throws IOException {
+		assertRoundTrip(new byte[0], 4096);
+	}
+
+	@Test
+	public void file_io_template() throws IOException {
+		final byte[] data = data(5000);
+		FileIoTemplate.outputFileDirect(file, new OutputStreamCallback<OutputStream>() {
+			@Override
+			public void output(final OutputStream out) throws IOException {
+				out.write(data);
+			}
+		});
+
+		final byte[][] read = new byte[1][];
+		FileIoTemplate.inputFileDirect(file, new InputStreamCallback<InputStream>() {
+			@Override
+			public void input(final InputStream in) throws IOException {
+				read[0] = IOUtils.toByteArray(in);
+			}
+		});
+		assertTrue(Arrays.equals(data, read[0]));
+	}
+
+	@After
+	public void after(){
+		FileUtils.deleteQuietly(file);
+	}
+
+	private void assertRoundTrip(final byte[] data, final int bufferSize) throws IOException {
+		IoTemplate.output(new DirectFileOutputStreamFactory(file, bufferSize), new OutputStreamCallback<OutputStream>() {
+			@Override
+			public void output(final OutputStream out) throws IOException {
+				out.write(data, 0, data.length / 2);
+				for(int i=data.length / 2; i<data.length; i++){
+					out.write(data[i]);
+				}
+			}
+		});
+
+		assertEquals(data.length, file.length());
+
+		final InputStream in = new DirectFileInputStreamFactory(file, bufferSize).inputStream();
+		try {
+			assertTrue(Arrays.equals(data, IOUtils.toByteArray(in)));
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private static byte[] data(final int length){
+		final byte[] data = new byte[length];
+		for(int i=0; i<length; i++){
+			data[i] = (byte)(i * 13);
+		}
+		return data;
+	}
+}
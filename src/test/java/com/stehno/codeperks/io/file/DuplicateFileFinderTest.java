@@ -0,0 +1,65 @@
+package com.stehno.codeperks.io.file;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DuplicateFileFinderTest {
+
+	private File dir;
+
+	@Before
+	public void before() throws IOException {
+		dir = File.createTempFile("duplicates.", "");
+		dir.delete();
+		new File(dir, "nested/deeper").mkdirs();
+
+		write("a.txt", "alpha-bravo-charlie-delta");
+		write("nested/a-copy.txt", "alpha-bravo-charlie-delta");
+		write("nested/deeper/a-copy2.txt", "alpha-bravo-charlie-delta");
+		write("same-ends.txt", "alpha-XXXXX-charlie-delta");
+		write("b.txt", "short");
+		write("nested/b-copy.txt", "short");
+		write("unique.txt", "nothing like the others");
+		write("empty1.txt", "");
+		write("empty2.txt", "");
+	}
+
+	@Test
+	public void find() throws IOException {
+		final List<List<File>> duplicates = new DuplicateFileFinder().setPartialSize(4).find(dir);
+
+		assertEquals(2, duplicates.size());
+		assertEquals(Arrays.asList(file("a.txt"), file("nested/a-copy.txt"), file("nested/deeper/a-copy2.txt")), duplicates.get(0));
+		assertEquals(Arrays.asList(file("b.txt"), file("nested/b-copy.txt")), duplicates.get(1));
+	}
+
+	@Test
+	public void find_with_default_partial_size() throws IOException {
+		final List<List<File>> duplicates = new DuplicateFileFinder().setAlgorithm("MD5").find(file("a.txt"), file("same-ends.txt"), file("nested"));
+
+		assertEquals(1, duplicates.size());
+		assertEquals(3, duplicates.get(0).size());
+	}
+
+	@After
+	public void after(){
+		FileUtils.deleteQuietly(dir);
+	}
+
+	private File file(final String path){
+		return new File(dir, path);
+	}
+
+	private void write(final String path, final String content) throws IOException {
+		FileUtils.writeStringToFile(file(path), content);
+	}
+}
@@ -0,0 +1,84 @@
+package com.stehno.codeperks.io.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileComparisonTest {
+
+	private File a;
+	private File b;
+	private byte[] content;
+
+	@Before
+	public void before() throws IOException {
+		a = File.createTempFile("compare.", ".a");
+		b = File.createTempFile("compare.", ".b");
+		content = new byte[3 * 1024 * 1024 + 13];
+		new Random(7).nextBytes(content);
+		FileUtils.writeByteArrayToFile(a, content);
+	}
+
+	@After
+	public void after(){
+		FileUtils.deleteQuietly(a);
+		FileUtils.deleteQuietly(b);
+	}
+
+	@Test
+	public void identical_files() throws IOException {
+		FileUtils.writeByteArrayToFile(b, content);
+		assertTrue(FileIoTemplate.contentEquals(a, b));
+		assertEquals(-1, FileIoTemplate.firstDifference(a, b));
+	}
+
+	@Test
+	public void first_difference() throws IOException {
+		for(final int offset : new int[]{ 0, 7, 1024 * 1024 + 3, content.length - 1 }){
+			final byte[] changed = content.clone();
+			changed[offset]++;
+			FileUtils.writeByteArrayToFile(b, changed);
+
+			assertFalse(FileIoTemplate.contentEquals(a, b));
+			assertEquals(offset, FileIoTemplate.firstDifference(a, b));
+		}
+	}
+
+	@Test
+	public void size_mismatch() throws IOException {
+		final byte[] shorter = new byte[content.length - 100];
+		System.arraycopy(content, 0, shorter, 0, shorter.length);
+		FileUtils.writeByteArrayToFile(b, shorter);
+
+		assertFalse(FileIoTemplate.contentEquals(a, b));
+		assertEquals(shorter.length, FileIoTemplate.firstDifference(a, b));
+	}
+
+	@Test
+	public void parallel_comparison() throws IOException {
+		final byte[] large = new byte[(int)(FileComparison.PARALLEL_RANGE * 2 + 5)];
+		FileUtils.writeByteArrayToFile(a, large);
+		large[(int)FileComparison.PARALLEL_RANGE + 42] = 1;
+		large[large.length - 1] = 1;
+		FileUtils.writeByteArrayToFile(b, large);
+
+		final ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			assertFalse(FileIoTemplate.contentEquals(a, b, executor));
+			assertEquals(FileComparison.PARALLEL_RANGE + 42, FileIoTemplate.firstDifference(a, b, executor));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package com.stehno.codeperks.io.file;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.stehno.codeperks.io.IoTemplate;
+import com.stehno.codeperks.io.OutputStreamCallback;
+
+public class MappedFileOutputStreamTest {
+
+	private File file;
+
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("mapped.", ".bin");
+	}
+
+	@Test
+	public void output_mapped_file() throws IOException {
+		FileIoTemplate.outputMappedFile(file, 1000, new OutputStreamCallback<MappedFileOutputStream>() {
+			@Override
+			public void output(final MappedFileOutputStream out) throws IOException {
+				out.putInt(42).putLong(123456789L).putDouble(1.5);
+				out.write("done".getBytes());
+				assertEquals(24, out.position());
+			}
+		});
+
+		assertEquals(24, file.length());
+		final DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			assertEquals(42, in.readInt());
+			assertEquals(123456789L, in.readLong());
+			assertEquals(1.5, in.readDouble(), 0.0);
+			final byte[] bytes = new byte[4];
+			in.readFully(bytes);
+			assertEquals("done", new String(bytes));
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	@Test
+	public void grows_beyond_expected_size() throws IOException {
+		IoTemplate.output(new MappedFileOutputStreamFactory(file, 10, 16), new OutputStreamCallback<MappedFileOutputStream>() {
+			@Override
+			public void output(final MappedFileOutputStream out) throws IOException {
+				out.order(ByteOrder.LITTLE_ENDIAN);
+				for(int i=0; i<100; i++){
+					out.putLong(i);
+				}
+				out.put(ByteBuffer.wrap(new byte[37]));
+				out.write(7);
+			}
+		});
+
+		assertEquals(838, file.length());
+		final ByteBuffer content = ByteBuffer.wrap(FileUtils.readFileToByteArray(file)).order(ByteOrder.LITTLE_ENDIAN);
+		for(int i=0; i<100; i++){
+			assertEquals(i, content.getLong());
+		}
+		assertEquals(7, content.get(837));
+	}
+
+	@Test
+	public void empty() throws IOException {
+		new MappedFileOutputStream(file, 4096, 1024).close();
+		assertEquals(0, file.length());
+	}
+
+	@After
+	public void after(){
+		FileUtils.deleteQuietly(file);
+	}
+}
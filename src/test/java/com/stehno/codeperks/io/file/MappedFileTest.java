@@ -0,0 +1,66 @@
+package com.stehno.codeperks.io.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedFileTest {
+
+	private File file;
+	private byte[] content;
+
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("mapped.", ".bin");
+		content = new byte[1000];
+		for(int i=0; i<content.length; i++){
+			content[i] = (byte)i;
+		}
+		FileUtils.writeByteArrayToFile(file, content);
+	}
+
+	@After
+	public void after(){
+		FileUtils.deleteQuietly(file);
+	}
+
+	@Test
+	public void reads_across_windows() throws IOException {
+		final MappedFile mapped = new MappedFile(file, ByteOrder.BIG_ENDIAN, 64, 16);
+		try {
+			assertEquals(1000, mapped.size());
+			assertEquals(ByteBuffer.wrap(content, 62, 8).getLong(), mapped.getLong(62));
+
+			final ByteBuffer inWindow = mapped.slice(60, 16);
+			assertTrue(inWindow.isReadOnly());
+			assertEquals(16, inWindow.remaining());
+			assertEquals(60, inWindow.get(0));
+
+			final ByteBuffer copied = mapped.slice(10, 500);
+			final byte[] bytes = new byte[500];
+			copied.get(bytes);
+			assertArrayEquals(copyOf(10, 500), bytes);
+
+			assertArrayEquals(copyOf(100, 700), IOUtils.toByteArray(mapped.openStream(100, 700)));
+		} finally {
+			mapped.close();
+		}
+	}
+
+	private byte[] copyOf(final int offset, final int length){
+		final byte[] bytes = new byte[length];
+		System.arraycopy(content, offset, bytes, 0, length);
+		return bytes;
+	}
+}
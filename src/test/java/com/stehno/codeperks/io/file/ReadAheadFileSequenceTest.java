@@ -0,0 +1,122 @@
+package com.stehno.codeperks.io.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.stehno.codeperks.io.InputStreamCallback;
+
+public class ReadAheadFileSequenceTest {
+
+	private final List<File> files = new ArrayList<File>();
+
+	@Before
+	public void before() throws IOException {
+		for(int i=0; i<5; i++){
+			final File file = File.createTempFile("readahead.", ".txt");
+			final StringBuilder content = new StringBuilder();
+			for(int j=0; j<i * 100; j++){
+				content.append("file-").append(i);
+			}
+			FileUtils.writeStringToFile(file, content.toString());
+			files.add(file);
+		}
+	}
+
+	@Test
+	public void input_files() throws IOException {
+		final List<String> contents = new ArrayList<String>();
+		FileIoTemplate.inputFiles(files, 2, new InputStreamCallback<BufferedInputStream>() {
+			@Override
+			public void input(final BufferedInputStream in) throws IOException {
+				contents.add(IOUtils.toString(in));
+			}
+		});
+
+		assertEquals(files.size(), contents.size());
+		for(int i=0; i<files.size(); i++){
+			assertEquals(FileUtils.readFileToString(files.get(i)), contents.get(i));
+		}
+	}
+
+	@Test
+	public void small_prefetch() throws IOException {
+		final ReadAheadFileSequence sequence = new ReadAheadFileSequence(files, 1, 16, null);
+		try {
+			for(final File file : files){
+				assertEquals(file, sequence.peek());
+				final BufferedInputStream in = sequence.next();
+				assertEquals(FileUtils.readFileToString(file), IOUtils.toString(in));
+				in.close();
+			}
+			assertFalse(sequence.hasNext());
+		} finally {
+			sequence.close();
+		}
+	}
+
+	@Test
+	public void opens_depth_ahead() throws IOException {
+		final AtomicInteger opened = new AtomicInteger();
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()) {
+			@Override
+			public void execute(final Runnable command){
+				opened.incrementAndGet();
+				super.execute(command);
+			}
+		};
+
+		final ReadAheadFileSequence sequence = new ReadAheadFileSequence(files, 1, 16, executor);
+		try {
+			assertEquals(1, opened.get());
+			for(int i=0; i<files.size(); i++){
+				sequence.next().close();
+				assertEquals(Math.min(i + 2, files.size()), opened.get());
+			}
+		} finally {
+			sequence.close();
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected=FileNotFoundException.class)
+	public void missing_file() throws IOException {
+		final ReadAheadFileSequence sequence = new ReadAheadFileSequence(Arrays.asList(new File("does-not-exist.txt")), 1);
+		try {
+			sequence.next();
+		} finally {
+			sequence.close();
+		}
+	}
+
+	@Test
+	public void close_before_consumed() throws IOException {
+		final ReadAheadFileSequence sequence = new ReadAheadFileSequence(files, 3);
+		sequence.next().close();
+		sequence.close();
+	}
+
+	@After
+	public void after(){
+		for(final File file : files){
+			FileUtils.deleteQuietly(file);
+		}
+	}
+}
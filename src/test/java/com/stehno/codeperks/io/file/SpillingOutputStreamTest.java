@@ -0,0 +1,129 @@
+package com.stehno.codeperks.io.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import com.stehno.codeperks.io.IoTemplate;
+import com.stehno.codeperks.io.OutputStreamCallback;
+
+public class SpillingOutputStreamTest {
+
+	private SpillingOutputStream out;
+
+	@Test
+	public void in_memory() throws IOException {
+		final byte[] data = data(100);
+		out = new SpillingOutputStream(128);
+		IoTemplate.output(out, new BytesCallback(data));
+
+		assertTrue(out.isInMemory());
+		assertNull(out.getFile());
+		assertEquals(100, out.size());
+		assertContent(data);
+	}
+
+	@Test
+	public void spilled() throws IOException {
+		final byte[] data = data(1000);
+		out = new SpillingOutputStream(128);
+		IoTemplate.output(out, new BytesCallback(data));
+
+		assertFalse(out.isInMemory());
+		assertNotNull(out.getFile());
+		assertEquals(1000, out.size());
+		assertEquals(1000, out.getFile().length());
+		assertContent(data);
+
+		final File file = out.getFile();
+		out.dispose();
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void spilled_single_bytes() throws IOException {
+		out = new SpillingOutputStream(4);
+		for(int i=0; i<10; i++){
+			out.write(i);
+		}
+		out.close();
+
+		assertFalse(out.isInMemory());
+		assertContent(new byte[]{0,1,2,3,4,5,6,7,8,9});
+	}
+
+	@Test
+	public void factory() throws IOException {
+		final byte[] data = data(64);
+		IoTemplate.output(new SpillingOutputStreamFactory(16), new OutputStreamCallback<SpillingOutputStream>() {
+			@Override
+			public void output(final SpillingOutputStream sos) throws IOException {
+				out = sos;
+				sos.write(data);
+			}
+		});
+
+		assertFalse(out.isInMemory());
+		assertContent(data);
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void content_before_close() throws IOException {
+		out = new SpillingOutputStream(16);
+		out.write(1);
+		out.toByteBuffer();
+	}
+
+	@After
+	public void after(){
+		if(out != null){
+			out.dispose();
+		}
+	}
+
+	private void assertContent(final byte[] data) throws IOException {
+		final ByteBuffer buffer = out.toByteBuffer();
+		final byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		assertTrue(Arrays.equals(data, bytes));
+
+		assertTrue(Arrays.equals(data, IOUtils.toByteArray(out.toInputStream())));
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		out.writeTo(baos);
+		assertTrue(Arrays.equals(data, baos.toByteArray()));
+	}
+
+	private static byte[] data(final int length){
+		final byte[] data = new byte[length];
+		for(int i=0; i<length; i++){
+			data[i] = (byte)(i * 31);
+		}
+		return data;
+	}
+
+	private static final class BytesCallback implements OutputStreamCallback<SpillingOutputStream> {
+		private final byte[] data;
+
+		BytesCallback(final byte[] data){
+			this.data = data;
+		}
+
+		@Override
+		public void output(final SpillingOutputStream sos) throws IOException {
+			sos.write(data);
+		}
+	}
+}
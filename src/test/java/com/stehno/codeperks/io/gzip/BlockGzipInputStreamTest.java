@@ -0,0 +1,165 @@
+package com.stehno.codeperks.io.gzip;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.stehno.codeperks.io.InputStreamCallback;
+import com.stehno.codeperks.io.IoTemplate;
+
+public class BlockGzipInputStreamTest {
+
+	private static final byte[] DATA = data(300000);
+
+	private File file;
+
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("blockgzip.", ".gz");
+		final OutputStream out = new BlockGzipOutputStream(new FileOutputStream(file));
+		try {
+			out.write(DATA, 0, 1000);
+			out.write(DATA, 1000, DATA.length - 1000);
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test
+	public void index() throws IOException {
+		final BlockGzipIndex index = BlockGzipIndex.build(file);
+		assertEquals(5, index.size());
+		assertEquals(DATA.length, index.getUncompressedLength());
+		assertEquals(0, index.blockFor(0));
+		assertEquals(1, index.blockFor(BlockGzipOutputStream.BLOCK_DATA_SIZE));
+		assertEquals(4, index.blockFor(DATA.length - 1));
+		assertEquals(5, index.blockFor(DATA.length));
+	}
+
+	@Test
+	public void readable_as_gzip() throws IOException {
+		assertTrue(Arrays.equals(DATA, IOUtils.toByteArray(new GZIPInputStream(new FileInputStream(file)))));
+	}
+
+	@Test
+	public void sequential_read() throws IOException {
+		IoTemplate.input(new BlockGzipInputStreamFactory(file), new InputStreamCallback<BlockGzipInputStream>() {
+			@Override
+			public void input(final BlockGzipInputStream in) throws IOException {
+				assertEquals(DATA.length, in.length());
+				assertTrue(Arrays.equals(DATA, IOUtils.toByteArray(in)));
+				assertEquals(DATA.length, in.position());
+			}
+		});
+	}
+
+	@Test
+	public void seek() throws IOException {
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final BlockGzipInputStream in = new BlockGzipInputStreamFactory(file, executor, 3).inputStream();
+			try {
+				assertSeek(in, 200000);
+				assertSeek(in, 10);
+				assertSeek(in, BlockGzipOutputStream.BLOCK_DATA_SIZE * 2);
+
+				in.seek(DATA.length);
+				assertEquals(-1, in.read());
+				assertEquals(DATA.length, in.position());
+
+				in.seek(100);
+				assertEquals(1000, in.skip(1000));
+				assertEquals(1100, in.position());
+				assertEquals(DATA[1100] & 0xff, in.read());
+			} finally {
+				in.close();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void concatenated_gzip_members() throws IOException {
+		final OutputStream out = new FileOutputStream(file);
+		try {
+			for(int i=0; i<3; i++){
+				final GZIPOutputStream gzip = new GZIPOutputStream(new NonClosingOutputStream(out));
+				gzip.write(DATA, i * 100000, 100000);
+				gzip.close();
+			}
+		} finally {
+			out.close();
+		}
+
+		final BlockGzipInputStreamFactory factory = new BlockGzipInputStreamFactory(file);
+		assertEquals(3, factory.getIndex().size());
+
+		final BlockGzipInputStream in = factory.inputStream();
+		try {
+			assertSeek(in, 150000);
+			in.seek(0);
+			assertTrue(Arrays.equals(DATA, IOUtils.toByteArray(in)));
+		} finally {
+			in.close();
+		}
+	}
+
+	@After
+	public void after(){
+		FileUtils.deleteQuietly(file);
+	}
+
+	private void assertSeek(final BlockGzipInputStream in, final int offset) throws IOException {
+		in.seek(offset);
+		assertEquals(offset, in.position());
+
+		final byte[] bytes = new byte[500];
+		int read = 0;
+		while(read < bytes.length){
+			read += in.read(bytes, read, bytes.length - read);
+		}
+		assertTrue(Arrays.equals(Arrays.copyOfRange(DATA, offset, offset + 500), bytes));
+	}
+
+	private static byte[] data(final int length){
+		final byte[] data = new byte[length];
+		for(int i=0; i<length; i++){
+			data[i] = (byte)((i / 7) ^ (i % 251));
+		}
+		return data;
+	}
+
+	private static final class NonClosingOutputStream extends FilterOutputStream {
+		NonClosingOutputStream(final OutputStream out){
+			super(out);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
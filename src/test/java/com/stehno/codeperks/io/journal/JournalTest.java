@@ -0,0 +1,127 @@
+package com.stehno.codeperks.io.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalTest {
+
+	private File directory;
+
+	@Before
+	public void before() throws IOException {
+		directory = File.createTempFile("journal.", ".dir");
+		directory.delete();
+	}
+
+	@After
+	public void after() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	@Test
+	public void append_and_read_across_segments() throws IOException {
+		final Journal journal = new Journal(directory, 256);
+		try {
+			for(int i=0; i<100; i++){
+				journal.append(("record-" + i).getBytes());
+			}
+		} finally {
+			journal.close();
+		}
+		assertTrue(Journal.segments(directory).length > 1);
+
+		final JournalReader reader = new JournalReader(directory);
+		try {
+			for(int i=0; i<100; i++){
+				assertEquals("record-" + i, new String(reader.poll()));
+			}
+			assertNull(reader.poll());
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void tail_while_appending() throws Exception {
+		final Journal journal = new Journal(directory, 4096);
+		final Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run(){
+				try {
+					for(int i=0; i<5000; i++){
+						journal.append(("record-" + i).getBytes());
+					}
+				} catch(final IOException ioe){
+					throw new RuntimeException(ioe);
+				}
+			}
+		});
+		writer.start();
+
+		final JournalReader reader = new JournalReader(directory);
+		try {
+			final long deadline = System.currentTimeMillis() + 30000;
+			int count = 0;
+			while(count < 5000 && System.currentTimeMillis() < deadline){
+				final byte[] record = reader.poll();
+				if(record != null){
+					assertEquals("record-" + count, new String(record));
+					count++;
+				}
+			}
+			assertEquals(5000, count);
+		} finally {
+			reader.close();
+			writer.join();
+			journal.close();
+		}
+	}
+
+	@Test
+	public void recovers_after_torn_record() throws IOException {
+		Journal journal = new Journal(directory, 4096);
+		journal.append("one".getBytes());
+		journal.append("two".getBytes());
+		journal.close();
+
+		// simulates a crash part way through a third record
+		final RandomAccessFile raf = new RandomAccessFile(Journal.segments(directory)[0], "rw");
+		try {
+			raf.seek(Journal.HEADER_LENGTH + 2 * (Journal.RECORD_HEADER_LENGTH + 3));
+			raf.writeInt(Journal.RECORD_HEADER_LENGTH + 5);
+			raf.writeInt(12345);
+			raf.write("thr".getBytes());
+		} finally {
+			raf.close();
+		}
+
+		journal = new Journal(directory, 4096);
+		journal.append("three".getBytes());
+		journal.close();
+
+		final List<String> records = new ArrayList<String>();
+		final JournalReader reader = new JournalReader(directory);
+		byte[] record;
+		while((record = reader.poll()) != null){
+			records.add(new String(record));
+		}
+		reader.close();
+
+		assertEquals(3, records.size());
+		assertEquals("one", records.get(0));
+		assertEquals("two", records.get(1));
+		assertEquals("three", records.get(2));
+	}
+}
@@ -0,0 +1,81 @@
+package com.stehno.codeperks.io.search;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileSearchTest {
+
+	private static final String[] PATTERNS = { "ERROR", "ERR", "FATAL", "RORE" };
+
+	private File file;
+	private byte[] content;
+
+	@Before
+	public void before() throws IOException {
+		// a small alphabet makes partial and overlapping matches common
+		final Random random = new Random(11);
+		content = new byte[3 * 1024 * 1024 + 17];
+		final byte[] alphabet = "EROFATL ".getBytes();
+		for(int i=0; i<content.length; i++){
+			content[i] = alphabet[random.nextInt(alphabet.length)];
+		}
+
+		file = File.createTempFile("search.", ".log");
+		FileUtils.writeByteArrayToFile(file, content);
+	}
+
+	@After
+	public void after(){
+		FileUtils.deleteQuietly(file);
+	}
+
+	@Test
+	public void single_pattern() throws IOException {
+		assertEquals(naive(0), new FileSearch(PATTERNS[0]).find(file));
+	}
+
+	@Test
+	public void multiple_patterns() throws IOException {
+		assertEquals(naive(0, 1, 2, 3), new FileSearch(PATTERNS).find(file));
+	}
+
+	@Test
+	public void parallel_ranges() throws IOException {
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			assertEquals(naive(0), new FileSearch(PATTERNS[0]).setExecutor(executor).setRangeSize(1000).find(file));
+			assertEquals(naive(0, 1, 2, 3), new FileSearch(PATTERNS).setExecutor(executor).setRangeSize(4099).find(file));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private List<Match> naive(final int... patterns){
+		final List<Match> matches = new ArrayList<Match>();
+		for(int offset=0; offset<content.length; offset++){
+			for(int p=0; p<patterns.length; p++){
+				final byte[] pattern = PATTERNS[patterns[p]].getBytes();
+				int i = 0;
+				while(i < pattern.length && offset + i < content.length && content[offset + i] == pattern[i]){
+					i++;
+				}
+				if(i == pattern.length){
+					matches.add(new Match(offset, p));
+				}
+			}
+		}
+		return matches;
+	}
+}
@@ -0,0 +1,97 @@
+package com.stehno.codeperks.io.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.stehno.codeperks.io.OutputStreamCallback;
+import com.stehno.codeperks.io.file.FileIoTemplate;
+
+public class SortedTableReaderTest {
+
+	private static final int COUNT = 5000;
+
+	private File file;
+	private SortedTableReader reader;
+
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("table.", ".sst");
+		FileIoTemplate.outputFile(file, new OutputStreamCallback<BufferedOutputStream>() {
+			@Override
+			public void output(final BufferedOutputStream out) throws IOException {
+				final SortedTableWriter writer = new SortedTableWriter(out, COUNT, 256, 10);
+				for(int i=0; i<COUNT; i++){
+					writer.add(key(i * 2), ("value-" + (i * 2)).getBytes());
+				}
+				writer.finish();
+			}
+		});
+		reader = new SortedTableReader(file);
+	}
+
+	@After
+	public void after() throws IOException {
+		reader.close();
+		FileUtils.deleteQuietly(file);
+	}
+
+	@Test
+	public void point_lookups() throws IOException {
+		assertEquals(COUNT, reader.size());
+		for(int i=0; i<COUNT * 2; i++){
+			final byte[] value = reader.get(key(i));
+			if(i % 2 == 0){
+				assertEquals("value-" + i, new String(value));
+			} else {
+				assertNull(value);
+			}
+		}
+		assertNull(reader.get("a".getBytes()));
+		assertNull(reader.get("z".getBytes()));
+	}
+
+	@Test
+	public void range_scan() throws IOException {
+		final Iterator<SortedTableEntry> entries = reader.scan(key(101), key(121));
+		for(int i=102; i<121; i+=2){
+			final SortedTableEntry entry = entries.next();
+			assertEquals(new String(key(i)), new String(entry.getKey()));
+			assertEquals("value-" + i, new String(entry.getValueBytes()));
+		}
+		assertFalse(entries.hasNext());
+	}
+
+	@Test
+	public void full_scan() throws IOException {
+		int count = 0;
+		final Iterator<SortedTableEntry> entries = reader.scan(null, null);
+		while(entries.hasNext()){
+			assertEquals(new String(key(count * 2)), new String(entries.next().getKey()));
+			count++;
+		}
+		assertEquals(COUNT, count);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void out_of_order_keys() throws IOException {
+		final SortedTableWriter writer = new SortedTableWriter(new ByteArrayOutputStream(), 2);
+		writer.add(key(2), new byte[0]);
+		writer.add(key(1), new byte[0]);
+	}
+
+	private static byte[] key(final int i){
+		return String.format("key-%08d", i).getBytes();
+	}
+}
@@ -0,0 +1,80 @@
+package com.stehno.codeperks.io.zip;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+public class AdaptiveCompressionPolicyTest {
+
+	private static final long SIZE = 1024 * 1024;
+
+	@Test
+	public void adjusts_level(){
+		final AdaptiveCompressionPolicy policy = new AdaptiveCompressionPolicy(100);
+		assertEquals(6, policy.compressionFor("entry", new byte[0], 0));
+
+		// 50 MB/s is too slow
+		policy.entryCompressed("slow", 6, SIZE, SIZE * 45 / 100, 20000000L);
+		assertEquals(5, policy.getLevel());
+
+		// measurements of an abandoned level only update its ratio
+		policy.entryCompressed("stale", 6, SIZE, SIZE * 45 / 100, 20000000L);
+		assertEquals(5, policy.getLevel());
+
+		// 200 MB/s is fast enough to raise the level, but only while the next level compresses better
+		policy.entryCompressed("fast", 5, SIZE, SIZE / 2, 5000000L);
+		assertEquals(6, policy.getLevel());
+		policy.entryCompressed("slow", 6, SIZE, SIZE * 70 / 100, 20000000L);
+		assertEquals(5, policy.getLevel());
+		policy.entryCompressed("fast", 5, SIZE, SIZE / 2, 5000000L);
+		assertEquals(5, policy.getLevel());
+
+		// within tolerance, and small entries, leave the level alone
+		policy.entryCompressed("on target", 5, SIZE, SIZE / 2, 10000000L);
+		policy.entryCompressed("small", 5, 1024, 512, 1000000000L);
+		assertEquals(5, policy.getLevel());
+	}
+
+	@Test
+	public void bounded_levels(){
+		final AdaptiveCompressionPolicy policy = new AdaptiveCompressionPolicy(100).setLevels(2, 3);
+		assertEquals(2, policy.getLevel());
+		for(int i=0; i<5; i++){
+			policy.entryCompressed("slow", policy.getLevel(), SIZE, SIZE / 2, 1000000000L);
+		}
+		assertEquals(2, policy.getLevel());
+	}
+
+	@Test
+	public void delegate_stores(){
+		final AdaptiveCompressionPolicy policy = new AdaptiveCompressionPolicy(100, new ContentAwareCompressionPolicy());
+		assertEquals(Deflater.NO_COMPRESSION, policy.compressionFor("photo.jpg", new byte[0], 0));
+		assertEquals(6, policy.compressionFor("notes.txt", new byte[0], 0));
+	}
+
+	@Test
+	public void zipBuilder() throws IOException {
+		// an unreachable target drives the level down to the fastest
+		final AdaptiveCompressionPolicy policy = new AdaptiveCompressionPolicy(1000000000);
+		final byte[] data = new byte[256 * 1024];
+		final Random random = new Random(29);
+		for(int i=0; i<data.length; i++){
+			data[i] = (byte)('a' + random.nextInt(8));
+		}
+
+		final ZipBuilder builder = new ZipBuilder(new ByteArrayOutputStream()).setCompressionPolicy(policy);
+		for(int i=0; i<8; i++){
+			builder.addEntry("entry-" + i, data);
+		}
+		builder.zip();
+
+		assertEquals(Deflater.BEST_SPEED, policy.getLevel());
+		assertTrue(Double.isNaN(policy.getThroughput()) || policy.getThroughput() > 0);
+	}
+}
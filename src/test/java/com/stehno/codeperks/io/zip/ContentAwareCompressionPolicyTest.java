@@ -0,0 +1,90 @@
+package com.stehno.codeperks.io.zip;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class ContentAwareCompressionPolicyTest {
+
+	private static final byte[] TEXT = "The quick brown fox jumps over the lazy dog. ".getBytes();
+	private static final byte[] PNG = { (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 13 };
+
+	private final ContentAwareCompressionPolicy policy = new ContentAwareCompressionPolicy(Deflater.BEST_SPEED);
+
+	@Test
+	public void extensions(){
+		assertEquals(Deflater.NO_COMPRESSION, policy.compressionFor("photos/cat.JPG", TEXT, TEXT.length));
+		assertEquals(Deflater.NO_COMPRESSION, policy.compressionFor("docs/report.pdf", TEXT, TEXT.length));
+		assertEquals(Deflater.BEST_SPEED, policy.compressionFor("data/notes.txt", random(4096), 4096));
+
+		policy.addStoredExtensions("txt");
+		assertEquals(Deflater.NO_COMPRESSION, policy.compressionFor("data/notes.txt", TEXT, TEXT.length));
+	}
+
+	@Test
+	public void content(){
+		assertEquals(Deflater.NO_COMPRESSION, policy.compressionFor("a.dir/image", PNG, PNG.length));
+		assertEquals(Deflater.NO_COMPRESSION, policy.compressionFor("blob", random(4096), 4096));
+		assertEquals(Deflater.BEST_SPEED, policy.compressionFor("blob", repeat(TEXT, 4096), 4096));
+		assertEquals(Deflater.BEST_SPEED, policy.compressionFor("tiny", random(16), 16));
+	}
+
+	@Test
+	public void entropy(){
+		assertEquals(0.0, ContentAwareCompressionPolicy.entropy(new byte[100], 100), 0.0001);
+
+		final byte[] all = new byte[256];
+		for(int i=0; i<all.length; i++){
+			all[i] = (byte)i;
+		}
+		assertEquals(8.0, ContentAwareCompressionPolicy.entropy(all, all.length), 0.0001);
+	}
+
+	@Test
+	public void zipBuilder() throws IOException {
+		final File zipfile = File.createTempFile("policytest.", ".zip");
+		try {
+			final ZipEntry explicit = new ZipEntry("explicit.jpg");
+			explicit.setMethod(ZipEntry.DEFLATED);
+
+			new ZipBuilder(new FileOutputStream(zipfile))
+				.setCompressionPolicy(policy)
+				.addEntry("text", repeat(TEXT, 100000))
+				.addEntry("random", new ByteArrayInputStream(random(100000)))
+				.addEntry(explicit, TEXT)
+				.zip();
+
+			final ZipFile zf = new ZipFile(zipfile);
+			assertEquals(ZipEntry.DEFLATED, zf.getEntry("text").getMethod());
+			assertEquals(ZipEntry.STORED, zf.getEntry("random").getMethod());
+			assertEquals(ZipEntry.DEFLATED, zf.getEntry("explicit.jpg").getMethod());
+			zf.close();
+		} finally {
+			FileUtils.deleteQuietly(zipfile);
+		}
+	}
+
+	private static byte[] random(final int length){
+		final byte[] bytes = new byte[length];
+		new Random(5).nextBytes(bytes);
+		return bytes;
+	}
+
+	private static byte[] repeat(final byte[] bytes, final int length){
+		final byte[] repeated = new byte[length];
+		for(int i=0; i<length; i++){
+			repeated[i] = bytes[i % bytes.length];
+		}
+		return repeated;
+	}
+}
@@ -0,0 +1,167 @@
+package com.stehno.codeperks.io.zip;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZipArchiveReaderTest {
+
+	private static final int ENTRIES = 200;
+
+	private File zipfile;
+	private byte[][] data;
+
+	@Before
+	public void before() throws IOException {
+		zipfile = File.createTempFile("zipreadertest.", ".zip");
+
+		final Random random = new Random(13);
+		data = new byte[ENTRIES][];
+		final ZipBuilder builder = new ZipBuilder(new FileOutputStream(zipfile));
+		for(int i=0; i<ENTRIES; i++){
+			data[i] = new byte[random.nextInt(20000)];
+			for(int b=0; b<data[i].length; b++){
+				data[i][b] = (byte)(i % 2 == 0 ? random.nextInt() : 'a' + random.nextInt(4));
+			}
+
+			final ZipEntry entry = new ZipEntry(name(i));
+			entry.setMethod(i % 3 == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED);
+			if(i % 10 == 0){
+				entry.setComment("comment " + i);
+			}
+			builder.addEntry(entry, data[i]);
+		}
+		builder.zip();
+	}
+
+	@After
+	public void after(){
+		FileUtils.deleteQuietly(zipfile);
+	}
+
+	@Test
+	public void entries() throws IOException {
+		final ZipArchiveReader reader = new ZipArchiveReader(zipfile);
+		final ZipFile zf = new ZipFile(zipfile);
+		try {
+			assertEquals(ENTRIES, reader.size());
+			assertEquals(ENTRIES, reader.getNames().size());
+			assertFalse(reader.contains("missing"));
+			assertNull(reader.getEntry("missing"));
+			assertNull(reader.getInputStream("missing"));
+
+			for(int i=0; i<ENTRIES; i++){
+				final String name = name(i);
+				assertTrue(reader.contains(name));
+				assertEquals(name, reader.getNames().get(i));
+
+				final ZipEntry expected = zf.getEntry(name);
+				final ZipEntry entry = reader.getEntry(name);
+				assertEquals(expected.getMethod(), entry.getMethod());
+				assertEquals(expected.getCrc(), entry.getCrc());
+				assertEquals(expected.getSize(), entry.getSize());
+				assertEquals(expected.getCompressedSize(), entry.getCompressedSize());
+				assertEquals(expected.getTime(), entry.getTime());
+				assertEquals(expected.getComment(), entry.getComment());
+
+				assertArrayEquals(data[i], IOUtils.toByteArray(reader.getInputStream(name)));
+				assertArrayEquals(data[i], bytes(reader.getBuffer(name)));
+			}
+		} finally {
+			zf.close();
+			reader.close();
+		}
+	}
+
+	@Test
+	public void concurrent_readers() throws Exception {
+		final ZipArchiveReader reader = new ZipArchiveReader(zipfile);
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for(int t=0; t<8; t++){
+				final int seed = t;
+				futures.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws IOException {
+						final Random random = new Random(seed);
+						for(int n=0; n<200; n++){
+							final int i = random.nextInt(ENTRIES);
+							final InputStream in = reader.getInputStream(name(i));
+							try {
+								if(!Arrays.equals(data[i], IOUtils.toByteArray(in))){
+									return false;
+								}
+							} finally {
+								in.close();
+							}
+						}
+						return true;
+					}
+				}));
+			}
+			for(final Future<Boolean> future : futures){
+				assertTrue(future.get());
+			}
+		} finally {
+			executor.shutdown();
+			reader.close();
+		}
+	}
+
+	@Test
+	public void zip64_entry_count() throws IOException {
+		final File large = File.createTempFile("zipreadertest.", ".zip");
+		try {
+			final ZipBuilder builder = new ZipBuilder(new FileOutputStream(large)).useNoCompression();
+			for(int i=0; i<70000; i++){
+				builder.addEntry(Integer.toString(i), new byte[]{ (byte)i });
+			}
+			builder.zip();
+
+			final ZipArchiveReader reader = new ZipArchiveReader(large);
+			try {
+				assertEquals(70000, reader.size());
+				assertEquals((byte)69999, reader.getBuffer("69999").get(0));
+			} finally {
+				reader.close();
+			}
+		} finally {
+			FileUtils.deleteQuietly(large);
+		}
+	}
+
+	private static String name(final int i){
+		return "dir-" + (i % 7) + "/entry-\u00e9-" + i;
+	}
+
+	private static byte[] bytes(final ByteBuffer buffer){
+		final byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+}
@@ -20,15 +20,23 @@ import com.stehno.codeperks.io.zip.ZipBuilder;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -36,6 +44,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.stehno.codeperks.io.DeflaterPool;
+
 public class ZipBuilderTest {
 
 	private static final String[] ENTRY_NAME = {"ZipEntryName","AnotherZipEntryName"};
@@ -138,6 +148,367 @@ public class ZipBuilderTest {
 		}
 	}
 
+	@Test
+	public void addEntry_Parallel() throws Exception {
+		final Random random = new Random(7);
+		final byte[][] data = new byte[20][];
+		for(int i=0; i<data.length; i++){
+			// a mix of tiny, compressible and spilled random entries
+			data[i] = new byte[i % 3 == 0 ? i : random.nextInt(200000)];
+			if(i % 2 == 0){
+				random.nextBytes(data[i]);
+			}
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			zipBuilder.useParallelCompression(executor, 3).setSpillThreshold(64 * 1024);
+			for(int i=0; i<data.length; i++){
+				final ZipEntry entry = new ZipEntry("entry-" + i);
+				if(i % 5 == 0){
+					entry.setMethod(ZipEntry.STORED);
+				}
+				if(i % 2 == 0){
+					zipBuilder.addEntry(entry, data[i]);
+				} else {
+					zipBuilder.addEntry(entry, new ByteArrayInputStream(data[i]));
+				}
+			}
+			zipBuilder.zip();
+		} finally {
+			executor.shutdown();
+		}
+
+		final ZipFile zf = getZipFile();
+		assertEquals(data.length, zf.size());
+		for(int i=0; i<data.length; i++){
+			assertZipEntry(zf, "entry-" + i, null, data[i]);
+		}
+		zf.close();
+
+		// the entries are written in the order they were added
+		final ZipInputStream zis = new ZipInputStream(new FileInputStream(zipfile));
+		try {
+			for(int i=0; i<data.length; i++){
+				assertEquals("entry-" + i, zis.getNextEntry().getName());
+				assertTrue(Arrays.equals(data[i], IOUtils.toByteArray(zis)));
+			}
+		} finally {
+			IOUtils.closeQuietly(zis);
+		}
+	}
+
+	@Test
+	public void addEntry_Parallel_WriteFails() throws Exception {
+		final int spillFiles = countSpillFiles();
+		final Random random = new Random(17);
+		final OutputStream failing = new FailingOutputStream(200000);
+
+		final TrackedInputStream[] streams = new TrackedInputStream[30];
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final ZipBuilder builder = new ZipBuilder(failing).useParallelCompression(executor, streams.length).setSpillThreshold(1024);
+			try {
+				for(int i=0; i<streams.length; i++){
+					final byte[] data = new byte[100000];
+					random.nextBytes(data);
+					streams[i] = new TrackedInputStream(data);
+					builder.addEntry("entry-" + i, streams[i]);
+				}
+				builder.zip();
+				fail("The write failure should have been reported");
+			} catch(final IOException ioe){
+				assertEquals("Disk full", ioe.getMessage());
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		// the entries added after the failure are never given to the builder
+		for(final TrackedInputStream stream : streams){
+			assertTrue(stream == null || stream.closed);
+		}
+		assertEquals(spillFiles, countSpillFiles());
+	}
+
+	@Test
+	public void addEntry_WriteFails_ReleasesDeflater() throws Exception {
+		final byte[] data = new byte[300000];
+		new Random(19).nextBytes(data);
+
+		final DeflaterPool pool = DeflaterPool.shared();
+		final int idle = pool.getIdleCount(2, true);
+		for(int i=0; i<2; i++){
+			final ZipBuilder builder = new ZipBuilder(new FailingOutputStream(100000)).setCompressionLevel(2);
+			try {
+				if(i == 0){
+					builder.addEntry("entry", data);
+				} else {
+					builder.addEntry("entry", new ByteArrayInputStream(data));
+				}
+				fail("The write failure should have been reported");
+			} catch(final IOException ioe){
+				assertEquals("Disk full", ioe.getMessage());
+			}
+
+			// the deflater of the failed entry is back in the pool, ready for the next one
+			assertEquals(idle + 1, pool.getIdleCount(2, true));
+			pool.acquire(2, true).end();
+		}
+	}
+
+	@Test
+	public void addEntry_Stored() throws Exception {
+		final byte[] large = new byte[300000];
+		new Random(3).nextBytes(large);
+		final File file = createTempFile();
+		FileUtils.writeByteArrayToFile(file, large);
+
+		zipBuilder.useNoCompression().setSpillThreshold(64 * 1024);
+		zipBuilder.addEntry(ENTRY_NAME[0], DATA_ARRAY[0]);
+		zipBuilder.addEntry(ENTRY_NAME[1], new ByteArrayInputStream(large));
+		zipBuilder.addEntry("file", file);
+		zipBuilder.zip();
+		FileUtils.deleteQuietly(file);
+
+		final ZipFile zf = getZipFile();
+		assertEquals(3, zf.size());
+		assertZipEntry(zf, ENTRY_NAME[0], null, DATA_ARRAY[0]);
+		assertZipEntry(zf, ENTRY_NAME[1], null, large);
+		assertZipEntry(zf, "file", null, large);
+		assertEquals(ZipEntry.STORED, zf.getEntry("file").getMethod());
+		assertEquals(large.length, zf.getEntry("file").getCompressedSize());
+		zf.close();
+	}
+
+	@Test
+	public void reuseEntriesFrom() throws Exception {
+		final byte[][] data = new byte[10][];
+		for(int i=0; i<data.length; i++){
+			data[i] = ("entry " + i + " content, repeated. entry " + i + " content, repeated.").getBytes();
+		}
+		final File file = createTempFile();
+		FileUtils.writeByteArrayToFile(file, data[9]);
+
+		final File previousFile = createTempFile();
+		final ZipBuilder previousBuilder = new ZipBuilder(new FileOutputStream(previousFile));
+		for(int i=0; i<data.length; i++){
+			previousBuilder.addEntry("entry-" + i, data[i]);
+		}
+		previousBuilder.zip();
+
+		data[3] = "modified".getBytes();
+		final ZipEntry stored = new ZipEntry("entry-4");
+		stored.setMethod(ZipEntry.STORED);
+
+		final ZipArchiveReader previous = new ZipArchiveReader(previousFile);
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for(final boolean parallel : new boolean[]{ false, true }){
+				final ZipBuilder builder = new ZipBuilder(new FileOutputStream(zipfile)).reuseEntriesFrom(previous);
+				if(parallel){
+					builder.useParallelCompression(executor);
+				}
+				for(int i=0; i<8; i++){
+					if(i == 4){
+						builder.addEntry((ZipEntry)stored.clone(), data[i]);
+					} else if(i % 2 == 0){
+						builder.addEntry("entry-" + i, data[i]);
+					} else {
+						builder.addEntry("entry-" + i, new ByteArrayInputStream(data[i]));
+					}
+				}
+				builder.addEntry("entry-9", file);
+				builder.addEntry("new", DATA_ARRAY[0]);
+				builder.zip();
+
+				// entry-3 is modified, entry-4 changed method and "new" is new
+				assertEquals(7, builder.getReusedEntryCount());
+
+				final ZipFile zf = getZipFile();
+				assertEquals(10, zf.size());
+				for(int i=0; i<8; i++){
+					assertZipEntry(zf, "entry-" + i, null, data[i]);
+				}
+				assertZipEntry(zf, "entry-9", null, data[9]);
+				assertZipEntry(zf, "new", null, DATA_ARRAY[0]);
+				assertEquals(ZipEntry.STORED, zf.getEntry("entry-4").getMethod());
+				zf.close();
+			}
+		} finally {
+			executor.shutdown();
+			previous.close();
+			FileUtils.deleteQuietly(previousFile);
+			FileUtils.deleteQuietly(file);
+		}
+	}
+
+	@Test
+	public void addDirectory() throws Exception {
+		final File root = new File(zipfile.getPath() + ".dir");
+		final long time = 1262304000000L;
+		try {
+			FileUtils.forceMkdir(new File(root, "b"));
+			FileUtils.forceMkdir(new File(root, "skip"));
+			FileUtils.writeStringToFile(new File(root, "a.txt"), "alpha");
+			FileUtils.writeStringToFile(new File(root, "b/c.txt"), "charlie");
+			FileUtils.writeStringToFile(new File(root, "b/d.log"), "delta");
+			FileUtils.writeStringToFile(new File(root, "skip/e.txt"), "echo");
+			FileUtils.forceMkdir(new File(root, "empty"));
+			new File(root, "b/c.txt").setLastModified(time);
+
+			final FileFilter txt = new FileFilter() {
+				@Override
+				public boolean accept(final File file){
+					return file.getName().endsWith(".txt");
+				}
+			};
+			final FileFilter skip = new FileFilter() {
+				@Override
+				public boolean accept(final File file){
+					return file.getName().equals("skip");
+				}
+			};
+			zipBuilder.setReadAheadDepth(1).addDirectory(root, "root", txt, skip).zip();
+
+			final ZipFile zf = getZipFile();
+			assertEquals(3, zf.size());
+			assertZipEntry(zf, "root/a.txt", null, "alpha".getBytes());
+			assertZipEntry(zf, "root/b/c.txt", null, "charlie".getBytes());
+			assertTrue(zf.getEntry("root/empty/").isDirectory());
+			assertEquals(time, zf.getEntry("root/b/c.txt").getTime());
+			zf.close();
+		} finally {
+			FileUtils.deleteQuietly(root);
+		}
+	}
+
+	@Test
+	public void addDirectory_SymlinkCycle() throws Exception {
+		final File root = new File(zipfile.getPath() + ".dir");
+		final File loop = new File(root, "sub/loop");
+		try {
+			FileUtils.forceMkdir(new File(root, "sub"));
+			FileUtils.writeStringToFile(new File(root, "a.txt"), "alpha");
+			FileUtils.writeStringToFile(new File(root, "sub/b.txt"), "bravo");
+			if(Runtime.getRuntime().exec(new String[]{ "ln", "-s", root.getAbsolutePath(), loop.getPath() }).waitFor() != 0){
+				// symbolic links are not supported here
+				return;
+			}
+
+			zipBuilder.addDirectory(root).zip();
+
+			final ZipFile zf = getZipFile();
+			assertEquals(2, zf.size());
+			assertZipEntry(zf, "a.txt", null, "alpha".getBytes());
+			assertZipEntry(zf, "sub/b.txt", null, "bravo".getBytes());
+			zf.close();
+		} finally {
+			// the link is removed first so that the tree is not deleted through it
+			loop.delete();
+			FileUtils.deleteQuietly(root);
+		}
+	}
+
+	@Test
+	public void addDirectory_ExcludedDirectories() throws Exception {
+		final File root = new File(zipfile.getPath() + ".dir");
+		try {
+			FileUtils.forceMkdir(new File(root, "build/classes"));
+			FileUtils.forceMkdir(new File(root, "src/build/empty"));
+			FileUtils.writeStringToFile(new File(root, "build/classes/A.class"), "class");
+			FileUtils.writeStringToFile(new File(root, "src/A.java"), "source");
+			FileUtils.writeStringToFile(new File(root, "src/build/B.java"), "generated");
+
+			final FileFilter build = new FileFilter() {
+				@Override
+				public boolean accept(final File file){
+					return file.isDirectory() && file.getName().equals("build");
+				}
+			};
+			zipBuilder.addDirectory(root, null, null, build).zip();
+
+			final ZipFile zf = getZipFile();
+			assertEquals(1, zf.size());
+			assertZipEntry(zf, "src/A.java", null, "source".getBytes());
+			zf.close();
+		} finally {
+			FileUtils.deleteQuietly(root);
+		}
+	}
+
+	@Test
+	public void addDirectory_EmptyDirectories() throws Exception {
+		final File root = new File(zipfile.getPath() + ".dir");
+		try {
+			FileUtils.forceMkdir(new File(root, "outer/inner"));
+			FileUtils.forceMkdir(new File(root, "other"));
+			FileUtils.writeStringToFile(new File(root, "other/file.txt"), "file");
+
+			zipBuilder.addDirectory(root, "root/", null, null).zip();
+
+			final ZipFile zf = getZipFile();
+			assertEquals(2, zf.size());
+			assertTrue(zf.getEntry("root/outer/inner/").isDirectory());
+			assertEquals(0, zf.getEntry("root/outer/inner/").getSize());
+			assertEquals(null, zf.getEntry("root/outer/"));
+			assertZipEntry(zf, "root/other/file.txt", null, "file".getBytes());
+			zf.close();
+		} finally {
+			FileUtils.deleteQuietly(root);
+		}
+
+		// an empty tree is a single directory entry when prefixed, and nothing otherwise
+		try {
+			FileUtils.forceMkdir(root);
+			final File second = createTempFile();
+			try {
+				new ZipBuilder(new FileOutputStream(second)).addDirectory(root, "root", null, null).zip();
+				final ZipFile zf = new ZipFile(second);
+				assertEquals(1, zf.size());
+				assertTrue(zf.getEntry("root/").isDirectory());
+				zf.close();
+			} finally {
+				FileUtils.deleteQuietly(second);
+			}
+		} finally {
+			FileUtils.deleteQuietly(root);
+		}
+	}
+
+	@Test
+	public void addDirectory_Times() throws Exception {
+		final File root = new File(zipfile.getPath() + ".dir");
+		final long time = 1262304000000L;
+		try {
+			FileUtils.forceMkdir(new File(root, "empty"));
+			FileUtils.writeStringToFile(new File(root, "deflated.txt"), "deflated");
+			new File(root, "deflated.txt").setLastModified(time);
+			new File(root, "empty").setLastModified(time + 2000);
+
+			zipBuilder.addDirectory(root).zip();
+
+			final ZipFile zf = getZipFile();
+			assertEquals(time, zf.getEntry("deflated.txt").getTime());
+			assertEquals(time + 2000, zf.getEntry("empty/").getTime());
+			zf.close();
+
+			// stored files are transferred rather than streamed, and keep their times as well
+			final File stored = createTempFile();
+			try {
+				new ZipBuilder(new FileOutputStream(stored)).useNoCompression().addDirectory(root).zip();
+				final ZipFile szf = new ZipFile(stored);
+				assertEquals(ZipEntry.STORED, szf.getEntry("deflated.txt").getMethod());
+				assertEquals(time, szf.getEntry("deflated.txt").getTime());
+				szf.close();
+			} finally {
+				FileUtils.deleteQuietly(stored);
+			}
+		} finally {
+			FileUtils.deleteQuietly(root);
+		}
+	}
+
 	private void assertZipEntry(final ZipFile zf,final String name, final String comment, final byte[] data) throws IOException {
 		final ZipEntry ze = zf.getEntry(name);
 		assertNotNull("Entry is null!",ze);
@@ -152,6 +523,55 @@ public class ZipBuilderTest {
 		return(file);
 	}
 
+	private static int countSpillFiles(){
+		final String[] names = new File(System.getProperty("java.io.tmpdir")).list();
+		int count = 0;
+		for(final String name : names){
+			if(name.startsWith("spill.")){
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static final class FailingOutputStream extends OutputStream {
+
+		private final int limit;
+		private int written;
+
+		FailingOutputStream(final int limit){
+			this.limit = limit;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			write(new byte[]{ (byte)b }, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] bytes, final int off, final int len) throws IOException {
+			written += len;
+			if(written > limit){
+				throw new IOException("Disk full");
+			}
+		}
+	}
+
+		private static final class TrackedInputStream extends ByteArrayInputStream {
+
+		volatile boolean closed;
+
+		TrackedInputStream(final byte[] data){
+			super(data);
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			super.close();
+		}
+	}
+
 	private ZipFile getZipFile() throws Exception {
 		return new ZipFile(zipfile);
 	}
@@ -0,0 +1,155 @@
+package com.stehno.codeperks.io.zip;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZipExtractorTest {
+
+	private File zipfile;
+	private File directory;
+
+	@Before
+	public void before() throws IOException {
+		zipfile = File.createTempFile("zipextractortest.", ".zip");
+		directory = new File(zipfile.getPath() + ".dir");
+	}
+
+	@After
+	public void after() throws IOException {
+		FileUtils.deleteQuietly(zipfile);
+		FileUtils.deleteQuietly(directory);
+	}
+
+	@Test
+	public void extract_parallel() throws IOException {
+		final Random random = new Random(17);
+		final byte[][] data = new byte[50][];
+		final ZipBuilder builder = new ZipBuilder(new FileOutputStream(zipfile));
+		builder.addEntry("empty/", new byte[0]);
+		for(int i=0; i<data.length; i++){
+			data[i] = new byte[random.nextInt(100000)];
+			random.nextBytes(data[i]);
+			final ZipEntry entry = new ZipEntry("a/b" + (i % 4) + "/file-" + i);
+			entry.setMethod(i % 2 == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED);
+			builder.addEntry(entry, data[i]);
+		}
+		builder.zip();
+
+		final ZipArchiveReader reader = new ZipArchiveReader(zipfile);
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			assertEquals(data.length, new ZipExtractor(reader).setExecutor(executor).extract(directory));
+		} finally {
+			executor.shutdown();
+			reader.close();
+		}
+
+		assertTrue(new File(directory, "empty").isDirectory());
+		for(int i=0; i<data.length; i++){
+			assertArrayEquals(data[i], FileUtils.readFileToByteArray(new File(directory, "a/b" + (i % 4) + "/file-" + i)));
+		}
+	}
+
+	@Test
+	public void path_traversal() throws IOException {
+		new ZipBuilder(new FileOutputStream(zipfile))
+			.addEntry("safe/..name", "ok".getBytes())
+			.addEntry("safe/../../evil", "evil".getBytes())
+			.zip();
+
+		final ZipArchiveReader reader = new ZipArchiveReader(zipfile);
+		try {
+			new ZipExtractor(reader).extract(directory);
+			fail("Expected the traversing entry to be rejected");
+		} catch(final ZipException ze){
+			assertTrue(ze.getMessage().contains("safe/../../evil"));
+		} finally {
+			reader.close();
+		}
+		assertFalse(new File(directory.getParentFile(), "evil").exists());
+
+		final File root = directory.getAbsoluteFile();
+		assertEquals(new File(root, "safe/..name"), ZipExtractor.resolve(root, "safe/..name"));
+		assertEquals(new File(root, "a/../b"), ZipExtractor.resolve(root, "a/../b"));
+	}
+
+	@Test
+	public void corrupt_entry() throws IOException {
+		final byte[] data = "0123456789-marker-0123456789".getBytes();
+		final ZipEntry entry = new ZipEntry("corrupt");
+		entry.setMethod(ZipEntry.STORED);
+		new ZipBuilder(new FileOutputStream(zipfile)).addEntry(entry, data).zip();
+
+		final byte[] archive = FileUtils.readFileToByteArray(zipfile);
+		final int marker = new String(archive, "ISO-8859-1").indexOf("marker");
+		archive[marker] = 'M';
+		FileUtils.writeByteArrayToFile(zipfile, archive);
+
+		final ZipArchiveReader reader = new ZipArchiveReader(zipfile);
+		try {
+			new ZipExtractor(reader).extract(directory);
+			fail("Expected the crc-32 to be invalid");
+		} catch(final ZipException ze){
+			assertTrue(ze.getMessage().contains("crc-32"));
+		} finally {
+			reader.close();
+		}
+		assertFalse(new File(directory, "corrupt").exists());
+	}
+
+	@Test
+	public void corrupt_entry_parallel() throws Exception {
+		final Random random = new Random(41);
+		final ZipBuilder builder = new ZipBuilder(new FileOutputStream(zipfile));
+		final ZipEntry entry = new ZipEntry("corrupt");
+		entry.setMethod(ZipEntry.STORED);
+		builder.addEntry(entry, "0123456789-marker-0123456789".getBytes());
+		for(int i=0; i<40; i++){
+			final byte[] data = new byte[256 * 1024];
+			random.nextBytes(data);
+			builder.addEntry("entry-" + i, data);
+		}
+		builder.zip();
+
+		final byte[] archive = FileUtils.readFileToByteArray(zipfile);
+		final int marker = new String(archive, "ISO-8859-1").indexOf("marker");
+		archive[marker] = 'M';
+		FileUtils.writeByteArrayToFile(zipfile, archive);
+
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		final ZipArchiveReader reader = new ZipArchiveReader(zipfile);
+		try {
+			new ZipExtractor(reader).setExecutor(executor).extract(directory);
+			fail("Expected the crc-32 to be invalid");
+		} catch(final ZipException ze){
+			assertTrue(ze.getMessage().contains("crc-32"));
+
+			// nothing is written once the extraction has failed
+			final List<String> files = Arrays.asList(directory.list());
+			Thread.sleep(200);
+			assertEquals(files, Arrays.asList(directory.list()));
+		} finally {
+			executor.shutdownNow();
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.stehno.codeperks.servlet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipInputStream;
+
+import javax.servlet.ServletOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.stehno.codeperks.io.zip.ZipBuilder;
+
+public class ZipDownloadTest {
+
+	@Test
+	public void download() throws IOException {
+		final MockHttpServletResponse response = new MockHttpServletResponse();
+		final ZipDownload download = new ZipDownload(response, "the \"export\".zip").setFlushInterval(16);
+
+		download.start()
+			.addEntry("a.txt", "alpha".getBytes())
+			.addEntry("b.txt", new ByteArrayInputStream("bravo".getBytes()))
+			.zip();
+
+		assertFalse(download.isAborted());
+		assertEquals("application/zip", response.getContentType());
+		assertEquals("attachment; filename=\"the \\\"export\\\".zip\"", response.getHeader("Content-Disposition"));
+
+		final byte[] content = response.getContentAsByteArray();
+		assertEquals(content.length, download.getBytesWritten());
+
+		final ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(content));
+		assertEquals("a.txt", zis.getNextEntry().getName());
+		assertArrayEquals("alpha".getBytes(), IOUtils.toByteArray(zis));
+		assertEquals("b.txt", zis.getNextEntry().getName());
+		assertArrayEquals("bravo".getBytes(), IOUtils.toByteArray(zis));
+		assertNull(zis.getNextEntry());
+	}
+
+	@Test
+	public void flush_interval() throws IOException {
+		final FlushCountingResponse response = new FlushCountingResponse();
+		final ZipDownload download = new ZipDownload(response, "export.zip").setFlushInterval(4096);
+
+		final byte[] data = new byte[200000];
+		new Random(31).nextBytes(data);
+		download.start().addEntry("random.bin", data).zip();
+
+		// the response is flushed at every interval, well before the 64 KB the builder buffers by default
+		final long written = download.getBytesWritten();
+		assertTrue(written > data.length);
+		for(long position=4096; position<=written; position+=4096){
+			assertTrue("No flush at " + position, response.flushes.contains(position));
+		}
+		assertEquals(Long.valueOf(4096), response.flushes.get(0));
+	}
+
+	@Test
+	public void client_disconnect() throws IOException {
+		final DisconnectingResponse response = new DisconnectingResponse(100000);
+		final ZipDownload download = new ZipDownload(response, "export.zip");
+
+		final byte[] data = new byte[50000];
+		new Random(23).nextBytes(data);
+
+		int added = 0;
+		try {
+			final ZipBuilder builder = download.start();
+			for(; added<100; added++){
+				builder.addEntry("entry-" + added, data);
+			}
+			builder.zip();
+			fail("Expected the disconnect to stop the download");
+		} catch(final IOException ioe){
+			assertTrue(download.isAborted());
+		}
+
+		// the download stops within a buffer of the disconnect, without writing to the client again
+		assertTrue(added < 5);
+		assertEquals(1, response.failures);
+	}
+
+	private static final class FlushCountingResponse extends MockHttpServletResponse {
+
+		private final List<Long> flushes = new ArrayList<Long>();
+		private long written;
+
+		@Override
+		public ServletOutputStream getOutputStream(){
+			return new ServletOutputStream() {
+				@Override
+				public void write(final int b) throws IOException {
+					written++;
+				}
+
+				@Override
+				public void flush() throws IOException {
+					flushes.add(written);
+				}
+			};
+		}
+	}
+
+	private static final class DisconnectingResponse extends MockHttpServletResponse {
+
+		private final int limit;
+		private int written;
+		private int failures;
+
+		DisconnectingResponse(final int limit){
+			this.limit = limit;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream(){
+			return new ServletOutputStream() {
+				@Override
+				public void write(final int b) throws IOException {
+					if(++written > limit){
+						failures++;
+						throw new IOException("Broken pipe");
+					}
+				}
+			};
+		}
+	}
+}